@@ -1,12 +1,14 @@
 package io.github.habedi.mvhnsw.examples;
 
 import io.github.habedi.mvhnsw.common.FloatVector;
+import io.github.habedi.mvhnsw.common.SparseFloatVector;
 import io.github.habedi.mvhnsw.distance.Cosine;
 import io.github.habedi.mvhnsw.distance.DotProduct;
 import io.github.habedi.mvhnsw.index.Index;
 import io.github.habedi.mvhnsw.index.MultiVectorHNSW;
 import io.github.habedi.mvhnsw.index.SearchResult;
 
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -14,9 +16,17 @@ import java.util.List;
  *
  * <p>This is useful when you want to combine different types of vector representations. Here, we
  * combine a dense embedding (like one from a deep model) with a sparse, keyword-based vector (like
- * TF-IDF), weighting each one differently.
+ * TF-IDF), weighting each one differently. The keyword vector is a {@link SparseFloatVector}, so
+ * only its non-zero terms are stored and compared, even though the vocabulary is large.
  */
 public class E05_HybridSearch {
+  // Size of the keyword vocabulary (the dimension of the sparse vectors)
+  private static final int VOCABULARY_SIZE = 30_000;
+
+  // Term ids of the keywords used in this example
+  private static final int ANIMAL = 17;
+  private static final int PET = 4242;
+
   public static void main(String[] args) {
     // 1. Configure a hybrid distance strategy
     Index index =
@@ -37,21 +47,21 @@ public class E05_HybridSearch {
       1L,
       List.of(
         FloatVector.of(0.9f, 0.1f), // Dense: "dog"
-        FloatVector.of(1.0f, 0.0f, 0.0f) // Sparse: "animal"
+        keywords(ANIMAL) // Sparse: "animal"
       ));
     // Item 2: Semantically about "cats", keyword is "animal"
     index.add(
       2L,
       List.of(
         FloatVector.of(0.1f, 0.9f), // Dense: "cat"
-        FloatVector.of(1.0f, 0.0f, 0.0f) // Sparse: "animal"
+        keywords(ANIMAL) // Sparse: "animal"
       ));
     // Item 3: Semantically about "dogs", keyword is "pet"
     index.add(
       3L,
       List.of(
         FloatVector.of(0.85f, 0.15f), // Dense: "dog"
-        FloatVector.of(0.0f, 1.0f, 0.0f) // Sparse: "pet"
+        keywords(PET) // Sparse: "pet"
       ));
 
     // 3. Create a hybrid query: semantically about "canine" (close to "dog"),
@@ -60,11 +70,18 @@ public class E05_HybridSearch {
     List<FloatVector> query =
       List.of(
         FloatVector.of(0.95f, 0.05f), // Dense: "canine"
-        FloatVector.of(1.0f, 0.0f, 0.0f) // Sparse: "animal"
+        keywords(ANIMAL) // Sparse: "animal"
       );
     List<SearchResult> results = index.search(query, 3, 10);
 
     System.out.println("Hybrid Search Results:");
     results.forEach(System.out::println);
   }
+
+  // Builds a sparse keyword vector with a weight of 1.0 for each of the given term ids
+  private static SparseFloatVector keywords(int... termIds) {
+    float[] weights = new float[termIds.length];
+    Arrays.fill(weights, 1.0f);
+    return SparseFloatVector.of(VOCABULARY_SIZE, termIds, weights);
+  }
 }
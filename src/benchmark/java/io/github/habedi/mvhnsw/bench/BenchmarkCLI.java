@@ -64,6 +64,18 @@ public class BenchmarkCLI implements Callable<Integer> {
     description = "Enable a JMH profiler (e.g., 'stack', 'jfr').")
   private String profiler;
 
+  @Option(
+    names = {"--layout"},
+    description =
+      "Run the frozen index layout benchmark on random data instead (e.g., with '-p perfnorm').")
+  private boolean layout;
+
+  @Option(
+    names = {"--merge"},
+    description =
+      "Run the benchmark of merging indexes against rebuilding them on random data instead.")
+  private boolean merge;
+
   public static void main(String[] args) {
     int exitCode = new CommandLine(new BenchmarkCLI()).execute(args);
     System.exit(exitCode);
@@ -71,6 +83,13 @@ public class BenchmarkCLI implements Callable<Integer> {
 
   @Override
   public Integer call() throws RunnerException, IOException {
+    if (layout) {
+      return runLayoutBenchmark();
+    }
+    if (merge) {
+      return runMergeBenchmark();
+    }
+
     log.info(
       "Starting benchmark with dataset={}, m={}, efConstruction={}, efSearch={}",
       datasetName,
@@ -99,6 +118,38 @@ public class BenchmarkCLI implements Callable<Integer> {
     return 0;
   }
 
+  private int runLayoutBenchmark() throws RunnerException {
+    log.info("Starting frozen index layout benchmark with m={}, efSearch={}", m, efSearch);
+    ChainedOptionsBuilder builder =
+      new OptionsBuilder()
+        .include(FrozenLayoutBenchmark.class.getSimpleName())
+        .param("m", String.valueOf(m))
+        .param("efSearch", String.valueOf(efSearch));
+    if (profiler != null && !profiler.isBlank()) {
+      log.info("Enabling JMH profiler: {}", profiler);
+      builder.addProfiler(profiler);
+    }
+    // JMH prints the time per 1000 queries and the profiler counters for each layout
+    new Runner(builder.build()).run();
+    return 0;
+  }
+
+  private int runMergeBenchmark() throws RunnerException {
+    log.info("Starting merge benchmark with m={}, efConstruction={}", m, efConstruction);
+    ChainedOptionsBuilder builder =
+      new OptionsBuilder()
+        .include(MergeBenchmark.class.getSimpleName())
+        .param("m", String.valueOf(m))
+        .param("efConstruction", String.valueOf(efConstruction));
+    if (profiler != null && !profiler.isBlank()) {
+      log.info("Enabling JMH profiler: {}", profiler);
+      builder.addProfiler(profiler);
+    }
+    // JMH prints the time to merge the parts and to rebuild them as one index
+    new Runner(builder.build()).run();
+    return 0;
+  }
+
   private void printSummaryTable(Collection<RunResult> results) throws IOException {
     System.out.println("\n\n--- HNSW Benchmark Summary ---");
     String header =
@@ -0,0 +1,109 @@
+package io.github.habedi.mvhnsw.bench;
+
+import io.github.habedi.mvhnsw.common.FloatVector;
+import io.github.habedi.mvhnsw.distance.SquaredEuclidean;
+import io.github.habedi.mvhnsw.index.FrozenMultiVectorHNSW;
+import io.github.habedi.mvhnsw.index.MultiVectorHNSW;
+import io.github.habedi.mvhnsw.index.SearchResult;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the search latency of a frozen index with items numbered by ID against one with items
+ * renumbered for locality. Runs on random data, since the effect depends on the index being much
+ * larger than the CPU caches rather than on the data. Run it with the {@code perfnorm} profiler to
+ * also see the cache misses per search. An operation is a search for each of 1000 queries, so the
+ * average time in milliseconds per operation is the time in microseconds per query.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@Fork(value = 1, jvmArgs = {"--add-modules", "jdk.incubator.vector", "-Xmx8g"})
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class FrozenLayoutBenchmark {
+
+  private static final int K = 10;
+  private static final int NUM_QUERIES = 1000;
+
+  @Param({"200000"})
+  public int numItems;
+
+  @Param({"2"})
+  public int vectorsPerItem;
+
+  @Param({"64"})
+  public int dimensions;
+
+  @Param({"16"})
+  public int m;
+
+  @Param({"100"})
+  public int efSearch;
+
+  @Param({"false", "true"})
+  public boolean reorder;
+
+  private FrozenMultiVectorHNSW index;
+  private List<List<FloatVector>> queries;
+
+  @Setup(Level.Trial)
+  public void setupTrial() {
+    Random random = new Random(42);
+    Map<Long, List<FloatVector>> items = new HashMap<>(numItems * 2);
+    for (long id = 0; id < numItems; id++) {
+      items.put(id, randomItem(random));
+    }
+    queries = new ArrayList<>(NUM_QUERIES);
+    for (int q = 0; q < NUM_QUERIES; q++) {
+      queries.add(randomItem(random));
+    }
+
+    MultiVectorHNSW.Builder.WeightedAverageDistanceBuilder distanceBuilder =
+      MultiVectorHNSW.builder().withM(m).withWeightedAverageDistance();
+    for (int i = 0; i < vectorsPerItem; i++) {
+      distanceBuilder.addDistance(new SquaredEuclidean(), 1.0f / vectorsPerItem);
+    }
+    // The source index is discarded, so only the frozen copy is left on the heap
+    index = distanceBuilder.and().bulkBuild(items).freeze(reorder);
+  }
+
+  private List<FloatVector> randomItem(Random random) {
+    List<FloatVector> item = new ArrayList<>(vectorsPerItem);
+    for (int i = 0; i < vectorsPerItem; i++) {
+      float[] data = new float[dimensions];
+      for (int d = 0; d < dimensions; d++) {
+        data[d] = random.nextFloat();
+      }
+      item.add(new FloatVector(data));
+    }
+    return item;
+  }
+
+  @Benchmark
+  public void search(Blackhole bh) {
+    for (List<FloatVector> query : queries) {
+      List<SearchResult> results = index.search(query, K, efSearch);
+      bh.consume(results);
+    }
+  }
+}
@@ -3,10 +3,7 @@ package io.github.habedi.mvhnsw.bench;
 import io.github.habedi.mvhnsw.bench.data.BenchmarkData;
 import io.github.habedi.mvhnsw.bench.data.TestItem;
 import io.github.habedi.mvhnsw.common.FloatVector;
-import io.github.habedi.mvhnsw.distance.Cosine;
 import io.github.habedi.mvhnsw.distance.Distance;
-import io.github.habedi.mvhnsw.distance.DotProduct;
-import io.github.habedi.mvhnsw.distance.SquaredEuclidean;
 import io.github.habedi.mvhnsw.index.Index;
 import io.github.habedi.mvhnsw.index.MultiVectorHNSW;
 import io.github.habedi.mvhnsw.index.SearchResult;
@@ -108,7 +105,7 @@ public class IndexBenchmark {
         .withEfConstruction(efConstruction)
         .withWeightedAverageDistance();
 
-    Distance<FloatVector> distance = createDistance();
+    Distance<FloatVector> distance = BenchmarkData.createDistance(distanceMetric);
     for (int i = 0; i < numVectors; i++) {
       distanceBuilder.addDistance(distance, 1.0f / numVectors);
     }
@@ -118,15 +115,6 @@ public class IndexBenchmark {
     return newIndex;
   }
 
-  private Distance<FloatVector> createDistance() {
-    return switch (distanceMetric.toLowerCase()) {
-      case "squared_euclidean" -> new SquaredEuclidean();
-      case "cosine" -> new Cosine();
-      case "dot_product" -> new DotProduct();
-      default -> throw new IllegalArgumentException("Unknown distance metric: " + distanceMetric);
-    };
-  }
-
   private void updateRecall(
     long queryId,
     List<SearchResult> results,
@@ -0,0 +1,123 @@
+package io.github.habedi.mvhnsw.bench;
+
+import io.github.habedi.mvhnsw.common.FloatVector;
+import io.github.habedi.mvhnsw.distance.SquaredEuclidean;
+import io.github.habedi.mvhnsw.index.MultiVectorHNSW;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the time to combine indexes built separately with {@link MultiVectorHNSW#merge} against
+ * building one index of all their items, by bulk construction or by inserting the items one by
+ * one. The parts are built once per trial and are not changed by a merge, since each merge goes
+ * into a new empty index. Runs on random data, so it needs no dataset.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@Fork(value = 1, jvmArgs = {"--add-modules", "jdk.incubator.vector", "-Xmx8g"})
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MergeBenchmark {
+
+  @Param({"60000"})
+  public int numItems;
+
+  @Param({"3"})
+  public int numParts;
+
+  @Param({"2"})
+  public int vectorsPerItem;
+
+  @Param({"32"})
+  public int dimensions;
+
+  @Param({"16"})
+  public int m;
+
+  @Param({"200"})
+  public int efConstruction;
+
+  private Map<Long, List<FloatVector>> items;
+  private MultiVectorHNSW[] parts;
+
+  @Setup(Level.Trial)
+  public void setupTrial() {
+    Random random = new Random(42);
+    items = new HashMap<>(numItems * 2);
+    List<Map<Long, List<FloatVector>>> partItems = new ArrayList<>(numParts);
+    for (int p = 0; p < numParts; p++) {
+      partItems.add(new HashMap<>());
+    }
+    for (long id = 0; id < numItems; id++) {
+      List<FloatVector> item = randomItem(random);
+      items.put(id, item);
+      partItems.get((int) (id % numParts)).put(id, item);
+    }
+    parts = new MultiVectorHNSW[numParts];
+    for (int p = 0; p < numParts; p++) {
+      parts[p] = builder().bulkBuild(partItems.get(p));
+    }
+  }
+
+  private MultiVectorHNSW.Builder builder() {
+    MultiVectorHNSW.Builder.WeightedAverageDistanceBuilder distanceBuilder =
+      MultiVectorHNSW.builder()
+        .withM(m)
+        .withEfConstruction(efConstruction)
+        .withWeightedAverageDistance();
+    for (int i = 0; i < vectorsPerItem; i++) {
+      distanceBuilder.addDistance(new SquaredEuclidean(), 1.0f / vectorsPerItem);
+    }
+    return distanceBuilder.and();
+  }
+
+  private List<FloatVector> randomItem(Random random) {
+    List<FloatVector> item = new ArrayList<>(vectorsPerItem);
+    for (int i = 0; i < vectorsPerItem; i++) {
+      float[] data = new float[dimensions];
+      for (int d = 0; d < dimensions; d++) {
+        data[d] = random.nextFloat();
+      }
+      item.add(new FloatVector(data));
+    }
+    return item;
+  }
+
+  @Benchmark
+  public MultiVectorHNSW merge() {
+    MultiVectorHNSW merged = builder().build();
+    merged.merge(parts);
+    return merged;
+  }
+
+  @Benchmark
+  public MultiVectorHNSW bulkBuild() {
+    return builder().bulkBuild(items);
+  }
+
+  @Benchmark
+  public MultiVectorHNSW insert() {
+    MultiVectorHNSW index = builder().build();
+    items.forEach(index::add);
+    return index;
+  }
+}
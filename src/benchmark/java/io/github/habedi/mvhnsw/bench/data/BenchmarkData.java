@@ -2,10 +2,22 @@ package io.github.habedi.mvhnsw.bench.data;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.habedi.mvhnsw.common.FloatVector;
+import io.github.habedi.mvhnsw.distance.Cosine;
+import io.github.habedi.mvhnsw.distance.Distance;
+import io.github.habedi.mvhnsw.distance.DotProduct;
+import io.github.habedi.mvhnsw.distance.SquaredEuclidean;
+import io.github.habedi.mvhnsw.distance.WeightedAverageDistance;
+import io.github.habedi.mvhnsw.index.FlatIndex;
+import io.github.habedi.mvhnsw.index.SearchResult;
 
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -28,29 +40,76 @@ public record BenchmarkData(
       MAPPER.readValue(dataPath.resolve("test.json").toFile(), new TypeReference<>() {
       });
 
+    // Fall back to computing the ground truth when the dataset doesn't ship with it
+    Path neighboursPath = dataPath.resolve("neighbours.json");
+    Map<Long, Set<Long>> groundTruthMap =
+      Files.exists(neighboursPath)
+        ? readGroundTruth(neighboursPath, distanceMetric, k)
+        : computeGroundTruth(trainingData, testData, distanceMetric, k);
+
+    return new BenchmarkData(trainingData, testData, groundTruthMap);
+  }
+
+  public static Distance<FloatVector> createDistance(String distanceMetric) {
+    return switch (distanceMetric.toLowerCase()) {
+      case "squared_euclidean" -> new SquaredEuclidean();
+      case "cosine" -> new Cosine();
+      case "dot_product" -> new DotProduct();
+      default -> throw new IllegalArgumentException("Unknown distance metric: " + distanceMetric);
+    };
+  }
+
+  private static Map<Long, Set<Long>> readGroundTruth(Path path, String distanceMetric, int k)
+    throws IOException {
     List<GroundTruth> groundTruthData =
-      MAPPER.readValue(dataPath.resolve("neighbours.json").toFile(), new TypeReference<>() {
+      MAPPER.readValue(path.toFile(), new TypeReference<>() {
       });
 
     String groundTruthKey = String.format("top_%d_%s", k, distanceMetric.toLowerCase());
 
-    Map<Long, Set<Long>> groundTruthMap =
-      groundTruthData.stream()
-        .collect(
-          Collectors.toMap(
-            GroundTruth::id,
-            gt -> {
-              Map<String, List<?>> neighborhood = gt.neighborhoods().get(groundTruthKey);
-              if (neighborhood == null) {
-                throw new IllegalStateException(
-                  "Ground truth for metric '" + groundTruthKey + "' not found.");
-              }
-              return ((List<Number>) neighborhood.get("ids"))
-                .stream()
-                .map(Number::longValue)
-                .collect(Collectors.toSet());
-            }));
+    return groundTruthData.stream()
+      .collect(
+        Collectors.toMap(
+          GroundTruth::id,
+          gt -> {
+            Map<String, List<?>> neighborhood = gt.neighborhoods().get(groundTruthKey);
+            if (neighborhood == null) {
+              throw new IllegalStateException(
+                "Ground truth for metric '" + groundTruthKey + "' not found.");
+            }
+            return ((List<Number>) neighborhood.get("ids"))
+              .stream()
+              .map(Number::longValue)
+              .collect(Collectors.toSet());
+          }));
+  }
 
-    return new BenchmarkData(trainingData, testData, groundTruthMap);
+  private static Map<Long, Set<Long>> computeGroundTruth(
+    List<TestItem> trainingData, List<TestItem> testData, String distanceMetric, int k) {
+    if (trainingData.isEmpty()) {
+      return Collections.emptyMap();
+    }
+    int numVectors = trainingData.get(0).toFloatVectors().size();
+    List<Distance<FloatVector>> distances = new ArrayList<>();
+    float[] weights = new float[numVectors];
+    for (int i = 0; i < numVectors; i++) {
+      distances.add(createDistance(distanceMetric));
+      weights[i] = 1.0f / numVectors;
+    }
+
+    FlatIndex flatIndex =
+      FlatIndex.builder().withDistance(new WeightedAverageDistance(distances, weights)).build();
+    trainingData.forEach(item -> flatIndex.add(item.id(), item.toFloatVectors()));
+
+    List<List<FloatVector>> queries = testData.stream().map(TestItem::toFloatVectors).toList();
+    List<List<SearchResult>> results = flatIndex.searchBatch(queries, k);
+
+    Map<Long, Set<Long>> groundTruthMap = new HashMap<>();
+    for (int i = 0; i < testData.size(); i++) {
+      groundTruthMap.put(
+        testData.get(i).id(),
+        results.get(i).stream().map(SearchResult::id).collect(Collectors.toSet()));
+    }
+    return groundTruthMap;
   }
 }
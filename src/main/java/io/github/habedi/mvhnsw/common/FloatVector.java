@@ -2,6 +2,8 @@ package io.github.habedi.mvhnsw.common;
 
 import static jdk.incubator.vector.FloatVector.SPECIES_PREFERRED;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serial;
 import java.io.Serializable;
 import java.util.Arrays;
@@ -9,12 +11,13 @@ import jdk.incubator.vector.VectorOperators;
 import jdk.incubator.vector.VectorSpecies;
 
 /**
- * A final, serializable implementation of a vector of floats.
+ * A serializable implementation of a dense vector of floats.
  *
  * <p>This class provides common vector operations and is optimized with the Java Vector API for
- * performance. It is immutable by cloning the input data array.
+ * performance. It is immutable by cloning the input data array. The only permitted subclass is
+ * {@link SparseFloatVector}, which lets sparse vectors be used anywhere a FloatVector is expected.
  */
-public final class FloatVector implements Vector<Float>, Serializable {
+public sealed class FloatVector implements Vector<Float>, Serializable permits SparseFloatVector {
 
   @Serial private static final long serialVersionUID = 1L;
 
@@ -40,6 +43,11 @@ public final class FloatVector implements Vector<Float>, Serializable {
     this.data = data.clone();
   }
 
+  /** Constructor for {@link SparseFloatVector}, which keeps its own internal representation. */
+  FloatVector() {
+    this.data = null;
+  }
+
   /**
    * A factory method for creating a FloatVector from a varargs array of floats.
    *
@@ -121,9 +129,10 @@ public final class FloatVector implements Vector<Float>, Serializable {
     if (this.length() != other.length()) {
       throw new IllegalArgumentException("Vector lengths must be equal for addition.");
     }
+    float[] otherData = other.getUnsafeRawData();
     float[] result = new float[data.length];
     for (int i = 0; i < data.length; i++) {
-      result[i] = this.data[i] + other.data[i];
+      result[i] = this.data[i] + otherData[i];
     }
     return new FloatVector(result);
   }
@@ -147,9 +156,10 @@ public final class FloatVector implements Vector<Float>, Serializable {
     if (this.length() != other.length()) {
       throw new IllegalArgumentException("Vector lengths must be equal for multiplication.");
     }
+    float[] otherData = other.getUnsafeRawData();
     float[] result = new float[data.length];
     for (int i = 0; i < data.length; i++) {
-      result[i] = this.data[i] * other.data[i];
+      result[i] = this.data[i] * otherData[i];
     }
     return new FloatVector(result);
   }
@@ -174,6 +184,10 @@ public final class FloatVector implements Vector<Float>, Serializable {
     if (this.length() != other.length()) {
       throw new IllegalArgumentException("Vector lengths must be equal for dot product.");
     }
+    if (other instanceof SparseFloatVector sparse) {
+      // Only the non-zero entries of the sparse side contribute to the sum
+      return sparse.dot(this);
+    }
 
     float[] a = this.data;
     float[] b = other.getUnsafeRawData();
@@ -227,6 +241,13 @@ public final class FloatVector implements Vector<Float>, Serializable {
     return dot / norms;
   }
 
+  /** Custom deserialization method to reset the transient norm cache to its "not computed" state. */
+  @Serial
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    this.norm = -1;
+  }
+
   @Override
   public boolean equals(Object o) {
     if (this == o) {
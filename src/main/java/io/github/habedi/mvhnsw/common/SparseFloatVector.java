@@ -0,0 +1,423 @@
+package io.github.habedi.mvhnsw.common;
+
+import java.io.Serial;
+import java.util.Arrays;
+
+/**
+ * A serializable, immutable sparse vector of floats.
+ *
+ * <p>Only the non-zero entries are stored, as a strictly increasing array of indices and a parallel
+ * array of values. This makes high-dimensional, mostly-zero representations (like TF-IDF or SPLADE
+ * vectors) cheap to store and compare. Because it extends {@link FloatVector}, a sparse vector can
+ * be used as a component of an item next to dense vectors, and the built-in distances pick the
+ * sparse code paths automatically.
+ *
+ * <p>Dot products between two sparse vectors use a merge-based intersection of the index arrays
+ * that switches to galloping (exponential) search when one vector has many more non-zeros than the
+ * other. Dot products between a sparse and a dense vector only touch the non-zero entries.
+ */
+public final class SparseFloatVector extends FloatVector {
+
+  @Serial private static final long serialVersionUID = 1L;
+
+  /** Size ratio above which the intersection gallops through the larger index array. */
+  private static final int GALLOP_RATIO = 8;
+
+  /** The number of dimensions of the vector, including the zero entries. */
+  private final int dimension;
+
+  /** The strictly increasing indices of the non-zero entries. */
+  private final int[] indices;
+
+  /** The values of the non-zero entries, parallel to {@link #indices}. */
+  private final float[] values;
+
+  /** The L2 norm, computed eagerly because it only needs a pass over the non-zero entries. */
+  private final double norm;
+
+  /** A transient, lazily materialized dense copy used by operations that need a dense array. */
+  private transient volatile float[] dense;
+
+  /**
+   * Constructs a new SparseFloatVector.
+   *
+   * @param dimension The number of dimensions of the vector.
+   * @param indices The indices of the non-zero entries, in strictly increasing order. The array is
+   *     cloned to maintain immutability.
+   * @param values The values at the given indices. The array is cloned to maintain immutability.
+   * @throws IllegalArgumentException if the dimension is not positive, if the arrays are null or of
+   *     different lengths, or if the indices are out of range or not strictly increasing.
+   */
+  public SparseFloatVector(int dimension, int[] indices, float[] values) {
+    if (dimension <= 0) {
+      throw new IllegalArgumentException("Vector dimension must be positive.");
+    }
+    if (indices == null || values == null) {
+      throw new IllegalArgumentException("Indices and values cannot be null.");
+    }
+    if (indices.length != values.length) {
+      throw new IllegalArgumentException("Indices and values must have the same length.");
+    }
+    int previous = -1;
+    for (int index : indices) {
+      if (index <= previous || index >= dimension) {
+        throw new IllegalArgumentException(
+            "Indices must be strictly increasing and within [0, " + dimension + ").");
+      }
+      previous = index;
+    }
+    this.dimension = dimension;
+    this.indices = indices.clone();
+    this.values = values.clone();
+    double sumSq = 0.0;
+    for (float value : this.values) {
+      sumSq += (double) value * value;
+    }
+    this.norm = Math.sqrt(sumSq);
+  }
+
+  /**
+   * A factory method for creating a SparseFloatVector from its non-zero entries.
+   *
+   * @param dimension The number of dimensions of the vector.
+   * @param indices The indices of the non-zero entries, in strictly increasing order.
+   * @param values The values at the given indices.
+   * @return A new SparseFloatVector instance.
+   */
+  public static SparseFloatVector of(int dimension, int[] indices, float[] values) {
+    return new SparseFloatVector(dimension, indices, values);
+  }
+
+  /**
+   * Creates a SparseFloatVector from a dense array, keeping only the non-zero entries.
+   *
+   * @param data The dense float values.
+   * @return A new SparseFloatVector instance.
+   * @throws IllegalArgumentException if the data array is null or empty.
+   */
+  public static SparseFloatVector fromDense(float[] data) {
+    if (data == null || data.length == 0) {
+      throw new IllegalArgumentException("Vector data cannot be null or empty.");
+    }
+    int nnz = 0;
+    for (float value : data) {
+      if (value != 0.0f) {
+        nnz++;
+      }
+    }
+    int[] idx = new int[nnz];
+    float[] val = new float[nnz];
+    int j = 0;
+    for (int i = 0; i < data.length; i++) {
+      if (data[i] != 0.0f) {
+        idx[j] = i;
+        val[j] = data[i];
+        j++;
+      }
+    }
+    return new SparseFloatVector(data.length, idx, val);
+  }
+
+  /**
+   * Returns the number of non-zero entries stored in this vector.
+   *
+   * @return The number of stored entries.
+   */
+  public int nonZeroCount() {
+    return indices.length;
+  }
+
+  /**
+   * Provides direct, read-only access to the internal index array.
+   *
+   * <p><b>Warning:</b> The returned array should NOT be modified. It is not cloned for performance
+   * reasons.
+   *
+   * @return The raw internal index array.
+   */
+  public int[] getUnsafeIndices() {
+    return indices;
+  }
+
+  /**
+   * Provides direct, read-only access to the internal value array.
+   *
+   * <p><b>Warning:</b> The returned array should NOT be modified. It is not cloned for performance
+   * reasons.
+   *
+   * @return The raw internal value array.
+   */
+  public float[] getUnsafeValues() {
+    return values;
+  }
+
+  /**
+   * Returns a dense view of this vector.
+   *
+   * <p>The dense array is materialized on first use and cached, so calling this method defeats the
+   * memory savings of the sparse representation. It exists so that distances without a sparse code
+   * path (and arithmetic with dense vectors) still produce correct results.
+   *
+   * @return The cached dense array. The returned array should NOT be modified.
+   */
+  @Override
+  public float[] getUnsafeRawData() {
+    float[] result = dense;
+    if (result == null) {
+      result = new float[dimension];
+      for (int i = 0; i < indices.length; i++) {
+        result[indices[i]] = values[i];
+      }
+      dense = result;
+    }
+    return result;
+  }
+
+  @Override
+  public int length() {
+    return dimension;
+  }
+
+  @Override
+  public Float get(int i) {
+    return getPrimitive(i);
+  }
+
+  @Override
+  public float getPrimitive(int i) {
+    if (i < 0 || i >= dimension) {
+      throw new IndexOutOfBoundsException("Index " + i + " out of bounds for length " + dimension);
+    }
+    int pos = Arrays.binarySearch(indices, i);
+    return pos >= 0 ? values[pos] : 0.0f;
+  }
+
+  @Override
+  public Float[] toArray() {
+    float[] data = getUnsafeRawData();
+    Float[] boxed = new Float[data.length];
+    for (int i = 0; i < data.length; i++) {
+      boxed[i] = data[i];
+    }
+    return boxed;
+  }
+
+  @Override
+  public float[] toPrimitiveArray() {
+    float[] result = new float[dimension];
+    for (int i = 0; i < indices.length; i++) {
+      result[indices[i]] = values[i];
+    }
+    return result;
+  }
+
+  /**
+   * Adds another FloatVector to this vector. The result is sparse if the other vector is sparse and
+   * dense otherwise.
+   *
+   * @param other The FloatVector to be added to this vector.
+   * @return A new FloatVector that is the sum of this vector and the other.
+   * @throws IllegalArgumentException if the vector lengths are not equal.
+   */
+  @Override
+  public FloatVector add(FloatVector other) {
+    if (this.length() != other.length()) {
+      throw new IllegalArgumentException("Vector lengths must be equal for addition.");
+    }
+    if (!(other instanceof SparseFloatVector that)) {
+      float[] result = other.toPrimitiveArray();
+      for (int i = 0; i < indices.length; i++) {
+        result[indices[i]] += values[i];
+      }
+      return new FloatVector(result);
+    }
+
+    int[] idx = new int[this.indices.length + that.indices.length];
+    float[] val = new float[idx.length];
+    int i = 0;
+    int j = 0;
+    int n = 0;
+    while (i < this.indices.length || j < that.indices.length) {
+      int a = i < this.indices.length ? this.indices[i] : Integer.MAX_VALUE;
+      int b = j < that.indices.length ? that.indices[j] : Integer.MAX_VALUE;
+      if (a == b) {
+        idx[n] = a;
+        val[n++] = this.values[i++] + that.values[j++];
+      } else if (a < b) {
+        idx[n] = a;
+        val[n++] = this.values[i++];
+      } else {
+        idx[n] = b;
+        val[n++] = that.values[j++];
+      }
+    }
+    return new SparseFloatVector(dimension, Arrays.copyOf(idx, n), Arrays.copyOf(val, n));
+  }
+
+  /**
+   * Multiplies this vector by another FloatVector, performing element-wise multiplication. The
+   * result is always sparse, because only the non-zero entries of this vector can be non-zero.
+   *
+   * @param other The FloatVector to be multiplied by this vector.
+   * @return A new SparseFloatVector that is the product of this vector and the other.
+   * @throws IllegalArgumentException if the vector lengths are not equal.
+   */
+  @Override
+  public FloatVector mul(FloatVector other) {
+    if (this.length() != other.length()) {
+      throw new IllegalArgumentException("Vector lengths must be equal for multiplication.");
+    }
+    int[] idx = new int[indices.length];
+    float[] val = new float[indices.length];
+    int n = 0;
+    if (other instanceof SparseFloatVector that) {
+      int j = 0;
+      for (int i = 0; i < indices.length && j < that.indices.length; i++) {
+        j = gallop(that.indices, j, indices[i]);
+        if (j < that.indices.length && that.indices[j] == indices[i]) {
+          idx[n] = indices[i];
+          val[n++] = values[i] * that.values[j];
+        }
+      }
+    } else {
+      float[] b = other.getUnsafeRawData();
+      for (int i = 0; i < indices.length; i++) {
+        idx[n] = indices[i];
+        val[n++] = values[i] * b[indices[i]];
+      }
+    }
+    return new SparseFloatVector(dimension, Arrays.copyOf(idx, n), Arrays.copyOf(val, n));
+  }
+
+  /**
+   * Computes the dot product of this vector and another FloatVector. Only the non-zero entries of
+   * this vector are visited, and if the other vector is sparse too, only the intersection of their
+   * indices is.
+   *
+   * @param other The other FloatVector.
+   * @return The dot product of the two vectors.
+   * @throws IllegalArgumentException if the vector lengths are not equal.
+   */
+  @Override
+  public double dot(FloatVector other) {
+    if (this.length() != other.length()) {
+      throw new IllegalArgumentException("Vector lengths must be equal for dot product.");
+    }
+    if (other instanceof SparseFloatVector that) {
+      return sparseDot(this, that);
+    }
+    float[] b = other.getUnsafeRawData();
+    double sum = 0.0;
+    for (int i = 0; i < indices.length; i++) {
+      sum += (double) values[i] * b[indices[i]];
+    }
+    return sum;
+  }
+
+  @Override
+  public double norm() {
+    return norm;
+  }
+
+  /** Computes the dot product of two sparse vectors by intersecting their index arrays. */
+  private static double sparseDot(SparseFloatVector x, SparseFloatVector y) {
+    // Always walk the shorter vector and search in the longer one
+    SparseFloatVector small = x.indices.length <= y.indices.length ? x : y;
+    SparseFloatVector large = small == x ? y : x;
+    int[] ia = small.indices;
+    int[] ib = large.indices;
+    float[] va = small.values;
+    float[] vb = large.values;
+    double sum = 0.0;
+
+    if ((long) ia.length * GALLOP_RATIO < ib.length) {
+      int j = 0;
+      for (int i = 0; i < ia.length && j < ib.length; i++) {
+        j = gallop(ib, j, ia[i]);
+        if (j < ib.length && ib[j] == ia[i]) {
+          sum += (double) va[i] * vb[j];
+          j++;
+        }
+      }
+      return sum;
+    }
+
+    int i = 0;
+    int j = 0;
+    while (i < ia.length && j < ib.length) {
+      int a = ia[i];
+      int b = ib[j];
+      if (a == b) {
+        sum += (double) va[i++] * vb[j++];
+      } else if (a < b) {
+        i++;
+      } else {
+        j++;
+      }
+    }
+    return sum;
+  }
+
+  /**
+   * Returns the position of the first element in {@code array[from..]} that is greater than or
+   * equal to {@code target}, using exponential search followed by a binary search.
+   */
+  private static int gallop(int[] array, int from, int target) {
+    if (from >= array.length || array[from] >= target) {
+      return from;
+    }
+    int low = from;
+    int step = 1;
+    int high = from + step;
+    while (high < array.length && array[high] < target) {
+      low = high;
+      step <<= 1;
+      high = from + step;
+    }
+    high = Math.min(high, array.length);
+    // Invariant: array[low] < target and (high == length or array[high] >= target)
+    while (low + 1 < high) {
+      int mid = (low + high) >>> 1;
+      if (array[mid] < target) {
+        low = mid;
+      } else {
+        high = mid;
+      }
+    }
+    return high;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    SparseFloatVector that = (SparseFloatVector) o;
+    return dimension == that.dimension
+        && Arrays.equals(indices, that.indices)
+        && Arrays.equals(values, that.values);
+  }
+
+  @Override
+  public int hashCode() {
+    int result = Integer.hashCode(dimension);
+    result = 31 * result + Arrays.hashCode(indices);
+    result = 31 * result + Arrays.hashCode(values);
+    return result;
+  }
+
+  @Override
+  public String toString() {
+    return "SparseFloatVector{"
+        + "dimension="
+        + dimension
+        + ", indices="
+        + Arrays.toString(indices)
+        + ", values="
+        + Arrays.toString(values)
+        + '}';
+  }
+}
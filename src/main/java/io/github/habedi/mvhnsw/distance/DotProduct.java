@@ -41,4 +41,15 @@ public class DotProduct implements Distance<FloatVector>, Serializable {
   public String getName() {
     return "DotProduct";
   }
+
+  /** Distances of the same class are equal, since they have no parameters. */
+  @Override
+  public boolean equals(Object obj) {
+    return obj != null && obj.getClass() == getClass();
+  }
+
+  @Override
+  public int hashCode() {
+    return getClass().hashCode();
+  }
 }
@@ -0,0 +1,262 @@
+package io.github.habedi.mvhnsw.distance;
+
+import static jdk.incubator.vector.FloatVector.SPECIES_PREFERRED;
+
+import io.github.habedi.mvhnsw.common.FloatVector;
+import java.io.Serial;
+import java.io.Serializable;
+import java.util.List;
+import java.util.Objects;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * A late-interaction (ColBERT-style) {@link MultiVectorDistance} for variable-length vector sets.
+ *
+ * <p>For a query set Q and a document set D, the MaxSim score is {@code sum over q in Q of max
+ * over d in D of sim(q, d)}, and this class returns its negation so that lower values mean closer
+ * items. Unlike {@link WeightedAverageDistance}, the two lists may have different sizes and vectors
+ * are not paired by position, which makes it suitable for indexing token-level embeddings. All
+ * vectors must have the same dimension.
+ *
+ * <p>Note that MaxSim is asymmetric: the first argument of {@link #compute(List, List)} is treated
+ * as the query. The score is computed as a small matrix product between the two sets that is
+ * blocked over document vectors, so each query vector is loaded once per block, using the Java
+ * Vector API.
+ *
+ * <p>The class also offers a pooled-centroid proxy ({@link #pool(List)} and {@link
+ * #computePooled(FloatVector, FloatVector)}), which reduces each set to a single vector. For the
+ * dot product similarity, {@code |Q| * computePooled(pool(Q), pool(D))} is an upper bound of
+ * {@code compute(Q, D)}, which makes the proxy a cheap and reasonably faithful way to route a
+ * search.
+ */
+public class MaxSimDistance implements MultiVectorDistance, PooledDistance, Serializable {
+
+  @Serial private static final long serialVersionUID = 1L;
+
+  private static final VectorSpecies<Float> SPECIES = SPECIES_PREFERRED;
+
+  /** Number of document vectors scored against each query vector in one pass of the kernel. */
+  private static final int BLOCK = 4;
+
+  private final Similarity similarity;
+
+  /** Constructs a new MaxSimDistance that uses the dot product as the per-vector similarity. */
+  public MaxSimDistance() {
+    this(Similarity.DOT_PRODUCT);
+  }
+
+  /**
+   * Constructs a new MaxSimDistance.
+   *
+   * @param similarity The similarity to use between individual query and document vectors.
+   * @throws NullPointerException if the similarity is null.
+   */
+  public MaxSimDistance(Similarity similarity) {
+    this.similarity = Objects.requireNonNull(similarity, "Similarity cannot be null.");
+  }
+
+  /**
+   * Computes the negated MaxSim score between a query and a document vector set.
+   *
+   * @param vectors1 The list of vectors for the query.
+   * @param vectors2 The list of vectors for the document.
+   * @return The negated sum, over query vectors, of the maximum similarity to any document vector.
+   * @throws IllegalArgumentException if either list is empty or if the vectors do not all have the
+   *     same dimension.
+   */
+  @Override
+  public double compute(List<FloatVector> vectors1, List<FloatVector> vectors2) {
+    if (vectors1.isEmpty() || vectors2.isEmpty()) {
+      throw new IllegalArgumentException("Vector lists cannot be empty.");
+    }
+    int dim = vectors1.get(0).length();
+    float[][] queries = rows(vectors1, dim);
+    float[][] docs = rows(vectors2, dim);
+
+    double[] best = new double[queries.length];
+    for (int i = 0; i < queries.length; i++) {
+      best[i] = Double.NEGATIVE_INFINITY;
+    }
+
+    double[] block = new double[BLOCK];
+    int fullBlocks = docs.length - docs.length % BLOCK;
+    for (int j = 0; j < fullBlocks; j += BLOCK) {
+      for (int i = 0; i < queries.length; i++) {
+        dot4(queries[i], docs[j], docs[j + 1], docs[j + 2], docs[j + 3], block);
+        for (int b = 0; b < BLOCK; b++) {
+          double sim = similarity(block[b], vectors1.get(i), vectors2.get(j + b));
+          if (sim > best[i]) {
+            best[i] = sim;
+          }
+        }
+      }
+    }
+    for (int j = fullBlocks; j < docs.length; j++) {
+      for (int i = 0; i < queries.length; i++) {
+        double sim = similarity(dot(queries[i], docs[j]), vectors1.get(i), vectors2.get(j));
+        if (sim > best[i]) {
+          best[i] = sim;
+        }
+      }
+    }
+
+    double score = 0.0;
+    for (double b : best) {
+      score += b;
+    }
+    return -score;
+  }
+
+  /**
+   * Reduces a vector set to its centroid, which serves as a single-vector proxy for the set. When
+   * the similarity is cosine, the vectors are normalized before being averaged.
+   *
+   * @param vectors The vector set to pool.
+   * @return The mean of the vectors.
+   * @throws IllegalArgumentException if the list is empty or the dimensions do not match.
+   */
+  @Override
+  public FloatVector pool(List<FloatVector> vectors) {
+    if (vectors.isEmpty()) {
+      throw new IllegalArgumentException("Vector list cannot be empty.");
+    }
+    int dim = vectors.get(0).length();
+    float[] sum = new float[dim];
+    for (FloatVector vector : vectors) {
+      if (vector.length() != dim) {
+        throw new IllegalArgumentException("All vectors must have the same dimension.");
+      }
+      float[] data = vector.getUnsafeRawData();
+      double scale = 1.0;
+      if (similarity == Similarity.COSINE) {
+        double norm = vector.norm();
+        scale = norm == 0.0 ? 0.0 : 1.0 / norm;
+      }
+      for (int k = 0; k < dim; k++) {
+        sum[k] += (float) (data[k] * scale);
+      }
+    }
+    for (int k = 0; k < dim; k++) {
+      sum[k] /= vectors.size();
+    }
+    return new FloatVector(sum);
+  }
+
+  /**
+   * Computes the proxy distance between two pooled vectors created by {@link #pool(List)}.
+   *
+   * @param pooled1 The pooled vector of the first set.
+   * @param pooled2 The pooled vector of the second set.
+   * @return The negated dot product of the two pooled vectors.
+   * @throws IllegalArgumentException if the vector lengths are not equal.
+   */
+  @Override
+  public double computePooled(FloatVector pooled1, FloatVector pooled2) {
+    return -pooled1.dot(pooled2);
+  }
+
+  /**
+   * Gets the per-vector similarity used by this distance.
+   *
+   * @return The configured {@link Similarity}.
+   */
+  public Similarity getSimilarity() {
+    return similarity;
+  }
+
+  /** Converts a raw dot product into the configured similarity. */
+  private double similarity(double dot, FloatVector a, FloatVector b) {
+    if (similarity == Similarity.DOT_PRODUCT) {
+      return dot;
+    }
+    double norms = a.norm() * b.norm();
+    return norms == 0.0 ? 0.0 : dot / norms;
+  }
+
+  /** Extracts the raw arrays of a vector set, checking that they all have the given dimension. */
+  private static float[][] rows(List<FloatVector> vectors, int dim) {
+    float[][] rows = new float[vectors.size()][];
+    for (int i = 0; i < rows.length; i++) {
+      FloatVector vector = vectors.get(i);
+      if (vector.length() != dim) {
+        throw new IllegalArgumentException("All vectors must have the same dimension.");
+      }
+      rows[i] = vector.getUnsafeRawData();
+    }
+    return rows;
+  }
+
+  /** Computes the dot products of one query row against four document rows in a single pass. */
+  private static void dot4(
+      float[] q, float[] d0, float[] d1, float[] d2, float[] d3, double[] out) {
+    var acc0 = jdk.incubator.vector.FloatVector.zero(SPECIES);
+    var acc1 = jdk.incubator.vector.FloatVector.zero(SPECIES);
+    var acc2 = jdk.incubator.vector.FloatVector.zero(SPECIES);
+    var acc3 = jdk.incubator.vector.FloatVector.zero(SPECIES);
+    int bound = SPECIES.loopBound(q.length);
+    int k = 0;
+
+    // Vectorized loop, the query chunk is loaded once and reused for all four documents
+    for (; k < bound; k += SPECIES.length()) {
+      var vq = jdk.incubator.vector.FloatVector.fromArray(SPECIES, q, k);
+      acc0 = vq.fma(jdk.incubator.vector.FloatVector.fromArray(SPECIES, d0, k), acc0);
+      acc1 = vq.fma(jdk.incubator.vector.FloatVector.fromArray(SPECIES, d1, k), acc1);
+      acc2 = vq.fma(jdk.incubator.vector.FloatVector.fromArray(SPECIES, d2, k), acc2);
+      acc3 = vq.fma(jdk.incubator.vector.FloatVector.fromArray(SPECIES, d3, k), acc3);
+    }
+    double s0 = acc0.reduceLanes(VectorOperators.ADD);
+    double s1 = acc1.reduceLanes(VectorOperators.ADD);
+    double s2 = acc2.reduceLanes(VectorOperators.ADD);
+    double s3 = acc3.reduceLanes(VectorOperators.ADD);
+
+    // Scalar loop for the remainder
+    for (; k < q.length; k++) {
+      s0 += (double) q[k] * d0[k];
+      s1 += (double) q[k] * d1[k];
+      s2 += (double) q[k] * d2[k];
+      s3 += (double) q[k] * d3[k];
+    }
+    out[0] = s0;
+    out[1] = s1;
+    out[2] = s2;
+    out[3] = s3;
+  }
+
+  /** Computes the dot product of two rows, used for the documents left over after blocking. */
+  private static double dot(float[] q, float[] d) {
+    var acc = jdk.incubator.vector.FloatVector.zero(SPECIES);
+    int bound = SPECIES.loopBound(q.length);
+    int k = 0;
+    for (; k < bound; k += SPECIES.length()) {
+      var vq = jdk.incubator.vector.FloatVector.fromArray(SPECIES, q, k);
+      acc = vq.fma(jdk.incubator.vector.FloatVector.fromArray(SPECIES, d, k), acc);
+    }
+    double sum = acc.reduceLanes(VectorOperators.ADD);
+    for (; k < q.length; k++) {
+      sum += (double) q[k] * d[k];
+    }
+    return sum;
+  }
+
+  /** Two MaxSim distances are equal if they use the same similarity. */
+  @Override
+  public boolean equals(Object obj) {
+    return obj != null
+        && obj.getClass() == getClass()
+        && similarity == ((MaxSimDistance) obj).similarity;
+  }
+
+  @Override
+  public int hashCode() {
+    return similarity.hashCode();
+  }
+
+  /** The similarity used between an individual query vector and an individual document vector. */
+  public enum Similarity {
+    /** The raw inner product, which is what ColBERT uses with normalized embeddings. */
+    DOT_PRODUCT,
+    /** The cosine similarity, for embeddings that are not normalized. */
+    COSINE
+  }
+}
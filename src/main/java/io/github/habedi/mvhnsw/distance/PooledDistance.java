@@ -0,0 +1,33 @@
+package io.github.habedi.mvhnsw.distance;
+
+import io.github.habedi.mvhnsw.common.FloatVector;
+import java.util.List;
+
+/**
+ * Defines a cheap, single-vector approximation of a {@link MultiVectorDistance}.
+ *
+ * <p>An implementation reduces the list of vectors of an item to one pooled vector, and compares
+ * pooled vectors with a single distance computation. An index can use this to route searches
+ * through the upper layers of its graph, where only a rough direction is needed, and keep the full
+ * multi-vector distance for the bottom layer and the final ranking.
+ */
+public interface PooledDistance {
+
+  /**
+   * Reduces a list of vectors to a single pooled vector.
+   *
+   * @param vectors The list of vectors representing an item.
+   * @return The pooled vector.
+   * @throws IllegalArgumentException if the vectors cannot be pooled by this implementation.
+   */
+  FloatVector pool(List<FloatVector> vectors);
+
+  /**
+   * Computes the distance between two pooled vectors created by {@link #pool(List)}.
+   *
+   * @param pooled1 The pooled vector of the first item.
+   * @param pooled2 The pooled vector of the second item.
+   * @return A value representing the distance. Lower values indicate closer items.
+   */
+  double computePooled(FloatVector pooled1, FloatVector pooled2);
+}
@@ -3,6 +3,7 @@ package io.github.habedi.mvhnsw.distance;
 import static jdk.incubator.vector.FloatVector.SPECIES_PREFERRED;
 
 import io.github.habedi.mvhnsw.common.FloatVector;
+import io.github.habedi.mvhnsw.common.SparseFloatVector;
 import java.io.Serial;
 import java.io.Serializable;
 import jdk.incubator.vector.VectorOperators;
@@ -14,7 +15,8 @@ import jdk.incubator.vector.VectorSpecies;
  * <p>Squared Euclidean distance is the sum of the squared differences between corresponding
  * elements of the two vectors. It is often used in place of Euclidean distance to avoid the
  * computationally expensive square root operation when only the relative order of distances is
- * important. This implementation is optimized using the Java Vector API for performance.
+ * important. This implementation is optimized using the Java Vector API for performance. When one
+ * or both vectors are {@link SparseFloatVector}s, only their non-zero entries are visited.
  */
 public class SquaredEuclidean implements Distance<FloatVector>, Serializable {
 
@@ -35,6 +37,12 @@ public class SquaredEuclidean implements Distance<FloatVector>, Serializable {
     if (a.length() != b.length()) {
       throw new IllegalArgumentException("Vector lengths must be equal.");
     }
+    if (a instanceof SparseFloatVector sa) {
+      return b instanceof SparseFloatVector sb ? sparse(sa, sb) : mixed(sa, b);
+    }
+    if (b instanceof SparseFloatVector sb) {
+      return mixed(sb, a);
+    }
 
     float[] v1 = a.getUnsafeRawData();
     float[] v2 = b.getUnsafeRawData();
@@ -59,6 +67,49 @@ public class SquaredEuclidean implements Distance<FloatVector>, Serializable {
     return sumSq;
   }
 
+  /** Computes the distance between two sparse vectors by merging their index arrays. */
+  private static double sparse(SparseFloatVector a, SparseFloatVector b) {
+    int[] ia = a.getUnsafeIndices();
+    int[] ib = b.getUnsafeIndices();
+    float[] va = a.getUnsafeValues();
+    float[] vb = b.getUnsafeValues();
+    double sumSq = 0.0;
+    int i = 0;
+    int j = 0;
+    while (i < ia.length || j < ib.length) {
+      int x = i < ia.length ? ia[i] : Integer.MAX_VALUE;
+      int y = j < ib.length ? ib[j] : Integer.MAX_VALUE;
+      double diff;
+      if (x == y) {
+        diff = va[i++] - vb[j++];
+      } else if (x < y) {
+        diff = va[i++];
+      } else {
+        diff = vb[j++];
+      }
+      sumSq += diff * diff;
+    }
+    return sumSq;
+  }
+
+  /**
+   * Computes the distance between a sparse and a dense vector. Starts from the squared norm of the
+   * dense vector and corrects it at the non-zero positions of the sparse one.
+   */
+  private static double mixed(SparseFloatVector a, FloatVector b) {
+    int[] ia = a.getUnsafeIndices();
+    float[] va = a.getUnsafeValues();
+    float[] vb = b.getUnsafeRawData();
+    double norm = b.norm();
+    double sumSq = norm * norm;
+    for (int i = 0; i < ia.length; i++) {
+      double y = vb[ia[i]];
+      double diff = va[i] - y;
+      sumSq += diff * diff - y * y;
+    }
+    return Math.max(0.0, sumSq);
+  }
+
   /**
    * Overrides the default {@code computeSquared} to avoid redundant calculations.
    *
@@ -80,4 +131,15 @@ public class SquaredEuclidean implements Distance<FloatVector>, Serializable {
   public String getName() {
     return "SquaredEuclidean";
   }
+
+  /** Distances of the same class are equal, since they have no parameters. */
+  @Override
+  public boolean equals(Object obj) {
+    return obj != null && obj.getClass() == getClass();
+  }
+
+  @Override
+  public int hashCode() {
+    return getClass().hashCode();
+  }
 }
@@ -3,6 +3,8 @@ package io.github.habedi.mvhnsw.distance;
 import io.github.habedi.mvhnsw.common.FloatVector;
 import java.io.Serial;
 import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 
@@ -12,7 +14,12 @@ import java.util.Objects;
  *
  * <p>This allows for combining different distance metrics (e.g., 70% Cosine and 30% Euclidean) into
  * a single score, although it is not necessary. The weights are automatically normalized to sum to
- * 1.0.
+ * 1.0. Components with a weight of zero are skipped entirely, so their distances are never
+ * computed.
+ *
+ * <p>{@link #withWeights(float[])} creates a copy with different weights that shares the same
+ * distance functions, which lets an index rank a single query with different weights without being
+ * rebuilt.
  */
 public class WeightedAverageDistance implements MultiVectorDistance, Serializable {
 
@@ -44,6 +51,48 @@ public class WeightedAverageDistance implements MultiVectorDistance, Serializabl
     this.weights = normalize(weights);
   }
 
+  /**
+   * Creates a copy of this distance that uses different weights with the same distance functions.
+   *
+   * @param newWeights A float array of weights, one per distance function. The weights will be
+   *     normalized, and components with a weight of zero are skipped.
+   * @return A new WeightedAverageDistance with the given weights.
+   * @throws NullPointerException if the weights are null.
+   * @throws IllegalArgumentException if the number of weights does not match the number of
+   *     distances, or if any weight is negative or the sum of weights is zero.
+   */
+  public WeightedAverageDistance withWeights(float[] newWeights) {
+    return new WeightedAverageDistance(distances, newWeights);
+  }
+
+  /**
+   * Returns the number of distance functions (and therefore vectors per item) this distance
+   * expects.
+   *
+   * @return The number of components.
+   */
+  public int size() {
+    return distances.size();
+  }
+
+  /**
+   * Returns the distance functions of this distance, one per vector of an item.
+   *
+   * @return An unmodifiable view of the distance functions.
+   */
+  public List<Distance<FloatVector>> getDistances() {
+    return Collections.unmodifiableList(distances);
+  }
+
+  /**
+   * Returns the normalized weights of this distance.
+   *
+   * @return A copy of the normalized weights array.
+   */
+  public float[] getWeights() {
+    return weights.clone();
+  }
+
   /** Normalizes the given weights to sum to 1.0. */
   private float[] normalize(float[] w) {
     double sum = 0.0;
@@ -86,8 +135,25 @@ public class WeightedAverageDistance implements MultiVectorDistance, Serializabl
 
     double totalDistance = 0.0;
     for (int i = 0; i < vectors1.size(); i++) {
+      if (weights[i] == 0.0f) {
+        continue;
+      }
       totalDistance += weights[i] * distances.get(i).compute(vectors1.get(i), vectors2.get(i));
     }
     return totalDistance;
   }
+
+  /** Two weighted averages are equal if they have equal distance functions and weights. */
+  @Override
+  public boolean equals(Object obj) {
+    return obj != null
+        && obj.getClass() == getClass()
+        && distances.equals(((WeightedAverageDistance) obj).distances)
+        && Arrays.equals(weights, ((WeightedAverageDistance) obj).weights);
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * distances.hashCode() + Arrays.hashCode(weights);
+  }
 }
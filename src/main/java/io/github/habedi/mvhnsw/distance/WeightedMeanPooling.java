@@ -0,0 +1,100 @@
+package io.github.habedi.mvhnsw.distance;
+
+import io.github.habedi.mvhnsw.common.FloatVector;
+import java.io.Serial;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A {@link PooledDistance} that reduces the vectors of an item to their weighted mean.
+ *
+ * <p>This is the natural proxy for a {@link WeightedAverageDistance} whose components live in the
+ * same embedding space (for example, a title and a body embedding from the same model). All vectors
+ * of an item must have the same dimension. The weights are normalized to sum to 1.0.
+ */
+public class WeightedMeanPooling implements PooledDistance, Serializable {
+
+  @Serial private static final long serialVersionUID = 1L;
+  private final float[] weights;
+  private final Distance<FloatVector> distance;
+
+  /**
+   * Constructs a new WeightedMeanPooling.
+   *
+   * @param weights The weight of each vector in the mean. The weights will be normalized.
+   * @param distance The {@link Distance} used to compare pooled vectors.
+   * @throws NullPointerException if the weights or distance are null.
+   * @throws IllegalArgumentException if the weights are empty, any weight is negative, or the sum
+   *     of weights is zero.
+   */
+  public WeightedMeanPooling(float[] weights, Distance<FloatVector> distance) {
+    Objects.requireNonNull(weights, "Weights array cannot be null.");
+    this.distance = Objects.requireNonNull(distance, "Distance cannot be null.");
+    if (weights.length == 0) {
+      throw new IllegalArgumentException("Weights array cannot be empty.");
+    }
+    double sum = 0.0;
+    for (float weight : weights) {
+      if (weight < 0) {
+        throw new IllegalArgumentException("Weights must be non-negative.");
+      }
+      sum += weight;
+    }
+    if (sum == 0.0) {
+      throw new IllegalArgumentException("Sum of weights cannot be zero.");
+    }
+    this.weights = new float[weights.length];
+    for (int i = 0; i < weights.length; i++) {
+      this.weights[i] = (float) (weights[i] / sum);
+    }
+  }
+
+  /**
+   * Computes the weighted mean of the given vectors.
+   *
+   * @param vectors The list of vectors representing an item.
+   * @return The weighted mean vector.
+   * @throws IllegalArgumentException if the number of vectors does not match the number of weights
+   *     or the vectors do not all have the same dimension.
+   */
+  @Override
+  public FloatVector pool(List<FloatVector> vectors) {
+    if (vectors.size() != weights.length) {
+      throw new IllegalArgumentException("Number of vectors must match the number of weights.");
+    }
+    int dim = vectors.get(0).length();
+    float[] mean = new float[dim];
+    for (int i = 0; i < weights.length; i++) {
+      FloatVector vector = vectors.get(i);
+      if (vector.length() != dim) {
+        throw new IllegalArgumentException("All vectors must have the same dimension.");
+      }
+      float[] data = vector.getUnsafeRawData();
+      for (int k = 0; k < dim; k++) {
+        mean[k] += weights[i] * data[k];
+      }
+    }
+    return new FloatVector(mean);
+  }
+
+  @Override
+  public double computePooled(FloatVector pooled1, FloatVector pooled2) {
+    return distance.compute(pooled1, pooled2);
+  }
+
+  /** Two poolings are equal if they have equal weights and distance functions. */
+  @Override
+  public boolean equals(Object obj) {
+    return obj != null
+        && obj.getClass() == getClass()
+        && Arrays.equals(weights, ((WeightedMeanPooling) obj).weights)
+        && distance.equals(((WeightedMeanPooling) obj).distance);
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * Arrays.hashCode(weights) + distance.hashCode();
+  }
+}
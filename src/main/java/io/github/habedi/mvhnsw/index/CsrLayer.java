@@ -0,0 +1,267 @@
+package io.github.habedi.mvhnsw.index;
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The connections of one layer of a {@link FrozenMultiVectorHNSW}, in compressed sparse row (CSR)
+ * form.
+ *
+ * <p>The neighbor lists of all items on the layer are stored back to back in chunks of at most
+ * {@code 2^chunkBits} ints, or bytes if the lists are compressed, so a layer is not limited to the
+ * 2^31 entries of a single array. A list never spans two chunks, and each item has a {@code long}
+ * offset whose high bits pick the chunk and whose low bits give the position in it. Each list
+ * starts with its length, so no end offset is needed.
+ *
+ * <p>Compressed lists are sorted and stored as varints: the length, the zigzag-encoded difference
+ * of the first ordinal from the item's own ordinal, and then the differences between consecutive
+ * ordinals.
+ *
+ * <p>Layer 0 holds every item, so it is indexed by ordinal directly. An upper layer holds only a
+ * small fraction of the items, so it keeps their ordinals in a sorted array and finds the offset
+ * of an item with a binary search, instead of keeping an offset for every item of the index.
+ */
+final class CsrLayer implements Serializable {
+
+  @Serial private static final long serialVersionUID = 1L;
+
+  /** The default number of bits of the position within a chunk, for chunks of 64M entries. */
+  static final int DEFAULT_CHUNK_BITS = 26;
+
+  /** The size of the first chunk, which grows by doubling until it reaches the largest size. */
+  private static final int INITIAL_CHUNK_SIZE = 1024;
+
+  /** The ordinals on this layer in ascending order, or null if every ordinal is on it. */
+  private final int[] members;
+
+  /** The chunk and position of the neighbor list of each member. */
+  private final long[] offsets;
+
+  /** The neighbor lists, or null if they are compressed. */
+  private final int[][] lists;
+
+  /** The compressed neighbor lists, or null if they are not compressed. */
+  private final byte[][] codes;
+
+  private final int chunkBits;
+  private final int maxDegree;
+
+  private CsrLayer(
+      int[] members, long[] offsets, int[][] lists, byte[][] codes, int chunkBits, int maxDegree) {
+    this.members = members;
+    this.offsets = offsets;
+    this.lists = lists;
+    this.codes = codes;
+    this.chunkBits = chunkBits;
+    this.maxDegree = maxDegree;
+  }
+
+  /** Returns the largest number of neighbors of any item on this layer. */
+  int maxDegree() {
+    return maxDegree;
+  }
+
+  /**
+   * Copies or decodes the neighbors of an item into a buffer and returns their number, which is 0
+   * if the item is not on this layer.
+   */
+  int neighbors(int ordinal, int[] buffer) {
+    int index = ordinal;
+    if (members != null) {
+      index = Arrays.binarySearch(members, ordinal);
+      if (index < 0) {
+        return 0;
+      }
+    }
+    long offset = offsets[index];
+    int chunk = (int) (offset >>> chunkBits);
+    int position = (int) (offset & ((1L << chunkBits) - 1));
+    if (codes == null) {
+      int[] data = lists[chunk];
+      int count = data[position];
+      System.arraycopy(data, position + 1, buffer, 0, count);
+      return count;
+    }
+    byte[] data = codes[chunk];
+    int count = -1;
+    int decoded = 0;
+    int previous = ordinal;
+    while (decoded != count) {
+      int value = 0;
+      int shift = 0;
+      byte b;
+      do {
+        b = data[position++];
+        value |= (b & 0x7F) << shift;
+        shift += 7;
+      } while (b < 0);
+      if (count < 0) {
+        count = value;
+      } else {
+        // The first difference is relative to the item itself and can be negative
+        previous += decoded == 0 ? (value >>> 1) ^ -(value & 1) : value;
+        buffer[decoded++] = previous;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Returns the memory used by the lists and their offsets, in bytes, not counting array headers.
+   */
+  long bytes() {
+    long bytes = 8L * offsets.length;
+    if (members != null) {
+      bytes += 4L * members.length;
+    }
+    if (codes != null) {
+      for (byte[] chunk : codes) {
+        bytes += chunk.length;
+      }
+    } else {
+      for (int[] chunk : lists) {
+        bytes += 4L * chunk.length;
+      }
+    }
+    return bytes;
+  }
+
+  /** Builds a layer from the neighbor lists of its items, added in ascending order of ordinal. */
+  static final class Builder {
+    private final boolean compress;
+    private final int chunkBits;
+    private final int[] members;
+    private final long[] offsets;
+    private final List<int[]> intChunks = new ArrayList<>();
+    private final List<byte[]> byteChunks = new ArrayList<>();
+    private int[] ints;
+    private byte[] bytes;
+    private int position = 0;
+    private int count = 0;
+    private int maxDegree = 0;
+
+    /**
+     * Creates a builder.
+     *
+     * @param size The number of items in the index.
+     * @param memberCount The number of items on this layer.
+     * @param compress Whether to compress the neighbor lists.
+     */
+    Builder(int size, int memberCount, boolean compress) {
+      this(size, memberCount, compress, DEFAULT_CHUNK_BITS);
+    }
+
+    Builder(int size, int memberCount, boolean compress, int chunkBits) {
+      this.compress = compress;
+      this.chunkBits = chunkBits;
+      this.members = memberCount < size ? new int[memberCount] : null;
+      this.offsets = new long[memberCount];
+      int initial = Math.min(INITIAL_CHUNK_SIZE, 1 << chunkBits);
+      if (compress) {
+        bytes = new byte[initial];
+      } else {
+        ints = new int[initial];
+      }
+    }
+
+    /**
+     * Adds the neighbor list of the next item on this layer. Compressed lists are sorted in place.
+     */
+    void add(int ordinal, int[] neighbors, int degree) {
+      if (members != null) {
+        members[count] = ordinal;
+      }
+      maxDegree = Math.max(maxDegree, degree);
+      // A varint of an int takes at most 5 bytes
+      reserve(compress ? 5 * (degree + 1) : degree + 1);
+      offsets[count++] = ((long) chunkCount() << chunkBits) | position;
+      if (!compress) {
+        ints[position++] = degree;
+        System.arraycopy(neighbors, 0, ints, position, degree);
+        position += degree;
+        return;
+      }
+      Arrays.sort(neighbors, 0, degree);
+      writeVarint(degree);
+      int previous = ordinal;
+      for (int j = 0; j < degree; j++) {
+        int difference = neighbors[j] - previous;
+        writeVarint(j == 0 ? (difference << 1) ^ (difference >> 31) : difference);
+        previous = neighbors[j];
+      }
+    }
+
+    private void writeVarint(int value) {
+      while ((value & ~0x7F) != 0) {
+        bytes[position++] = (byte) ((value & 0x7F) | 0x80);
+        value >>>= 7;
+      }
+      bytes[position++] = (byte) value;
+    }
+
+    /**
+     * Makes room for {@code needed} more entries in the current chunk, growing it or starting a new
+     * one, so that a list does not span two chunks.
+     */
+    private void reserve(int needed) {
+      int length = compress ? bytes.length : ints.length;
+      int limit = 1 << chunkBits;
+      // The start of a list must fit in the position bits of its offset
+      if (position + needed <= Math.min(length, limit)) {
+        return;
+      }
+      if (position + needed <= limit) {
+        int grown = Math.min(limit, Math.max(length * 2, position + needed));
+        if (compress) {
+          bytes = Arrays.copyOf(bytes, grown);
+        } else {
+          ints = Arrays.copyOf(ints, grown);
+        }
+        return;
+      }
+      if (position > 0) {
+        seal();
+      }
+      // A list longer than a chunk gets a chunk of its own, still starting at position 0
+      int fresh = Math.max(Math.min(INITIAL_CHUNK_SIZE, limit), needed);
+      if (compress) {
+        bytes = new byte[fresh];
+      } else {
+        ints = new int[fresh];
+      }
+      position = 0;
+    }
+
+    /** Moves the current chunk, trimmed to its used length, to the finished chunks. */
+    private void seal() {
+      if (compress) {
+        byteChunks.add(position < bytes.length ? Arrays.copyOf(bytes, position) : bytes);
+      } else {
+        intChunks.add(position < ints.length ? Arrays.copyOf(ints, position) : ints);
+      }
+    }
+
+    private int chunkCount() {
+      return compress ? byteChunks.size() : intChunks.size();
+    }
+
+    /** Returns the finished layer. The builder must not be used afterwards. */
+    CsrLayer build() {
+      if (count != offsets.length) {
+        throw new IllegalStateException(
+            "Expected " + offsets.length + " lists on the layer, but got " + count);
+      }
+      seal();
+      return new CsrLayer(
+          members,
+          offsets,
+          compress ? null : intChunks.toArray(new int[0][]),
+          compress ? byteChunks.toArray(new byte[0][]) : null,
+          chunkBits,
+          maxDegree);
+    }
+  }
+}
@@ -0,0 +1,1501 @@
+package io.github.habedi.mvhnsw.index;
+
+import io.github.habedi.mvhnsw.common.FloatVector;
+import io.github.habedi.mvhnsw.distance.Cosine;
+import io.github.habedi.mvhnsw.distance.DotProduct;
+import io.github.habedi.mvhnsw.distance.MultiVectorDistance;
+import io.github.habedi.mvhnsw.distance.SquaredEuclidean;
+import io.github.habedi.mvhnsw.distance.WeightedAverageDistance;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * An {@link Index} whose graph and full vectors live in a file on local disk, in the style of
+ * DiskANN.
+ *
+ * <p>The index is a single-layer Vamana graph. Each item is stored in a fixed-size record that
+ * holds its ID, its adjacency list, and its full vectors, and records are packed into 4 KiB sectors
+ * so that reading an item costs one (or a few) aligned reads. Only a compressed copy of the vectors
+ * is kept in memory: the vectors of an item are product-quantized to {@code codeSize} bytes (32 by
+ * default), however many dimensions they have. Records are stored in ascending order of ID, so the
+ * only other memory per item is its ID, which is found by binary search. The codes, the sorted IDs,
+ * and a bitmap of removed items are stored after the records, so opening the index reads only them
+ * and no record.
+ *
+ * <p>A search is a beam search that starts from the medoid of the items. In each step, the {@code
+ * beamWidth} closest unexpanded candidates (by compressed distance) are read from disk in parallel,
+ * which yields both their neighbors and their full vectors. The compressed vectors steer the
+ * search, and the full vectors read along the way are used to re-rank the results exactly. For a
+ * {@link WeightedAverageDistance} of squared Euclidean, dot product, and cosine distances, the
+ * distance to a compressed item is a sum of entries of a table computed once per query; other
+ * distances decode the compressed vectors of each candidate first.
+ *
+ * <p>The index is built in one go with {@link Builder#build(Map, Path)} and is opened again with
+ * {@link #open(Path)}. It cannot be modified afterward, except that items can be removed: removals
+ * are written to disk immediately, and {@link #vacuum()} rebuilds the index without them. The build
+ * holds all items in memory and inserts them into the graph on a single thread, so large indexes
+ * should be built ahead of time on a machine with enough memory and then copied to the machines
+ * that serve them. All items must have the same number of vectors, and the vectors at each position
+ * must have the same dimension. The pruning rule assumes non-negative distances, such as the
+ * squared Euclidean or cosine distance.
+ *
+ * <p>Instances hold an open file and must be closed with {@link #close()}.
+ */
+public final class DiskVamanaIndex implements Index, Closeable {
+
+  private static final Logger log = LogManager.getLogger(DiskVamanaIndex.class);
+
+  private static final int MAGIC = 0x4D56444B;
+  private static final int VERSION = 3;
+  private static final int SECTOR_SIZE = 4096;
+
+  /** The fixed part of a record: ID (8 bytes) and degree (4 bytes). */
+  private static final int RECORD_HEADER_SIZE = 12;
+
+  /** The IDs are read from the file in pieces of this many. */
+  private static final int ID_READ_SIZE = 1 << 16;
+
+  /** The codes are kept in arrays of at most {@code 2^CODE_CHUNK_BYTE_BITS} bytes each. */
+  private static final int CODE_CHUNK_BYTE_BITS = 30;
+
+  private final Path path;
+
+  // The fields below are read from the index file, and are taken over from the rebuilt file after
+  // a vacuum
+  private MultiVectorDistance multiVectorDistance;
+  private Layout layout;
+  private int entryPoint;
+  private float alpha;
+  private int buildListSize;
+  private FileChannel channel;
+
+  /** The ID of the item at each ordinal, in ascending order. */
+  private long[] ids;
+
+  private BitSet deleted;
+
+  /** The position in the file of the bitmap of removed items, one bit per ordinal. */
+  private long deletedStart;
+
+  private ProductQuantizer quantizer;
+
+  /** The compressed vectors, in chunks of {@code 2^codeChunkBits} items. */
+  private byte[][] codes;
+
+  private int codeChunkBits;
+
+  /** The kind of each component of the distance, or null if it cannot use a {@link QueryTable}. */
+  private QueryTable.Kind[] tableKinds;
+
+  private float[] tableWeights;
+
+  private volatile int beamWidth = 4;
+  private volatile Executor executor = ForkJoinPool.commonPool();
+
+  /** A lock that keeps searches from seeing a half-applied removal. */
+  private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+  private DiskVamanaIndex(Path path) throws IOException {
+    this.path = path;
+    readFile(path);
+  }
+
+  /**
+   * Reads the header, the codes, the IDs, and the removals from an index file. The records are only
+   * read by searches.
+   */
+  private void readFile(Path file) throws IOException {
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+      if (in.readInt() != MAGIC) {
+        throw new IOException("Not a disk index file: " + file);
+      }
+      int version = in.readInt();
+      if (version != VERSION) {
+        throw new IOException("Unsupported disk index version: " + version);
+      }
+      int count = in.readInt();
+      int maxDegree = in.readInt();
+      this.buildListSize = in.readInt();
+      this.alpha = in.readFloat();
+      this.entryPoint = in.readInt();
+      int[] dims = new int[in.readInt()];
+      for (int i = 0; i < dims.length; i++) {
+        dims[i] = in.readInt();
+      }
+      byte[] distanceBytes = new byte[in.readInt()];
+      in.readFully(distanceBytes);
+      this.multiVectorDistance = deserializeDistance(distanceBytes);
+      this.quantizer = ProductQuantizer.read(in, dims);
+      int headerSize = 4 * (9 + dims.length) + distanceBytes.length + quantizer.serializedSize();
+      this.layout = new Layout(count, maxDegree, dims, headerSize);
+    }
+
+    int count = layout.count;
+    this.tableKinds = QueryTable.kindsOf(multiVectorDistance, layout.dims.length);
+    if (tableKinds != null) {
+      this.tableWeights = ((WeightedAverageDistance) multiVectorDistance).getWeights();
+    }
+    this.channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    try {
+      // The codes follow the records, in chunks of a power of two of whole items
+      int codeSize = quantizer.codeSize();
+      this.codeChunkBits =
+          CODE_CHUNK_BYTE_BITS - (32 - Integer.numberOfLeadingZeros(Math.max(codeSize - 1, 0)));
+      int chunkItems = 1 << codeChunkBits;
+      this.codes = new byte[(int) (((long) count + chunkItems - 1) >>> codeChunkBits)][];
+      long position = layout.end();
+      for (int c = 0; c < codes.length; c++) {
+        codes[c] = new byte[Math.min(chunkItems, count - (c << codeChunkBits)) * codeSize];
+        readFully(ByteBuffer.wrap(codes[c]), position);
+        position += codes[c].length;
+      }
+
+      // The sorted IDs and the bitmap of removed items follow the codes
+      this.ids = new long[count];
+      ByteBuffer buffer = ByteBuffer.allocate(8 * Math.min(count, ID_READ_SIZE));
+      for (int from = 0; from < count; from += ID_READ_SIZE) {
+        int length = Math.min(ID_READ_SIZE, count - from);
+        buffer.clear().limit(8 * length);
+        readFully(buffer, position);
+        buffer.flip();
+        buffer.asLongBuffer().get(ids, from, length);
+        position += 8L * length;
+      }
+      for (int ordinal = 1; ordinal < count; ordinal++) {
+        if (ids[ordinal] <= ids[ordinal - 1]) {
+          throw new IOException("The items of disk index " + file + " are not sorted by ID.");
+        }
+      }
+      this.deletedStart = position;
+      byte[] bitmap = new byte[(count + 7) / 8];
+      readFully(ByteBuffer.wrap(bitmap), deletedStart);
+      this.deleted = BitSet.valueOf(bitmap);
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+    log.info(
+        "Opened disk index {} with {} items, R={}, {} bytes per record, {} bytes per code",
+        file,
+        count,
+        layout.maxDegree,
+        layout.recordSize,
+        quantizer.codeSize());
+  }
+
+  /**
+   * Creates a new {@link Builder} to configure and build a DiskVamanaIndex.
+   *
+   * @return A new Builder instance.
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Opens an index file written by {@link Builder#build(Map, Path)}.
+   *
+   * @param path The path to the index file.
+   * @return The opened index.
+   * @throws IOException if the file cannot be read or is not a valid index file.
+   */
+  public static DiskVamanaIndex open(Path path) throws IOException {
+    return new DiskVamanaIndex(path);
+  }
+
+  /**
+   * Sets the number of candidates read from disk in parallel in each step of a search. Larger
+   * values use more of the disk's parallelism and take fewer steps, but may read more records.
+   *
+   * @param beamWidth A positive integer.
+   * @throws IllegalArgumentException if beamWidth is not positive.
+   */
+  public void setBeamWidth(int beamWidth) {
+    if (beamWidth <= 0) {
+      throw new IllegalArgumentException("beamWidth must be positive.");
+    }
+    this.beamWidth = beamWidth;
+  }
+
+  /**
+   * Sets the executor used to read records in parallel. Defaults to the common fork-join pool.
+   *
+   * @param executor The executor to use.
+   */
+  public void setExecutor(Executor executor) {
+    this.executor = Objects.requireNonNull(executor, "Executor cannot be null.");
+  }
+
+  /**
+   * Not supported, since the graph is stored on disk in its final form. Build a new index instead.
+   *
+   * @throws UnsupportedOperationException always.
+   */
+  @Override
+  public void add(long id, List<FloatVector> vectors) {
+    throw new UnsupportedOperationException("A disk index cannot be modified after it is built.");
+  }
+
+  /**
+   * Not supported, since the graph is stored on disk in its final form. Build a new index instead.
+   *
+   * @throws UnsupportedOperationException always.
+   */
+  @Override
+  public void addAll(Map<Long, List<FloatVector>> items) {
+    throw new UnsupportedOperationException("A disk index cannot be modified after it is built.");
+  }
+
+  /**
+   * Marks an item as deleted, both in memory and in the index file.
+   *
+   * @param id The unique identifier of the item to remove.
+   * @return {@code true} if the item was found and marked for deletion, {@code false} otherwise.
+   * @throws UncheckedIOException if the deletion cannot be written to the file.
+   */
+  @Override
+  public boolean remove(long id) {
+    lock.writeLock().lock();
+    try {
+      int ordinal = Arrays.binarySearch(ids, id);
+      if (ordinal < 0 || deleted.get(ordinal)) {
+        return false;
+      }
+      // The bitmap is written a byte at a time, and the byte of this item includes its neighbors
+      int first = ordinal & ~7;
+      byte[] bits = deleted.get(first, first + 8).toByteArray();
+      byte flags = (byte) ((bits.length > 0 ? bits[0] : 0) | (1 << (ordinal - first)));
+      channel.write(ByteBuffer.wrap(new byte[] {flags}), deletedStart + ordinal / 8);
+      deleted.set(ordinal);
+      return true;
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not write the deletion of item " + id, e);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Searches the index for the {@code k} nearest neighbors to a given query.
+   *
+   * @param queryVectors The list of vectors representing the query.
+   * @param k The number of nearest neighbors to return.
+   * @param efSearch The number of candidates kept in the search list. Must be >= k.
+   * @return A list of {@link SearchResult}s, sorted by exact distance in ascending order.
+   * @throws IllegalArgumentException if efSearch is less than k.
+   * @throws UncheckedIOException if the index file cannot be read.
+   */
+  @Override
+  public List<SearchResult> search(List<FloatVector> queryVectors, int k, int efSearch) {
+    if (efSearch < k) {
+      throw new IllegalArgumentException("efSearch must be greater than or equal to k");
+    }
+
+    lock.readLock().lock();
+    try {
+      if (layout.count == 0) {
+        return Collections.emptyList();
+      }
+      QueryTable table =
+          tableKinds != null
+              ? new QueryTable(quantizer, queryVectors, tableKinds, tableWeights)
+              : null;
+      List<Candidate> list = new ArrayList<>();
+      Set<Integer> seen = new HashSet<>();
+      PriorityQueue<SearchResult> best =
+          new PriorityQueue<>(Comparator.comparingDouble(SearchResult::score).reversed());
+      list.add(new Candidate(entryPoint, approximateDistance(queryVectors, table, entryPoint)));
+      seen.add(entryPoint);
+
+      while (true) {
+        List<Candidate> beam = new ArrayList<>(beamWidth);
+        for (int i = 0; i < list.size() && beam.size() < beamWidth; i++) {
+          Candidate candidate = list.get(i);
+          if (!candidate.expanded) {
+            candidate.expanded = true;
+            beam.add(candidate);
+          }
+        }
+        if (beam.isEmpty()) {
+          break;
+        }
+
+        for (Record record : readAll(beam)) {
+          // Full vectors come with the record, so the exact distance costs no extra read
+          if (!deleted.get(record.ordinal)) {
+            double distance = multiVectorDistance.compute(queryVectors, record.toVectors(layout));
+            best.add(new SearchResult(record.id, distance));
+            if (best.size() > k) {
+              best.poll();
+            }
+          }
+          for (int neighbor : record.neighbors) {
+            if (seen.add(neighbor)) {
+              double distance = approximateDistance(queryVectors, table, neighbor);
+              insert(list, new Candidate(neighbor, distance));
+              if (list.size() > efSearch) {
+                list.remove(list.size() - 1);
+              }
+            }
+          }
+        }
+      }
+
+      List<SearchResult> results = new ArrayList<>(best);
+      results.sort(Comparator.comparingDouble(SearchResult::score));
+      return results;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /** Reads the records of a beam of candidates, in parallel if there is more than one. */
+  private List<Record> readAll(List<Candidate> beam) {
+    if (beam.size() == 1) {
+      return List.of(readRecord(beam.get(0).ordinal));
+    }
+    List<CompletableFuture<Record>> reads = new ArrayList<>(beam.size());
+    for (Candidate candidate : beam) {
+      reads.add(CompletableFuture.supplyAsync(() -> readRecord(candidate.ordinal), executor));
+    }
+    return Futures.joinAll(reads);
+  }
+
+  /** Inserts a candidate into a list sorted by distance. */
+  private static void insert(List<Candidate> list, Candidate candidate) {
+    int low = 0;
+    int high = list.size();
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (list.get(mid).distance <= candidate.distance) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    list.add(low, candidate);
+  }
+
+  /**
+   * Computes the distance between a query and the compressed vectors of an item, from the query's
+   * table if it has one.
+   */
+  private double approximateDistance(
+      List<FloatVector> queryVectors, QueryTable table, int ordinal) {
+    byte[] chunk = codes[ordinal >>> codeChunkBits];
+    int offset = (ordinal & ((1 << codeChunkBits) - 1)) * quantizer.codeSize();
+    if (table != null) {
+      return table.distance(chunk, offset);
+    }
+    return multiVectorDistance.compute(queryVectors, quantizer.decode(chunk, offset));
+  }
+
+  /** Reads the record of an item from the index file. */
+  private Record readRecord(int ordinal) {
+    ByteBuffer buffer = ByteBuffer.allocate(layout.recordSize);
+    try {
+      readFully(buffer, layout.offset(ordinal));
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not read item at ordinal " + ordinal, e);
+    }
+    buffer.flip();
+    return Record.read(ordinal, buffer, layout);
+  }
+
+  /** Fills a buffer from the index file, starting at a position. */
+  private void readFully(ByteBuffer buffer, long position) throws IOException {
+    while (buffer.hasRemaining()) {
+      int read = channel.read(buffer, position + buffer.position());
+      if (read < 0) {
+        throw new EOFException("Unexpected end of disk index file.");
+      }
+    }
+  }
+
+  /** Reads every record of the index file in order. */
+  private void scanRecords(RecordConsumer consumer) throws IOException {
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 20))) {
+      long position = 0;
+      byte[] bytes = new byte[layout.recordSize];
+      for (int ordinal = 0; ordinal < layout.count; ordinal++) {
+        long offset = layout.offset(ordinal);
+        in.skipNBytes(offset - position);
+        in.readFully(bytes);
+        position = offset + bytes.length;
+        consumer.accept(ordinal, Record.read(ordinal, ByteBuffer.wrap(bytes), layout));
+      }
+    }
+  }
+
+  /**
+   * Reads the vectors of an item from the index file.
+   *
+   * @param id The unique identifier of the item.
+   * @return The vectors of the item, or empty if it does not exist or has been removed.
+   * @throws UncheckedIOException if the index file cannot be read.
+   */
+  @Override
+  public Optional<List<FloatVector>> get(long id) {
+    lock.readLock().lock();
+    try {
+      int ordinal = Arrays.binarySearch(ids, id);
+      if (ordinal < 0 || deleted.get(ordinal)) {
+        return Optional.empty();
+      }
+      return Optional.of(readRecord(ordinal).toVectors(layout));
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public int size() {
+    lock.readLock().lock();
+    try {
+      return layout.count - deleted.cardinality();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public Set<Long> keySet() {
+    lock.readLock().lock();
+    try {
+      Set<Long> keys = new HashSet<>();
+      for (int ordinal = 0; ordinal < layout.count; ordinal++) {
+        if (!deleted.get(ordinal)) {
+          keys.add(ids[ordinal]);
+        }
+      }
+      return keys;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public MultiVectorDistance getDistance() {
+    return multiVectorDistance;
+  }
+
+  /**
+   * Copies the index file, including removals, to another path.
+   *
+   * @param path The {@link Path} to copy the index file to.
+   * @throws IOException if an I/O error occurs while copying.
+   */
+  @Override
+  public void save(Path path) throws IOException {
+    lock.readLock().lock();
+    try {
+      channel.force(false);
+      Files.copy(this.path, path, StandardCopyOption.REPLACE_EXISTING);
+      log.info("Copied disk index to {}", path);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Not supported, since the index file is immutable. Build a new index instead.
+   *
+   * @throws UnsupportedOperationException always.
+   */
+  @Override
+  public void clear() {
+    throw new UnsupportedOperationException("A disk index cannot be modified after it is built.");
+  }
+
+  /**
+   * Rebuilds the index file without the removed items, using the same build parameters, and
+   * replaces the old file with it. Like the initial build, this loads all remaining items into
+   * memory. The rebuilt file is written next to the old one and opened before it replaces it, so
+   * this index stays usable if the rebuild fails. Searches wait until the rebuilt file is open.
+   *
+   * @throws UncheckedIOException if the index cannot be rebuilt.
+   */
+  @Override
+  public void vacuum() {
+    lock.writeLock().lock();
+    try {
+      int removed = deleted.cardinality();
+      Map<Long, List<FloatVector>> items = new LinkedHashMap<>();
+      scanRecords(
+          (ordinal, record) -> {
+            if (!deleted.get(ordinal)) {
+              items.put(record.id, record.toVectors(layout));
+            }
+          });
+      Path rebuilt = path.resolveSibling(path.getFileName() + ".rebuild");
+      DiskVamanaIndex reopened;
+      try {
+        new Builder()
+            .withDistance(multiVectorDistance)
+            .withMaxDegree(layout.maxDegree)
+            .withBuildListSize(buildListSize)
+            .withAlpha(alpha)
+            .withCodeSize(quantizer.codeSize())
+            .write(items, rebuilt);
+        reopened = new DiskVamanaIndex(rebuilt);
+      } catch (IOException | RuntimeException e) {
+        Files.deleteIfExists(rebuilt);
+        throw e;
+      }
+      try {
+        // The open channel of the rebuilt file stays valid when the file is moved
+        Files.move(rebuilt, path, StandardCopyOption.REPLACE_EXISTING);
+      } catch (IOException e) {
+        reopened.close();
+        Files.deleteIfExists(rebuilt);
+        throw e;
+      }
+
+      FileChannel previous = channel;
+      takeOver(reopened);
+      try {
+        previous.close();
+      } catch (IOException e) {
+        log.warn("Could not close the replaced disk index file {}", path, e);
+      }
+      log.info("Rebuilt disk index {} without {} removed items.", path, removed);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not rebuild disk index " + path, e);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /** Takes over the state read from the file of another index, which must not be used afterward. */
+  private void takeOver(DiskVamanaIndex other) {
+    this.multiVectorDistance = other.multiVectorDistance;
+    this.layout = other.layout;
+    this.entryPoint = other.entryPoint;
+    this.alpha = other.alpha;
+    this.buildListSize = other.buildListSize;
+    this.channel = other.channel;
+    this.ids = other.ids;
+    this.deleted = other.deleted;
+    this.deletedStart = other.deletedStart;
+    this.quantizer = other.quantizer;
+    this.codes = other.codes;
+    this.codeChunkBits = other.codeChunkBits;
+    this.tableKinds = other.tableKinds;
+    this.tableWeights = other.tableWeights;
+  }
+
+  /**
+   * Closes the index file.
+   *
+   * @throws IOException if an I/O error occurs.
+   */
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  private static MultiVectorDistance deserializeDistance(byte[] bytes) throws IOException {
+    try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+      return (MultiVectorDistance) in.readObject();
+    } catch (ClassNotFoundException e) {
+      throw new IOException("Unknown distance class in disk index.", e);
+    }
+  }
+
+  /** Receives the records of the index file in order. */
+  private interface RecordConsumer {
+    void accept(int ordinal, Record record) throws IOException;
+  }
+
+  /** An entry of the search list. */
+  private static final class Candidate {
+    private final int ordinal;
+    private final double distance;
+    private boolean expanded = false;
+
+    Candidate(int ordinal, double distance) {
+      this.ordinal = ordinal;
+      this.distance = distance;
+    }
+  }
+
+  /** The position and size of the records in the index file. */
+  private static final class Layout {
+    private final int count;
+    private final int maxDegree;
+    private final int[] dims;
+    private final int totalDimension;
+    private final int recordSize;
+    private final long dataStart;
+
+    /** The number of records per sector, or 0 if each record spans several sectors. */
+    private final int recordsPerSector;
+
+    private final int sectorsPerRecord;
+
+    Layout(int count, int maxDegree, int[] dims, int headerSize) {
+      this.count = count;
+      this.maxDegree = maxDegree;
+      this.dims = dims;
+      this.totalDimension = Arrays.stream(dims).sum();
+      this.recordSize = RECORD_HEADER_SIZE + 4 * maxDegree + 4 * totalDimension;
+      this.dataStart = roundUp(headerSize);
+      this.recordsPerSector = recordSize <= SECTOR_SIZE ? SECTOR_SIZE / recordSize : 0;
+      this.sectorsPerRecord = (int) (roundUp(recordSize) / SECTOR_SIZE);
+    }
+
+    /** Returns the file offset of a record, which never crosses a sector boundary needlessly. */
+    long offset(int ordinal) {
+      if (recordsPerSector > 0) {
+        return dataStart
+            + (long) (ordinal / recordsPerSector) * SECTOR_SIZE
+            + (long) (ordinal % recordsPerSector) * recordSize;
+      }
+      return dataStart + (long) ordinal * sectorsPerRecord * SECTOR_SIZE;
+    }
+
+    /** Returns the end of the last record, rounded up to a whole sector. */
+    long end() {
+      return count == 0 ? dataStart : roundUp(offset(count - 1) + recordSize);
+    }
+
+    private static long roundUp(long size) {
+      return (size + SECTOR_SIZE - 1) / SECTOR_SIZE * SECTOR_SIZE;
+    }
+  }
+
+  /** A record of the index file: an item's ID, neighbors, and full vectors. */
+  private static final class Record {
+    private final int ordinal;
+    private final long id;
+    private final int[] neighbors;
+    private final float[] vectors;
+
+    private Record(int ordinal, long id, int[] neighbors, float[] vectors) {
+      this.ordinal = ordinal;
+      this.id = id;
+      this.neighbors = neighbors;
+      this.vectors = vectors;
+    }
+
+    static Record read(int ordinal, ByteBuffer buffer, Layout layout) {
+      long id = buffer.getLong();
+      int[] neighbors = new int[buffer.getInt()];
+      for (int i = 0; i < layout.maxDegree; i++) {
+        int neighbor = buffer.getInt();
+        if (i < neighbors.length) {
+          neighbors[i] = neighbor;
+        }
+      }
+      float[] vectors = new float[layout.totalDimension];
+      buffer.asFloatBuffer().get(vectors);
+      return new Record(ordinal, id, neighbors, vectors);
+    }
+
+    static void write(DataOutputStream out, long id, int[] neighbors, float[][] vectors, int r)
+        throws IOException {
+      out.writeLong(id);
+      out.writeInt(neighbors.length);
+      for (int i = 0; i < r; i++) {
+        out.writeInt(i < neighbors.length ? neighbors[i] : -1);
+      }
+      for (float[] vector : vectors) {
+        for (float value : vector) {
+          out.writeFloat(value);
+        }
+      }
+    }
+
+    List<FloatVector> toVectors(Layout layout) {
+      List<FloatVector> list = new ArrayList<>(layout.dims.length);
+      int from = 0;
+      for (int dim : layout.dims) {
+        list.add(new FloatVector(Arrays.copyOfRange(vectors, from, from + dim)));
+        from += dim;
+      }
+      return list;
+    }
+  }
+
+  /**
+   * A builder for configuring and building a {@link DiskVamanaIndex}. This provides a fluent API
+   * for setting parameters.
+   */
+  public static class Builder {
+    private MultiVectorDistance multiVectorDistance;
+    private int maxDegree = 64;
+    private int buildListSize = 100;
+    private float alpha = 1.2f;
+    private int codeSize = 32;
+    private long seed = 42L;
+
+    /**
+     * Sets the distance function used to build and search the graph. It is stored in the index
+     * file, so it must be serializable.
+     *
+     * @param distance The distance function to use.
+     * @return This builder instance.
+     */
+    public Builder withDistance(MultiVectorDistance distance) {
+      this.multiVectorDistance = distance;
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of neighbors per item (R). It determines the size of each record on
+     * disk.
+     *
+     * @param maxDegree A positive integer, typically between 32 and 128.
+     * @return This builder instance.
+     */
+    public Builder withMaxDegree(int maxDegree) {
+      if (maxDegree <= 0) {
+        throw new IllegalArgumentException("maxDegree must be positive.");
+      }
+      this.maxDegree = maxDegree;
+      return this;
+    }
+
+    /**
+     * Sets the size of the search list used while building the graph (L). Larger values build a
+     * better graph more slowly.
+     *
+     * @param buildListSize A positive integer, typically between 50 and 200.
+     * @return This builder instance.
+     */
+    public Builder withBuildListSize(int buildListSize) {
+      if (buildListSize <= 0) {
+        throw new IllegalArgumentException("buildListSize must be positive.");
+      }
+      this.buildListSize = buildListSize;
+      return this;
+    }
+
+    /**
+     * Sets the pruning factor. Values above 1 keep some longer edges, which shortens searches.
+     *
+     * @param alpha A value of at least 1, typically 1.2.
+     * @return This builder instance.
+     */
+    public Builder withAlpha(float alpha) {
+      if (!(alpha >= 1.0f)) {
+        throw new IllegalArgumentException("alpha must be at least 1.");
+      }
+      this.alpha = alpha;
+      return this;
+    }
+
+    /**
+     * Sets the size in bytes of the compressed copy of each item that is kept in memory. Each byte
+     * encodes a subspace of a few dimensions, so larger codes steer searches better but take more
+     * memory. Items with more vectors than this have one byte per vector.
+     *
+     * @param codeSize A positive integer, typically between 16 and 64.
+     * @return This builder instance.
+     */
+    public Builder withCodeSize(int codeSize) {
+      if (codeSize <= 0) {
+        throw new IllegalArgumentException("codeSize must be positive.");
+      }
+      this.codeSize = codeSize;
+      return this;
+    }
+
+    /**
+     * Sets the seed of the random number generator used to build the graph and train the codes.
+     *
+     * @param seed The seed.
+     * @return This builder instance.
+     */
+    public Builder withSeed(long seed) {
+      this.seed = seed;
+      return this;
+    }
+
+    /**
+     * Builds the graph over a set of items, writes it to a file, and opens it.
+     *
+     * @param items A map where keys are the unique item IDs and values are the corresponding lists
+     *     of vectors.
+     * @param path The path of the index file to write. An existing file is replaced.
+     * @return The opened index.
+     * @throws IOException if the index file cannot be written.
+     * @throws IllegalArgumentException if the items do not all have the same shape.
+     * @throws NullPointerException if a distance function has not been configured.
+     */
+    public DiskVamanaIndex build(Map<Long, List<FloatVector>> items, Path path)
+        throws IOException {
+      write(items, path);
+      return open(path);
+    }
+
+    private void write(Map<Long, List<FloatVector>> items, Path path) throws IOException {
+      Objects.requireNonNull(multiVectorDistance, "A distance function must be configured.");
+      // Items are stored in ascending order of ID, so that an ID is found by binary search
+      long[] ids = items.keySet().stream().mapToLong(Long::longValue).sorted().toArray();
+      List<List<FloatVector>> vectors = new ArrayList<>(ids.length);
+      int[] dims = null;
+      for (long id : ids) {
+        List<FloatVector> item = items.get(id);
+        int[] itemDims = item.stream().mapToInt(FloatVector::length).toArray();
+        if (dims == null) {
+          dims = itemDims;
+        } else if (!Arrays.equals(dims, itemDims)) {
+          throw new IllegalArgumentException("All items must have the same shape.");
+        }
+        vectors.add(item);
+      }
+      if (dims == null) {
+        dims = new int[0];
+      }
+
+      VamanaGraph graph =
+          new VamanaGraph(vectors, multiVectorDistance, maxDegree, buildListSize, seed);
+      graph.build(alpha);
+      ProductQuantizer quantizer =
+          ProductQuantizer.train(vectors, dims, codeSize, new Random(seed));
+
+      ByteArrayOutputStream distanceBytes = new ByteArrayOutputStream();
+      try (ObjectOutputStream out = new ObjectOutputStream(distanceBytes)) {
+        out.writeObject(multiVectorDistance);
+      }
+      byte[] distance = distanceBytes.toByteArray();
+      int headerSize = 4 * (9 + dims.length) + distance.length + quantizer.serializedSize();
+      Layout layout = new Layout(ids.length, maxDegree, dims, headerSize);
+
+      try (DataOutputStream out =
+          new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 20))) {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(ids.length);
+        out.writeInt(maxDegree);
+        out.writeInt(buildListSize);
+        out.writeFloat(alpha);
+        out.writeInt(graph.medoid);
+        out.writeInt(dims.length);
+        for (int dim : dims) {
+          out.writeInt(dim);
+        }
+        out.writeInt(distance.length);
+        out.write(distance);
+        quantizer.write(out);
+
+        long position = out.size();
+        for (int ordinal = 0; ordinal < ids.length; ordinal++) {
+          long offset = layout.offset(ordinal);
+          out.write(new byte[(int) (offset - position)]);
+          float[][] data = new float[dims.length][];
+          for (int c = 0; c < dims.length; c++) {
+            data[c] = vectors.get(ordinal).get(c).getUnsafeRawData();
+          }
+          Record.write(out, ids[ordinal], graph.neighbors(ordinal), data, maxDegree);
+          position = offset + layout.recordSize;
+        }
+        // Pad the last sector so that every read of a record is within the file
+        out.write(new byte[(int) (Layout.roundUp(position) - position)]);
+
+        // The codes, the IDs, and the bitmap of removed items follow the records, so that opening
+        // the index reads only them and not every record
+        byte[] code = new byte[quantizer.codeSize()];
+        for (List<FloatVector> item : vectors) {
+          quantizer.encode(ProductQuantizer.concatenate(item), code);
+          out.write(code);
+        }
+        for (long id : ids) {
+          out.writeLong(id);
+        }
+        out.write(new byte[(ids.length + 7) / 8]);
+      }
+      log.info("Wrote disk index {} with {} items.", path, ids.length);
+    }
+  }
+
+  /**
+   * Compresses the vectors of an item by product quantization. The concatenated vectors are split
+   * into subspaces of a few dimensions, none of which spans two vectors, and the part of an item in
+   * each subspace is replaced by the index of the nearest of up to 256 centroids trained with
+   * k-means. An item thus takes one byte per subspace.
+   */
+  private static final class ProductQuantizer {
+    private static final int MAX_CENTROIDS = 256;
+    private static final int TRAINING_SAMPLE_SIZE = 10_000;
+    private static final int TRAINING_ITERATIONS = 10;
+
+    private final int[] dims;
+
+    /** The first dimension of each subspace in the concatenated vectors, and then their total. */
+    private final int[] starts;
+
+    /** The vector that each subspace belongs to. */
+    private final int[] positions;
+
+    /** The first subspace of each vector, and then the number of subspaces. */
+    private final int[] firstSubspaces;
+
+    private final int centroidCount;
+
+    /** The centroids of each subspace, one after another. */
+    private final float[][] centroids;
+
+    /** The squared norm of each centroid of each subspace. */
+    private final float[][] squaredNorms;
+
+    private ProductQuantizer(int[] dims, int[] widths, int centroidCount, float[][] centroids)
+        throws IOException {
+      this.dims = dims;
+      this.centroidCount = centroidCount;
+      this.centroids = centroids;
+      this.starts = new int[widths.length + 1];
+      this.positions = new int[widths.length];
+      this.firstSubspaces = new int[dims.length + 1];
+      int s = 0;
+      for (int p = 0; p < dims.length; p++) {
+        firstSubspaces[p] = s;
+        int end = starts[s] + dims[p];
+        while (s < widths.length && starts[s] < end) {
+          positions[s] = p;
+          starts[s + 1] = starts[s] + widths[s];
+          s++;
+        }
+        if (starts[s] != end) {
+          throw new IOException("Subspaces of the product quantizer do not match the vectors.");
+        }
+      }
+      firstSubspaces[dims.length] = s;
+      if (s != widths.length) {
+        throw new IOException("Subspaces of the product quantizer do not match the vectors.");
+      }
+      this.squaredNorms = new float[widths.length][centroidCount];
+      for (s = 0; s < widths.length; s++) {
+        for (int c = 0; c < centroidCount; c++) {
+          for (int d = c * widths[s]; d < (c + 1) * widths[s]; d++) {
+            squaredNorms[s][c] += centroids[s][d] * centroids[s][d];
+          }
+        }
+      }
+    }
+
+    /** Returns the number of bytes of a code, which is the number of subspaces. */
+    int codeSize() {
+      return positions.length;
+    }
+
+    private int width(int subspace) {
+      return starts[subspace + 1] - starts[subspace];
+    }
+
+    /**
+     * Trains the centroids of each subspace on a random sample of the items.
+     *
+     * @param codeSize The largest number of subspaces, unless items have more vectors than this.
+     */
+    static ProductQuantizer train(
+        List<List<FloatVector>> vectors, int[] dims, int codeSize, Random random) {
+      List<Integer> order = new ArrayList<>(vectors.size());
+      for (int i = 0; i < vectors.size(); i++) {
+        order.add(i);
+      }
+      Collections.shuffle(order, random);
+      List<float[]> sample = new ArrayList<>();
+      for (int i : order.subList(0, Math.min(order.size(), TRAINING_SAMPLE_SIZE))) {
+        sample.add(concatenate(vectors.get(i)));
+      }
+
+      int[] widths = subspaceWidths(dims, codeSize);
+      int k = Math.min(MAX_CENTROIDS, sample.size());
+      float[][] centroids = new float[widths.length][];
+      int start = 0;
+      for (int s = 0; s < widths.length; s++) {
+        centroids[s] = kMeans(sample, start, widths[s], k, random);
+        start += widths[s];
+      }
+      try {
+        return new ProductQuantizer(dims, widths, k, centroids);
+      } catch (IOException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    /**
+     * Splits each vector into subspaces of at most the same width, using the smallest width for
+     * which there are at most {@code codeSize} subspaces in total (or one per vector).
+     */
+    private static int[] subspaceWidths(int[] dims, int codeSize) {
+      int maxDimension = Arrays.stream(dims).max().orElse(1);
+      int width = 1;
+      while (width < maxDimension && subspaceCount(dims, width) > codeSize) {
+        width++;
+      }
+      int[] widths = new int[subspaceCount(dims, width)];
+      int s = 0;
+      for (int dim : dims) {
+        for (int from = 0; from < dim; from += width) {
+          widths[s++] = Math.min(width, dim - from);
+        }
+      }
+      return widths;
+    }
+
+    private static int subspaceCount(int[] dims, int width) {
+      int count = 0;
+      for (int dim : dims) {
+        count += (dim + width - 1) / width;
+      }
+      return count;
+    }
+
+    /** Clusters one subspace of the sample with k-means, starting from the first k items. */
+    private static float[] kMeans(
+        List<float[]> sample, int start, int width, int k, Random random) {
+      float[] centroids = new float[k * width];
+      for (int c = 0; c < k; c++) {
+        System.arraycopy(sample.get(c), start, centroids, c * width, width);
+      }
+      int[] clusterOf = new int[sample.size()];
+      for (int iteration = 0; iteration < TRAINING_ITERATIONS; iteration++) {
+        boolean changed = false;
+        for (int i = 0; i < sample.size(); i++) {
+          int nearest = nearest(centroids, k, width, sample.get(i), start);
+          changed |= iteration == 0 || nearest != clusterOf[i];
+          clusterOf[i] = nearest;
+        }
+        if (!changed) {
+          break;
+        }
+        float[] sums = new float[k * width];
+        int[] counts = new int[k];
+        for (int i = 0; i < sample.size(); i++) {
+          int c = clusterOf[i];
+          counts[c]++;
+          for (int d = 0; d < width; d++) {
+            sums[c * width + d] += sample.get(i)[start + d];
+          }
+        }
+        for (int c = 0; c < k; c++) {
+          // An empty cluster is reseeded at a random item
+          if (counts[c] == 0) {
+            float[] item = sample.get(random.nextInt(sample.size()));
+            System.arraycopy(item, start, centroids, c * width, width);
+            continue;
+          }
+          for (int d = 0; d < width; d++) {
+            centroids[c * width + d] = sums[c * width + d] / counts[c];
+          }
+        }
+      }
+      return centroids;
+    }
+
+    /** Returns the centroid closest to a subspace of a vector by squared Euclidean distance. */
+    private static int nearest(float[] centroids, int k, int width, float[] vector, int start) {
+      int nearest = 0;
+      double nearestDistance = Double.MAX_VALUE;
+      for (int c = 0; c < k; c++) {
+        double distance = 0.0;
+        for (int d = 0; d < width; d++) {
+          double difference = vector[start + d] - centroids[c * width + d];
+          distance += difference * difference;
+        }
+        if (distance < nearestDistance) {
+          nearestDistance = distance;
+          nearest = c;
+        }
+      }
+      return nearest;
+    }
+
+    static float[] concatenate(List<FloatVector> vectors) {
+      int length = 0;
+      for (FloatVector vector : vectors) {
+        length += vector.length();
+      }
+      float[] concatenated = new float[length];
+      int from = 0;
+      for (FloatVector vector : vectors) {
+        System.arraycopy(vector.getUnsafeRawData(), 0, concatenated, from, vector.length());
+        from += vector.length();
+      }
+      return concatenated;
+    }
+
+    /** Writes the code of the concatenated vectors of an item. */
+    void encode(float[] vector, byte[] code) {
+      for (int s = 0; s < codeSize(); s++) {
+        code[s] = (byte) nearest(centroids[s], centroidCount, width(s), vector, starts[s]);
+      }
+    }
+
+    /** Returns the vectors that a code stands for. */
+    List<FloatVector> decode(byte[] codes, int offset) {
+      List<FloatVector> decoded = new ArrayList<>(dims.length);
+      for (int p = 0; p < dims.length; p++) {
+        float[] data = new float[dims[p]];
+        for (int s = firstSubspaces[p]; s < firstSubspaces[p + 1]; s++) {
+          int width = width(s);
+          int centroid = codes[offset + s] & 0xFF;
+          System.arraycopy(
+              centroids[s],
+              centroid * width,
+              data,
+              starts[s] - starts[firstSubspaces[p]],
+              width);
+        }
+        decoded.add(new FloatVector(data));
+      }
+      return decoded;
+    }
+
+    /** Returns the number of bytes written by {@link #write(DataOutputStream)}. */
+    int serializedSize() {
+      return 4 * (2 + codeSize() + centroidCount * starts[codeSize()]);
+    }
+
+    void write(DataOutputStream out) throws IOException {
+      out.writeInt(codeSize());
+      out.writeInt(centroidCount);
+      for (int s = 0; s < codeSize(); s++) {
+        out.writeInt(width(s));
+      }
+      for (float[] subspace : centroids) {
+        for (float value : subspace) {
+          out.writeFloat(value);
+        }
+      }
+    }
+
+    static ProductQuantizer read(DataInputStream in, int[] dims) throws IOException {
+      int[] widths = new int[in.readInt()];
+      int centroidCount = in.readInt();
+      for (int s = 0; s < widths.length; s++) {
+        widths[s] = in.readInt();
+      }
+      float[][] centroids = new float[widths.length][];
+      for (int s = 0; s < widths.length; s++) {
+        centroids[s] = new float[centroidCount * widths[s]];
+        for (int d = 0; d < centroids[s].length; d++) {
+          centroids[s][d] = in.readFloat();
+        }
+      }
+      return new ProductQuantizer(dims, widths, centroidCount, centroids);
+    }
+  }
+
+  /**
+   * The partial distances between the vectors of a query and every centroid of a {@link
+   * ProductQuantizer}, so that the distance to a compressed item is a sum of table entries. It
+   * supports a {@link WeightedAverageDistance} of squared Euclidean, dot product, and cosine
+   * distances, which are all sums over the dimensions (for the cosine, of the dot product and the
+   * squared norm of the item).
+   */
+  private static final class QueryTable {
+
+    /** A distance function that the table supports. */
+    enum Kind {
+      SQUARED_EUCLIDEAN,
+      DOT_PRODUCT,
+      COSINE
+    }
+
+    private final ProductQuantizer quantizer;
+    private final Kind[] kinds;
+    private final float[] weights;
+
+    /**
+     * The squared Euclidean distance or the dot product between each subspace of the query and each
+     * of its centroids.
+     */
+    private final double[] partials;
+
+    /** The norm of each query vector, for cosine distances. */
+    private final double[] queryNorms;
+
+    QueryTable(ProductQuantizer quantizer, List<FloatVector> query, Kind[] kinds, float[] weights) {
+      this.quantizer = quantizer;
+      this.kinds = kinds;
+      this.weights = weights;
+      int k = quantizer.centroidCount;
+      this.partials = new double[quantizer.codeSize() * k];
+      this.queryNorms = new double[kinds.length];
+      if (query.size() != kinds.length) {
+        throw new IllegalArgumentException(
+            "Number of vectors must match the number of distance functions.");
+      }
+      for (int p = 0; p < kinds.length; p++) {
+        if (query.get(p).length() != quantizer.dims[p]) {
+          throw new IllegalArgumentException("Vector lengths must be equal.");
+        }
+        queryNorms[p] = query.get(p).norm();
+      }
+      for (int s = 0; s < quantizer.codeSize(); s++) {
+        int p = quantizer.positions[s];
+        float[] vector = query.get(p).getUnsafeRawData();
+        int from = quantizer.starts[s] - quantizer.starts[quantizer.firstSubspaces[p]];
+        int width = quantizer.width(s);
+        float[] centroids = quantizer.centroids[s];
+        for (int c = 0; c < k; c++) {
+          double partial = 0.0;
+          for (int d = 0; d < width; d++) {
+            double value = centroids[c * width + d];
+            if (kinds[p] == Kind.SQUARED_EUCLIDEAN) {
+              partial += (vector[from + d] - value) * (vector[from + d] - value);
+            } else {
+              partial += vector[from + d] * value;
+            }
+          }
+          partials[s * k + c] = partial;
+        }
+      }
+    }
+
+    /**
+     * Returns the kind of each component of a distance, or null if the distance is not a weighted
+     * average of components that a table supports.
+     */
+    static Kind[] kindsOf(MultiVectorDistance distance, int vectorCount) {
+      if (!(distance instanceof WeightedAverageDistance weighted)
+          || weighted.size() != vectorCount) {
+        return null;
+      }
+      Kind[] kinds = new Kind[vectorCount];
+      for (int p = 0; p < vectorCount; p++) {
+        Class<?> type = weighted.getDistances().get(p).getClass();
+        if (type == SquaredEuclidean.class) {
+          kinds[p] = Kind.SQUARED_EUCLIDEAN;
+        } else if (type == DotProduct.class) {
+          kinds[p] = Kind.DOT_PRODUCT;
+        } else if (type == Cosine.class) {
+          kinds[p] = Kind.COSINE;
+        } else {
+          return null;
+        }
+      }
+      return kinds;
+    }
+
+    /** Returns the distance between the query and the item with the code at an offset. */
+    double distance(byte[] codes, int offset) {
+      int k = quantizer.centroidCount;
+      double total = 0.0;
+      for (int p = 0; p < kinds.length; p++) {
+        if (weights[p] == 0.0f) {
+          continue;
+        }
+        double sum = 0.0;
+        double squaredNorm = 0.0;
+        for (int s = quantizer.firstSubspaces[p]; s < quantizer.firstSubspaces[p + 1]; s++) {
+          int centroid = codes[offset + s] & 0xFF;
+          sum += partials[s * k + centroid];
+          squaredNorm += quantizer.squaredNorms[s][centroid];
+        }
+        double distance =
+            switch (kinds[p]) {
+              case SQUARED_EUCLIDEAN -> sum;
+              case DOT_PRODUCT -> -sum;
+              case COSINE -> {
+                double norms = queryNorms[p] * Math.sqrt(squaredNorm);
+                yield norms == 0.0 ? 1.0 : 1.0 - sum / norms;
+              }
+            };
+        total += weights[p] * distance;
+      }
+      return total;
+    }
+  }
+
+  /** The in-memory Vamana graph used while building the index file. */
+  private static final class VamanaGraph {
+    private final List<List<FloatVector>> vectors;
+    private final MultiVectorDistance distance;
+    private final int maxDegree;
+    private final int listSize;
+    private final Random random;
+    private final int[][] adjacency;
+    private final int[] degrees;
+    private int medoid;
+
+    VamanaGraph(
+        List<List<FloatVector>> vectors,
+        MultiVectorDistance distance,
+        int maxDegree,
+        int listSize,
+        long seed) {
+      this.vectors = vectors;
+      this.distance = distance;
+      this.maxDegree = maxDegree;
+      this.listSize = listSize;
+      this.random = new Random(seed);
+      this.adjacency = new int[vectors.size()][maxDegree];
+      this.degrees = new int[vectors.size()];
+    }
+
+    int[] neighbors(int ordinal) {
+      return Arrays.copyOf(adjacency[ordinal], degrees[ordinal]);
+    }
+
+    /** Builds the graph with a pass without long edges (alpha of 1) followed by one with them. */
+    void build(float alpha) {
+      int n = vectors.size();
+      if (n == 0) {
+        return;
+      }
+      medoid = findMedoid();
+      initializeRandomGraph();
+      for (float passAlpha : new float[] {1.0f, alpha}) {
+        List<Integer> order = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+          order.add(i);
+        }
+        Collections.shuffle(order, random);
+        for (int p : order) {
+          Set<Integer> candidates = new LinkedHashSet<>(greedySearch(vectors.get(p)));
+          for (int i = 0; i < degrees[p]; i++) {
+            candidates.add(adjacency[p][i]);
+          }
+          robustPrune(p, candidates, passAlpha);
+          for (int i = 0; i < degrees[p]; i++) {
+            addBackEdge(adjacency[p][i], p, passAlpha);
+          }
+        }
+      }
+    }
+
+    /** Adds an edge from j to p, pruning j's neighbors if it is already full. */
+    private void addBackEdge(int j, int p, float alpha) {
+      for (int i = 0; i < degrees[j]; i++) {
+        if (adjacency[j][i] == p) {
+          return;
+        }
+      }
+      if (degrees[j] < maxDegree) {
+        adjacency[j][degrees[j]++] = p;
+        return;
+      }
+      Set<Integer> candidates = new LinkedHashSet<>();
+      for (int i = 0; i < degrees[j]; i++) {
+        candidates.add(adjacency[j][i]);
+      }
+      candidates.add(p);
+      robustPrune(j, candidates, alpha);
+    }
+
+    /** Finds the item closest to the per-position mean of all items. */
+    private int findMedoid() {
+      List<FloatVector> first = vectors.get(0);
+      List<FloatVector> mean = new ArrayList<>(first.size());
+      for (int c = 0; c < first.size(); c++) {
+        float[] sum = new float[first.get(c).length()];
+        for (List<FloatVector> item : vectors) {
+          float[] data = item.get(c).getUnsafeRawData();
+          for (int d = 0; d < sum.length; d++) {
+            sum[d] += data[d] / vectors.size();
+          }
+        }
+        mean.add(new FloatVector(sum));
+      }
+      int best = 0;
+      double bestDistance = Double.MAX_VALUE;
+      for (int i = 0; i < vectors.size(); i++) {
+        double d = distance.compute(mean, vectors.get(i));
+        if (d < bestDistance) {
+          bestDistance = d;
+          best = i;
+        }
+      }
+      return best;
+    }
+
+    private void initializeRandomGraph() {
+      int n = vectors.size();
+      int degree = Math.min(maxDegree, n - 1);
+      for (int p = 0; p < n; p++) {
+        Set<Integer> chosen = new HashSet<>();
+        while (chosen.size() < degree) {
+          int q = random.nextInt(n);
+          if (q != p && chosen.add(q)) {
+            adjacency[p][degrees[p]++] = q;
+          }
+        }
+      }
+    }
+
+    /** Runs a greedy search from the medoid and returns the nodes it expanded. */
+    private List<Integer> greedySearch(List<FloatVector> query) {
+      List<Candidate> list = new ArrayList<>();
+      Set<Integer> seen = new HashSet<>();
+      List<Integer> expanded = new ArrayList<>();
+      list.add(new Candidate(medoid, distance.compute(query, vectors.get(medoid))));
+      seen.add(medoid);
+      while (true) {
+        Candidate next = null;
+        for (Candidate candidate : list) {
+          if (!candidate.expanded) {
+            next = candidate;
+            break;
+          }
+        }
+        if (next == null) {
+          return expanded;
+        }
+        next.expanded = true;
+        expanded.add(next.ordinal);
+        for (int i = 0; i < degrees[next.ordinal]; i++) {
+          int neighbor = adjacency[next.ordinal][i];
+          if (seen.add(neighbor)) {
+            insert(list, new Candidate(neighbor, distance.compute(query, vectors.get(neighbor))));
+            if (list.size() > listSize) {
+              list.remove(list.size() - 1);
+            }
+          }
+        }
+      }
+    }
+
+    /**
+     * Replaces the neighbors of p with a diverse subset of the candidates: a candidate is dropped
+     * if a closer neighbor that was already chosen is, scaled by alpha, at least as close to it.
+     */
+    private void robustPrune(int p, Set<Integer> candidates, float alpha) {
+      List<Candidate> sorted = new ArrayList<>(candidates.size());
+      for (int c : candidates) {
+        if (c != p) {
+          sorted.add(new Candidate(c, distance.compute(vectors.get(p), vectors.get(c))));
+        }
+      }
+      sorted.sort(Comparator.comparingDouble(candidate -> candidate.distance));
+
+      degrees[p] = 0;
+      boolean[] dropped = new boolean[sorted.size()];
+      for (int i = 0; i < sorted.size() && degrees[p] < maxDegree; i++) {
+        if (dropped[i]) {
+          continue;
+        }
+        Candidate chosen = sorted.get(i);
+        adjacency[p][degrees[p]++] = chosen.ordinal;
+        List<FloatVector> chosenVectors = vectors.get(chosen.ordinal);
+        for (int j = i + 1; j < sorted.size(); j++) {
+          if (!dropped[j]) {
+            Candidate other = sorted.get(j);
+            double between = distance.compute(chosenVectors, vectors.get(other.ordinal));
+            if (alpha * between <= other.distance) {
+              dropped[j] = true;
+            }
+          }
+        }
+      }
+    }
+  }
+}
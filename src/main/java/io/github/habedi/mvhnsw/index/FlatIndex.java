@@ -0,0 +1,425 @@
+package io.github.habedi.mvhnsw.index;
+
+import io.github.habedi.mvhnsw.common.FloatVector;
+import io.github.habedi.mvhnsw.distance.MultiVectorDistance;
+import java.io.*;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A thread-safe, serializable implementation of the {@link Index} interface that finds the exact
+ * nearest neighbors by comparing the query with every item.
+ *
+ * <p>Items are stored in arrays indexed by a contiguous ordinal, so a scan visits them in order
+ * without any hashing or graph traversal. The IDs are a flat {@code long[]}, but each row holds
+ * references to the item's list and vector objects, so reading an item still follows a few pointers
+ * into the heap. Large scans are split into chunks that run in parallel, each keeping its own
+ * bounded heap of the best {@code k} items, and {@link #searchBatch(List, int)} scores a batch of
+ * queries against one block of items at a time while that block is still in the CPU cache.
+ *
+ * <p>A flat index has no build cost and perfect recall, which makes it the better choice for small
+ * collections (up to tens of thousands of items) and the reference for measuring the recall of the
+ * approximate indexes. Removed items are deleted immediately, so {@link #vacuum()} only releases
+ * spare capacity.
+ */
+public final class FlatIndex implements Index, Serializable {
+
+  @Serial private static final long serialVersionUID = 1L;
+  private static final Logger log = LogManager.getLogger(FlatIndex.class);
+
+  /** Scans of fewer items than this run on the caller's thread. */
+  private static final int PARALLEL_THRESHOLD = 4096;
+
+  /** Scans are split into chunks of at least this many items. */
+  private static final int MIN_CHUNK_SIZE = 1024;
+
+  /** The number of items a batch of queries is scored against before moving to the next block. */
+  private static final int BLOCK_SIZE = 64;
+
+  private static final int INITIAL_CAPACITY = 16;
+
+  private final MultiVectorDistance multiVectorDistance;
+
+  /** The ID of the item at each ordinal. */
+  private long[] ids;
+
+  /** The vectors of the item at each ordinal. */
+  private List<FloatVector>[] rows;
+
+  /** The number of items, which occupy the ordinals from 0 to count - 1. */
+  private int count;
+
+  /** Maps each item ID to its ordinal. */
+  private final Map<Long, Integer> ordinals;
+
+  /** A lock to manage concurrent access to the index. */
+  private transient ReentrantReadWriteLock lock;
+
+  /** The executor used to scan chunks in parallel. */
+  private transient Executor executor;
+
+  /** Private constructor to be called by the {@link Builder}. */
+  private FlatIndex(Builder builder) {
+    this.multiVectorDistance = builder.multiVectorDistance;
+    this.ids = new long[INITIAL_CAPACITY];
+    this.rows = newRows(INITIAL_CAPACITY);
+    this.count = 0;
+    this.ordinals = new HashMap<>();
+    this.lock = new ReentrantReadWriteLock();
+    this.executor = builder.executor;
+    log.info(
+        "Initialized FlatIndex with distance={}",
+        this.multiVectorDistance.getClass().getSimpleName());
+  }
+
+  /**
+   * Creates a new {@link Builder} to configure and construct a FlatIndex.
+   *
+   * @return A new Builder instance.
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Loads an index from a file.
+   *
+   * @param path The path to the serialized index file.
+   * @return A new instance of FlatIndex with the loaded data.
+   * @throws IOException if an I/O error occurs while reading the file.
+   * @throws ClassNotFoundException if the class of a serialized object cannot be found.
+   */
+  public static FlatIndex load(Path path) throws IOException, ClassNotFoundException {
+    log.info("Loading index from {}", path);
+    try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(path.toFile()))) {
+      FlatIndex index = (FlatIndex) ois.readObject();
+      log.info("Successfully loaded index with {} items.", index.size());
+      return index;
+    }
+  }
+
+  /**
+   * Sets the executor used to scan chunks in parallel. This is not persisted, and a loaded index
+   * uses the common fork-join pool until this is called.
+   *
+   * @param executor The executor to use.
+   */
+  public void setExecutor(Executor executor) {
+    this.executor = Objects.requireNonNull(executor, "Executor cannot be null.");
+  }
+
+  @Override
+  public void add(long id, List<FloatVector> vectors) {
+    lock.writeLock().lock();
+    try {
+      if (ordinals.containsKey(id)) {
+        throw new IllegalArgumentException(
+            "Item with ID " + id + " already exists. Please remove it first to update.");
+      }
+      if (count == ids.length) {
+        int capacity = ids.length * 2;
+        ids = Arrays.copyOf(ids, capacity);
+        rows = Arrays.copyOf(rows, capacity);
+      }
+      ids[count] = id;
+      rows[count] = vectors;
+      ordinals.put(id, count);
+      count++;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Removes an item from the index. Unlike the graph indexes, the item is deleted immediately: the
+   * last item is moved into its slot, so the ordinals stay contiguous.
+   *
+   * @param id The unique identifier of the item to remove.
+   * @return {@code true} if the item was found and removed, {@code false} otherwise.
+   */
+  @Override
+  public boolean remove(long id) {
+    lock.writeLock().lock();
+    try {
+      Integer ordinal = ordinals.remove(id);
+      if (ordinal == null) {
+        return false;
+      }
+      int last = count - 1;
+      if (ordinal != last) {
+        ids[ordinal] = ids[last];
+        rows[ordinal] = rows[last];
+        ordinals.put(ids[ordinal], ordinal);
+      }
+      rows[last] = null;
+      count--;
+      return true;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public void addAll(Map<Long, List<FloatVector>> items) {
+    log.info("Adding {} items to the index.", items.size());
+    items.forEach(this::add);
+  }
+
+  /**
+   * Searches the index for the exact {@code k} nearest neighbors to a given query.
+   *
+   * @param queryVectors The list of vectors representing the query.
+   * @param k The number of nearest neighbors to return.
+   * @param efSearch Ignored, since the search is exhaustive.
+   * @return A list of {@link SearchResult}s, sorted by distance in ascending order.
+   */
+  @Override
+  public List<SearchResult> search(List<FloatVector> queryVectors, int k, int efSearch) {
+    return search(queryVectors, k);
+  }
+
+  /**
+   * Searches the index for the exact {@code k} nearest neighbors to a given query. Indexes with
+   * many items are scanned in parallel chunks on the index's executor.
+   *
+   * @param queryVectors The list of vectors representing the query.
+   * @param k The number of nearest neighbors to return.
+   * @return A list of {@link SearchResult}s, sorted by distance in ascending order.
+   * @throws IllegalArgumentException if k is not positive.
+   */
+  public List<SearchResult> search(List<FloatVector> queryVectors, int k) {
+    return searchBatch(List.of(queryVectors), k).get(0);
+  }
+
+  /**
+   * Searches the index for the exact {@code k} nearest neighbors to each query in a batch.
+   *
+   * <p>Instead of scanning the whole index once per query, the items are visited in blocks that fit
+   * in the CPU cache, and every query is scored against a block before moving to the next one. This
+   * reads each item from memory once per batch rather than once per query.
+   *
+   * @param queries The queries, each a list of vectors.
+   * @param k The number of nearest neighbors to return for each query.
+   * @return One list of {@link SearchResult}s per query, in the same order as the queries.
+   * @throws IllegalArgumentException if k is not positive.
+   */
+  public List<List<SearchResult>> searchBatch(List<List<FloatVector>> queries, int k) {
+    if (k <= 0) {
+      throw new IllegalArgumentException("k must be positive.");
+    }
+    if (queries.isEmpty()) {
+      return Collections.emptyList();
+    }
+
+    lock.readLock().lock();
+    try {
+      List<PriorityQueue<SearchResult>[]> partials = new ArrayList<>();
+      if (count < PARALLEL_THRESHOLD) {
+        partials.add(scan(queries, k, 0, count));
+      } else {
+        int chunks = Math.min(Runtime.getRuntime().availableProcessors(), count / MIN_CHUNK_SIZE);
+        int chunkSize = (count + chunks - 1) / chunks;
+        List<CompletableFuture<PriorityQueue<SearchResult>[]>> futures = new ArrayList<>();
+        for (int start = 0; start < count; start += chunkSize) {
+          int from = start;
+          int to = Math.min(start + chunkSize, count);
+          futures.add(CompletableFuture.supplyAsync(() -> scan(queries, k, from, to), executor));
+        }
+        partials.addAll(Futures.joinAll(futures));
+      }
+
+      List<List<SearchResult>> results = new ArrayList<>(queries.size());
+      for (int q = 0; q < queries.size(); q++) {
+        PriorityQueue<SearchResult> best = newHeap();
+        for (PriorityQueue<SearchResult>[] partial : partials) {
+          for (SearchResult result : partial[q]) {
+            offer(best, result, k);
+          }
+        }
+        List<SearchResult> sorted = new ArrayList<>(best);
+        sorted.sort(Comparator.comparingDouble(SearchResult::score));
+        results.add(sorted);
+      }
+      return results;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Scores all queries against the items with ordinals in [from, to), block by block, and keeps the
+   * best k items per query. Must be called while holding the lock.
+   */
+  private PriorityQueue<SearchResult>[] scan(
+      List<List<FloatVector>> queries, int k, int from, int to) {
+    @SuppressWarnings("unchecked")
+    PriorityQueue<SearchResult>[] best = new PriorityQueue[queries.size()];
+    for (int q = 0; q < best.length; q++) {
+      best[q] = newHeap();
+    }
+    for (int blockStart = from; blockStart < to; blockStart += BLOCK_SIZE) {
+      int blockEnd = Math.min(blockStart + BLOCK_SIZE, to);
+      for (int q = 0; q < best.length; q++) {
+        List<FloatVector> query = queries.get(q);
+        for (int i = blockStart; i < blockEnd; i++) {
+          double distance = multiVectorDistance.compute(query, rows[i]);
+          PriorityQueue<SearchResult> heap = best[q];
+          if (heap.size() < k || distance < heap.peek().score()) {
+            offer(heap, new SearchResult(ids[i], distance), k);
+          }
+        }
+      }
+    }
+    return best;
+  }
+
+  @Override
+  public Optional<List<FloatVector>> get(long id) {
+    lock.readLock().lock();
+    try {
+      Integer ordinal = ordinals.get(id);
+      return ordinal != null ? Optional.of(rows[ordinal]) : Optional.empty();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public int size() {
+    lock.readLock().lock();
+    try {
+      return count;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public Set<Long> keySet() {
+    lock.readLock().lock();
+    try {
+      return new HashSet<>(ordinals.keySet());
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public MultiVectorDistance getDistance() {
+    return multiVectorDistance;
+  }
+
+  @Override
+  public void save(Path path) throws IOException {
+    log.info("Saving index with {} items to {}", size(), path);
+    lock.readLock().lock();
+    try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(path.toFile()))) {
+      oos.writeObject(this);
+      log.info("Save complete.");
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public void clear() {
+    lock.writeLock().lock();
+    try {
+      ids = new long[INITIAL_CAPACITY];
+      rows = newRows(INITIAL_CAPACITY);
+      count = 0;
+      ordinals.clear();
+      log.info("Index cleared.");
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /** Shrinks the storage arrays to the number of items, since removals are applied immediately. */
+  @Override
+  public void vacuum() {
+    lock.writeLock().lock();
+    try {
+      int capacity = Math.max(INITIAL_CAPACITY, count);
+      ids = Arrays.copyOf(ids, capacity);
+      rows = Arrays.copyOf(rows, capacity);
+      log.info("Vacuum complete. Capacity trimmed to {} items.", capacity);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /** Creates a max-heap of results, so the worst of the best k items is at the head. */
+  private static PriorityQueue<SearchResult> newHeap() {
+    return new PriorityQueue<>(Comparator.comparingDouble(SearchResult::score).reversed());
+  }
+
+  /** Adds a result to a bounded max-heap, evicting the worst result if the heap is over k. */
+  private static void offer(PriorityQueue<SearchResult> heap, SearchResult result, int k) {
+    heap.add(result);
+    if (heap.size() > k) {
+      heap.poll();
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static List<FloatVector>[] newRows(int capacity) {
+    return new List[capacity];
+  }
+
+  /** Custom deserialization method to re-initialize the transient lock and executor. */
+  @Serial
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    this.lock = new ReentrantReadWriteLock();
+    this.executor = ForkJoinPool.commonPool();
+  }
+
+  /**
+   * A builder for configuring and creating a {@link FlatIndex}. This provides a fluent API for
+   * setting parameters.
+   */
+  public static class Builder {
+    private MultiVectorDistance multiVectorDistance;
+    private Executor executor = ForkJoinPool.commonPool();
+
+    /**
+     * Sets the distance function used to compare items.
+     *
+     * @param distance The distance function to use.
+     * @return This builder instance.
+     */
+    public Builder withDistance(MultiVectorDistance distance) {
+      this.multiVectorDistance = distance;
+      return this;
+    }
+
+    /**
+     * Sets the executor used to scan chunks in parallel. Defaults to the common fork-join pool.
+     *
+     * @param executor The executor to use.
+     * @return This builder instance.
+     */
+    public Builder withExecutor(Executor executor) {
+      this.executor = Objects.requireNonNull(executor, "Executor cannot be null.");
+      return this;
+    }
+
+    /**
+     * Builds the {@link FlatIndex} with the configured parameters.
+     *
+     * @return A new FlatIndex instance.
+     * @throws NullPointerException if a distance function has not been configured.
+     */
+    public FlatIndex build() {
+      Objects.requireNonNull(multiVectorDistance, "A distance function must be configured.");
+      return new FlatIndex(this);
+    }
+  }
+}
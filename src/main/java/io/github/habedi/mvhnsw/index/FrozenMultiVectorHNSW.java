@@ -0,0 +1,415 @@
+package io.github.habedi.mvhnsw.index;
+
+import io.github.habedi.mvhnsw.common.FloatVector;
+import io.github.habedi.mvhnsw.distance.MultiVectorDistance;
+import io.github.habedi.mvhnsw.distance.PooledDistance;
+import java.io.*;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.IntPredicate;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * An immutable, read-only copy of a {@link MultiVectorHNSW} index, created with {@link
+ * MultiVectorHNSW#freeze()}.
+ *
+ * <p>Items are numbered by ordinal, either in the order of their IDs or in an order that keeps
+ * connected items close together (see {@link MultiVectorHNSW#freeze(boolean)}), and an ID is looked
+ * up with a binary search of a sorted array. The connections of each layer are stored in compressed
+ * sparse row (CSR) form: the neighbor lists of all items are laid out back to back in a few large
+ * chunks, and each item has a {@code long} offset into them (see {@link CsrLayer}), so a layer can
+ * hold billions of connections. Removed items are dropped when freezing, so a search needs no
+ * deletion checks, and as nothing can change, it takes no locks either. Each thread reuses its own
+ * search buffers, which grow with the number of items a search visits rather than with the size of
+ * the index.
+ *
+ * <p>The neighbor lists can optionally be compressed (see {@link MultiVectorHNSW#freeze(boolean,
+ * boolean)}). Each list is then sorted and stored as variable-length byte codes of the differences
+ * between consecutive ordinals, starting from the item's own ordinal. With items numbered for
+ * locality, many differences fit in one or two bytes instead of four. A search decodes the list of
+ * each item it expands into a buffer of its thread.
+ *
+ * <p>Use this for indexes that are built once and then only searched. All write operations throw
+ * {@link UnsupportedOperationException}.
+ */
+public final class FrozenMultiVectorHNSW implements Index, Serializable {
+
+  @Serial private static final long serialVersionUID = 1L;
+  private static final Logger log = LogManager.getLogger(FrozenMultiVectorHNSW.class);
+
+  private final MultiVectorDistance multiVectorDistance;
+
+  /** The optional single-vector proxy for the upper layers, or null to use the full distance. */
+  private final PooledDistance routing;
+
+  /** The ID of each item, by ordinal. */
+  private final long[] ids;
+
+  /** The item IDs in ascending order, for looking up the ordinal of an ID. */
+  private final long[] sortedIds;
+
+  /** The ordinal of each item in {@link #sortedIds}. */
+  private final int[] sortedOrdinals;
+
+  /** The vectors of each item, by ordinal. */
+  private final List<FloatVector>[] vectors;
+
+  /** The pooled routing vector of each item by ordinal, or null if no routing is configured. */
+  private final FloatVector[] pooled;
+
+  /** The connections of each layer. */
+  private final CsrLayer[] layers;
+
+  /** The largest number of neighbors of any item on any layer. */
+  private final int maxDegree;
+
+  /** The ordinal of the entry point, which is on the top layer, or -1 if the index is empty. */
+  private final int entryPoint;
+
+  /** The search buffers of each thread. */
+  private transient ThreadLocal<Scratch> scratch;
+
+  /** Package-private constructor to be called by {@link MultiVectorHNSW#freeze()}. */
+  FrozenMultiVectorHNSW(
+      MultiVectorDistance multiVectorDistance,
+      PooledDistance routing,
+      long[] ids,
+      List<FloatVector>[] vectors,
+      FloatVector[] pooled,
+      CsrLayer[] layers,
+      int entryPoint) {
+    this.multiVectorDistance = multiVectorDistance;
+    this.routing = routing;
+    this.ids = ids;
+    this.sortedOrdinals =
+        IntStream.range(0, ids.length)
+            .boxed()
+            .sorted(Comparator.comparingLong(ordinal -> ids[ordinal]))
+            .mapToInt(Integer::intValue)
+            .toArray();
+    this.sortedIds = Arrays.stream(sortedOrdinals).mapToLong(ordinal -> ids[ordinal]).toArray();
+    this.vectors = vectors;
+    this.pooled = pooled;
+    this.layers = layers;
+    this.maxDegree = Arrays.stream(layers).mapToInt(CsrLayer::maxDegree).max().orElse(0);
+    this.entryPoint = entryPoint;
+    this.scratch = ThreadLocal.withInitial(() -> new Scratch(maxDegree));
+    log.info(
+        "Froze an index with {} items and {} layers, with {} bytes of connections.",
+        ids.length,
+        layers.length,
+        adjacencyBytes());
+  }
+
+  /**
+   * Loads a frozen index from a file.
+   *
+   * @param path The path to the serialized index file.
+   * @return A new instance of FrozenMultiVectorHNSW with the loaded data.
+   * @throws IOException if an I/O error occurs while reading the file.
+   * @throws ClassNotFoundException if the class of a serialized object cannot be found.
+   */
+  public static FrozenMultiVectorHNSW load(Path path) throws IOException, ClassNotFoundException {
+    log.info("Loading index from {}", path);
+    try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(path.toFile()))) {
+      FrozenMultiVectorHNSW index = (FrozenMultiVectorHNSW) ois.readObject();
+      log.info("Successfully loaded index with {} items.", index.size());
+      return index;
+    }
+  }
+
+  /**
+   * Not supported, since a frozen index is read-only.
+   *
+   * @throws UnsupportedOperationException always.
+   */
+  @Override
+  public void add(long id, List<FloatVector> vectors) {
+    throw new UnsupportedOperationException("A frozen index is read-only.");
+  }
+
+  /**
+   * Not supported, since a frozen index is read-only.
+   *
+   * @throws UnsupportedOperationException always.
+   */
+  @Override
+  public void addAll(Map<Long, List<FloatVector>> items) {
+    throw new UnsupportedOperationException("A frozen index is read-only.");
+  }
+
+  /**
+   * Not supported, since a frozen index is read-only.
+   *
+   * @throws UnsupportedOperationException always.
+   */
+  @Override
+  public boolean remove(long id) {
+    throw new UnsupportedOperationException("A frozen index is read-only.");
+  }
+
+  @Override
+  public List<SearchResult> search(List<FloatVector> queryVectors, int k, int efSearch) {
+    return search(queryVectors, k, efSearch, null);
+  }
+
+  /**
+   * Searches for the nearest neighbors, leaving out items whose ordinal is excluded. Excluded items
+   * are still traversed, so they do not cut the graph apart, but never become results.
+   *
+   * @param excluded The ordinals to leave out of the results, or null to keep all items.
+   */
+  List<SearchResult> search(
+      List<FloatVector> queryVectors, int k, int efSearch, IntPredicate excluded) {
+    if (efSearch < k) {
+      throw new IllegalArgumentException("efSearch must be greater than or equal to k");
+    }
+    if (entryPoint < 0) {
+      return Collections.emptyList();
+    }
+
+    FloatVector pooledQuery = routing != null ? routing.pool(queryVectors) : null;
+    Scratch buffers = scratch.get();
+    int nearest = entryPoint;
+    for (int level = layers.length - 1; level > 0; level--) {
+      PriorityQueue<Candidate> candidates =
+          searchLayer(nearest, queryVectors, pooledQuery, 1, level, null, buffers);
+      nearest = candidates.peek().ordinal;
+    }
+    return searchLayer(nearest, queryVectors, pooledQuery, efSearch, 0, excluded, buffers)
+        .stream()
+        .sorted()
+        .limit(k)
+        .map(candidate -> new SearchResult(ids[candidate.ordinal], candidate.distance))
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * Performs a search on a single layer using the given buffers. The returned queue belongs to the
+   * buffers and is only valid until they are used again.
+   */
+  private PriorityQueue<Candidate> searchLayer(
+      int entry,
+      List<FloatVector> queryVectors,
+      FloatVector pooledQuery,
+      int ef,
+      int level,
+      IntPredicate excluded,
+      Scratch buffers) {
+    buffers.clear();
+    PriorityQueue<Candidate> results = buffers.results;
+    PriorityQueue<Candidate> candidates = buffers.candidates;
+    Candidate start = new Candidate(entry, distance(queryVectors, pooledQuery, entry, level));
+    candidates.add(start);
+    if (excluded == null || !excluded.test(entry)) {
+      results.add(start);
+    }
+    buffers.visit(entry);
+
+    while (!candidates.isEmpty()) {
+      Candidate candidate = candidates.poll();
+      if (results.size() >= ef && candidate.distance > results.peek().distance) {
+        break;
+      }
+      int[] neighbors = buffers.neighbors;
+      int degree = layers[level].neighbors(candidate.ordinal, neighbors);
+      for (int i = 0; i < degree; i++) {
+        int neighbor = neighbors[i];
+        if (buffers.visit(neighbor)) {
+          double dist = distance(queryVectors, pooledQuery, neighbor, level);
+          if (results.size() < ef || dist < results.peek().distance) {
+            Candidate next = new Candidate(neighbor, dist);
+            candidates.add(next);
+            if (excluded == null || !excluded.test(neighbor)) {
+              results.add(next);
+              if (results.size() > ef) {
+                results.poll();
+              }
+            }
+          }
+        }
+      }
+    }
+    return results;
+  }
+
+  /**
+   * Returns the memory used by the neighbor lists and their offsets, in bytes, not counting array
+   * headers. This shows the savings of compressed lists.
+   *
+   * @return The size of the connections of all layers in bytes.
+   */
+  public long adjacencyBytes() {
+    long bytes = 0;
+    for (CsrLayer layer : layers) {
+      bytes += layer.bytes();
+    }
+    return bytes;
+  }
+
+  /**
+   * Calculates the distance between a query and an item. Upper layers use the pooled routing
+   * vectors if routing is configured, and layer 0 always uses the full distance.
+   */
+  private double distance(
+      List<FloatVector> queryVectors, FloatVector pooledQuery, int ordinal, int level) {
+    if (level > 0 && routing != null) {
+      return routing.computePooled(pooledQuery, pooled[ordinal]);
+    }
+    return multiVectorDistance.compute(queryVectors, vectors[ordinal]);
+  }
+
+  @Override
+  public Optional<List<FloatVector>> get(long id) {
+    int ordinal = ordinalOf(id);
+    return ordinal >= 0 ? Optional.of(vectors[ordinal]) : Optional.empty();
+  }
+
+  /** Returns the ordinal of an item, or -1 if the index does not hold it. */
+  int ordinalOf(long id) {
+    int position = Arrays.binarySearch(sortedIds, id);
+    return position >= 0 ? sortedOrdinals[position] : -1;
+  }
+
+  /** Returns the ID of the item with an ordinal. */
+  long idOf(int ordinal) {
+    return ids[ordinal];
+  }
+
+  /** Returns the vectors of the item with an ordinal. */
+  List<FloatVector> vectorsOf(int ordinal) {
+    return vectors[ordinal];
+  }
+
+  @Override
+  public int size() {
+    return ids.length;
+  }
+
+  @Override
+  public Set<Long> keySet() {
+    return Arrays.stream(sortedIds).boxed().collect(Collectors.toSet());
+  }
+
+  @Override
+  public MultiVectorDistance getDistance() {
+    return multiVectorDistance;
+  }
+
+  @Override
+  public void save(Path path) throws IOException {
+    log.info("Saving index with {} items to {}", size(), path);
+    try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(path.toFile()))) {
+      oos.writeObject(this);
+      log.info("Save complete.");
+    }
+  }
+
+  /**
+   * Not supported, since a frozen index is read-only.
+   *
+   * @throws UnsupportedOperationException always.
+   */
+  @Override
+  public void clear() {
+    throw new UnsupportedOperationException("A frozen index is read-only.");
+  }
+
+  /** Does nothing, since removed items are already dropped when freezing. */
+  @Override
+  public void vacuum() {}
+
+  /** Custom deserialization method to re-initialize the transient search buffers. */
+  @Serial
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    this.scratch = ThreadLocal.withInitial(() -> new Scratch(maxDegree));
+  }
+
+  /** An item ordinal and its distance to the query, ordered by distance. */
+  private record Candidate(int ordinal, double distance) implements Comparable<Candidate> {
+    @Override
+    public int compareTo(Candidate other) {
+      return Double.compare(distance, other.distance);
+    }
+  }
+
+  /**
+   * The buffers of a search. Visited items are kept in a small open-addressing hash set of
+   * ordinals, which grows with the number of items a search visits (about {@code ef} times the
+   * degree) rather than with the size of the index, so each thread's buffers stay small even for
+   * very large indexes.
+   */
+  private static final class Scratch {
+    private static final int INITIAL_VISITED_CAPACITY = 1024;
+    private static final int MAX_KEPT_VISITED_CAPACITY = 1 << 16;
+
+    private final PriorityQueue<Candidate> results =
+        new PriorityQueue<>(Collections.reverseOrder());
+    private final PriorityQueue<Candidate> candidates = new PriorityQueue<>();
+    private final int[] neighbors;
+
+    /** The visited ordinals plus one, so that 0 marks an empty slot. The length is a power of 2. */
+    private int[] visited = new int[INITIAL_VISITED_CAPACITY];
+
+    private int visitedCount = 0;
+
+    Scratch(int maxDegree) {
+      this.neighbors = new int[maxDegree];
+    }
+
+    void clear() {
+      results.clear();
+      candidates.clear();
+      if (visited.length > MAX_KEPT_VISITED_CAPACITY) {
+        // A search that visited unusually many items does not keep its large table
+        visited = new int[INITIAL_VISITED_CAPACITY];
+      } else if (visitedCount > 0) {
+        Arrays.fill(visited, 0);
+      }
+      visitedCount = 0;
+    }
+
+    /** Marks an item as visited and returns whether it was not visited before. */
+    boolean visit(int ordinal) {
+      int mask = visited.length - 1;
+      int slot = slot(ordinal, mask);
+      while (visited[slot] != 0) {
+        if (visited[slot] == ordinal + 1) {
+          return false;
+        }
+        slot = (slot + 1) & mask;
+      }
+      visited[slot] = ordinal + 1;
+      // Keep the table at most half full, so that probe sequences stay short
+      if (++visitedCount * 2 > visited.length) {
+        grow();
+      }
+      return true;
+    }
+
+    /** Returns the home slot of an ordinal, mixing its bits so that nearby ordinals spread out. */
+    private static int slot(int ordinal, int mask) {
+      int h = ordinal * 0x9E3779B9;
+      return (h ^ (h >>> 16)) & mask;
+    }
+
+    private void grow() {
+      int[] old = visited;
+      visited = new int[old.length * 2];
+      int mask = visited.length - 1;
+      for (int marked : old) {
+        if (marked != 0) {
+          int slot = slot(marked - 1, mask);
+          while (visited[slot] != 0) {
+            slot = (slot + 1) & mask;
+          }
+          visited[slot] = marked;
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,42 @@
+package io.github.habedi.mvhnsw.index;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/** Helpers for waiting on the parallel tasks of the indexes. */
+final class Futures {
+
+  private Futures() {}
+
+  /** Waits for all futures, rethrowing the first failure as an unchecked exception. */
+  static void join(List<? extends CompletableFuture<?>> futures) {
+    try {
+      CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+    } catch (CompletionException e) {
+      throw unwrap(e);
+    }
+  }
+
+  /**
+   * Waits for all futures and returns their results in order, rethrowing the first failure as an
+   * unchecked exception.
+   */
+  static <T> List<T> joinAll(List<CompletableFuture<T>> futures) {
+    List<T> results = new ArrayList<>(futures.size());
+    try {
+      for (CompletableFuture<T> future : futures) {
+        results.add(future.join());
+      }
+    } catch (CompletionException e) {
+      throw unwrap(e);
+    }
+    return results;
+  }
+
+  /** Returns the cause of a failure if it is unchecked, or the failure itself otherwise. */
+  static RuntimeException unwrap(CompletionException e) {
+    return e.getCause() instanceof RuntimeException cause ? cause : e;
+  }
+}
@@ -0,0 +1,588 @@
+package io.github.habedi.mvhnsw.index;
+
+import io.github.habedi.mvhnsw.common.FloatVector;
+import io.github.habedi.mvhnsw.distance.MultiVectorDistance;
+import java.io.*;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A thread-safe, serializable implementation of the {@link Index} interface based on an inverted
+ * file (IVF).
+ *
+ * <p>The index partitions items into {@code numLists} clusters using k-means centroids trained on
+ * a sample of items. Each item is appended to the posting list of its nearest centroid, so an
+ * insertion costs one distance evaluation per centroid instead of a graph search per layer. A
+ * search compares the query with all centroids and then scans the posting lists of the {@code
+ * nProbe} nearest ones with the configured {@link MultiVectorDistance}.
+ *
+ * <p>This trades some recall for much cheaper insertions, which suits write-heavy workloads such as
+ * log-style collections. Until the index is trained (explicitly with {@link #train(List)} or
+ * automatically once it holds {@code trainingSampleSize} items), items are kept in a single list
+ * that is searched exhaustively.
+ *
+ * <p>Centroids are the per-position means of the items in their clusters, so all items must have
+ * the same number of vectors, and the vectors at each position must have the same dimension.
+ */
+public final class IvfIndex implements Index, Serializable {
+
+  @Serial private static final long serialVersionUID = 1L;
+  private static final Logger log = LogManager.getLogger(IvfIndex.class);
+
+  private final MultiVectorDistance multiVectorDistance;
+  private final int numLists;
+  private final int trainingSampleSize;
+  private final int trainingIterations;
+  private final long seed;
+  private volatile int nProbe;
+
+  /** Stores the vector data for each item ID. */
+  private final Map<Long, List<FloatVector>> vectorMap;
+
+  /** Maps each item ID to the posting list that holds it. */
+  private final Map<Long, Integer> assignments;
+
+  /** The centroid of each posting list, or empty before the index is trained. */
+  private List<List<FloatVector>> centroids;
+
+  /** The posting lists, or a single list holding every item before the index is trained. */
+  private List<PostingList> postingLists;
+
+  /** A lock to manage concurrent access to the index. */
+  private transient ReentrantReadWriteLock lock;
+
+  /** Private constructor to be called by the {@link Builder}. */
+  private IvfIndex(Builder builder) {
+    this.multiVectorDistance = builder.multiVectorDistance;
+    this.numLists = builder.numLists;
+    this.nProbe = builder.nProbe;
+    this.trainingSampleSize = builder.trainingSampleSize;
+    this.trainingIterations = builder.trainingIterations;
+    this.seed = builder.seed;
+    this.vectorMap = new HashMap<>();
+    this.assignments = new HashMap<>();
+    this.centroids = new ArrayList<>();
+    this.postingLists = new ArrayList<>(List.of(new PostingList()));
+    this.lock = new ReentrantReadWriteLock();
+    log.info(
+        "Initialized IvfIndex with numLists={}, nProbe={}, trainingSampleSize={}, distance={}",
+        this.numLists,
+        this.nProbe,
+        this.trainingSampleSize,
+        this.multiVectorDistance.getClass().getSimpleName());
+  }
+
+  /**
+   * Creates a new {@link Builder} to configure and construct an IvfIndex.
+   *
+   * @return A new Builder instance.
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Loads an index from a file.
+   *
+   * @param path The path to the serialized index file.
+   * @return A new instance of IvfIndex with the loaded data.
+   * @throws IOException if an I/O error occurs while reading the file.
+   * @throws ClassNotFoundException if the class of a serialized object cannot be found.
+   */
+  public static IvfIndex load(Path path) throws IOException, ClassNotFoundException {
+    log.info("Loading index from {}", path);
+    try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(path.toFile()))) {
+      IvfIndex index = (IvfIndex) ois.readObject();
+      log.info("Successfully loaded index with {} items.", index.size());
+      return index;
+    }
+  }
+
+  @Override
+  public void add(long id, List<FloatVector> vectors) {
+    lock.writeLock().lock();
+    try {
+      if (vectorMap.containsKey(id)) {
+        throw new IllegalArgumentException(
+            "Item with ID " + id + " already exists. Please remove it first to update.");
+      }
+      vectorMap.put(id, vectors);
+      assign(id, vectors);
+
+      if (centroids.isEmpty() && vectorMap.size() >= trainingSampleSize) {
+        log.info("Index reached {} items. Training the centroids.", vectorMap.size());
+        trainLocked(new ArrayList<>(vectorMap.values()));
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Removes an item from the index. The item is deleted from its posting list immediately, so
+   * {@link #vacuum()} only releases spare capacity.
+   *
+   * @param id The unique identifier of the item to remove.
+   * @return {@code true} if the item was found and removed, {@code false} otherwise.
+   */
+  @Override
+  public boolean remove(long id) {
+    lock.writeLock().lock();
+    try {
+      if (vectorMap.remove(id) == null) {
+        return false;
+      }
+      postingLists.get(assignments.remove(id)).remove(id);
+      return true;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public void addAll(Map<Long, List<FloatVector>> items) {
+    log.info("Adding {} items to the index.", items.size());
+    items.forEach(this::add);
+  }
+
+  /**
+   * Trains the centroids with k-means on a sample of items and reassigns all items in the index to
+   * the new posting lists.
+   *
+   * <p>Training happens automatically once the index holds {@code trainingSampleSize} items, but
+   * it can be called earlier with a representative sample, or again after the distribution of the
+   * items has drifted.
+   *
+   * @param sample The items to train on. They do not need to be in the index.
+   * @throws IllegalArgumentException if the sample is empty or the items do not have the same
+   *     shape.
+   */
+  public void train(List<List<FloatVector>> sample) {
+    if (sample.isEmpty()) {
+      throw new IllegalArgumentException("Training sample cannot be empty.");
+    }
+    lock.writeLock().lock();
+    try {
+      trainLocked(sample);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /** Runs k-means on a sample and reassigns every item. Must be called while holding the lock. */
+  private void trainLocked(List<List<FloatVector>> sample) {
+    Random random = new Random(seed);
+    List<List<FloatVector>> shuffled = new ArrayList<>(sample);
+    Collections.shuffle(shuffled, random);
+    if (shuffled.size() > trainingSampleSize) {
+      shuffled = shuffled.subList(0, trainingSampleSize);
+    }
+
+    int k = Math.min(numLists, shuffled.size());
+    List<List<FloatVector>> newCentroids = new ArrayList<>(shuffled.subList(0, k));
+    int[] clusterOf = new int[shuffled.size()];
+    for (int iteration = 0; iteration < trainingIterations; iteration++) {
+      boolean changed = false;
+      for (int i = 0; i < shuffled.size(); i++) {
+        int nearest = nearestCentroid(newCentroids, shuffled.get(i));
+        changed |= iteration == 0 || nearest != clusterOf[i];
+        clusterOf[i] = nearest;
+      }
+      if (!changed) {
+        break;
+      }
+      newCentroids = updateCentroids(shuffled, clusterOf, k, random);
+    }
+    centroids = newCentroids;
+
+    postingLists = new ArrayList<>(k);
+    for (int c = 0; c < k; c++) {
+      postingLists.add(new PostingList());
+    }
+    assignments.clear();
+    vectorMap.forEach(this::assign);
+    log.info("Trained {} centroids on {} items.", k, shuffled.size());
+  }
+
+  /** Computes the per-position mean of each cluster, reseeding empty clusters at random. */
+  private static List<List<FloatVector>> updateCentroids(
+      List<List<FloatVector>> sample, int[] clusterOf, int k, Random random) {
+    List<FloatVector> shape = sample.get(0);
+    float[][][] sums = new float[k][shape.size()][];
+    int[] counts = new int[k];
+    for (int i = 0; i < sample.size(); i++) {
+      List<FloatVector> item = sample.get(i);
+      if (item.size() != shape.size()) {
+        throw new IllegalArgumentException("All items must have the same number of vectors.");
+      }
+      int c = clusterOf[i];
+      counts[c]++;
+      for (int p = 0; p < item.size(); p++) {
+        float[] data = item.get(p).getUnsafeRawData();
+        if (sums[c][p] == null) {
+          sums[c][p] = new float[data.length];
+        } else if (sums[c][p].length != data.length) {
+          throw new IllegalArgumentException("Vectors at the same position must match in size.");
+        }
+        for (int d = 0; d < data.length; d++) {
+          sums[c][p][d] += data[d];
+        }
+      }
+    }
+
+    List<List<FloatVector>> centroids = new ArrayList<>(k);
+    for (int c = 0; c < k; c++) {
+      if (counts[c] == 0) {
+        centroids.add(sample.get(random.nextInt(sample.size())));
+        continue;
+      }
+      List<FloatVector> centroid = new ArrayList<>(shape.size());
+      for (float[] sum : sums[c]) {
+        for (int d = 0; d < sum.length; d++) {
+          sum[d] /= counts[c];
+        }
+        centroid.add(new FloatVector(sum));
+      }
+      centroids.add(centroid);
+    }
+    return centroids;
+  }
+
+  /** Appends an item to the posting list of its nearest centroid. Must hold the write lock. */
+  private void assign(long id, List<FloatVector> vectors) {
+    int list = centroids.isEmpty() ? 0 : nearestCentroid(centroids, vectors);
+    postingLists.get(list).add(id);
+    assignments.put(id, list);
+  }
+
+  private int nearestCentroid(List<List<FloatVector>> candidates, List<FloatVector> vectors) {
+    int nearest = 0;
+    double nearestDistance = Double.MAX_VALUE;
+    for (int c = 0; c < candidates.size(); c++) {
+      double distance = multiVectorDistance.compute(vectors, candidates.get(c));
+      if (distance < nearestDistance) {
+        nearestDistance = distance;
+        nearest = c;
+      }
+    }
+    return nearest;
+  }
+
+  /**
+   * Searches the index for the {@code k} nearest neighbors to a given query, probing the default
+   * number of posting lists.
+   *
+   * @param queryVectors The list of vectors representing the query.
+   * @param k The number of nearest neighbors to return.
+   * @param efSearch Ignored; use {@link #searchWithNProbe(List, int, int)} to control the
+   *     trade-off between speed and recall.
+   * @return A list of {@link SearchResult}s, sorted by distance in ascending order.
+   */
+  @Override
+  public List<SearchResult> search(List<FloatVector> queryVectors, int k, int efSearch) {
+    return searchWithNProbe(queryVectors, k, nProbe);
+  }
+
+  /**
+   * Searches the index for the {@code k} nearest neighbors to a given query.
+   *
+   * @param queryVectors The list of vectors representing the query.
+   * @param k The number of nearest neighbors to return.
+   * @param nProbe The number of posting lists to scan. Larger values improve recall at the cost of
+   *     speed; scanning all lists makes the search exact.
+   * @return A list of {@link SearchResult}s, sorted by distance in ascending order.
+   * @throws IllegalArgumentException if k or nProbe is not positive.
+   */
+  public List<SearchResult> searchWithNProbe(List<FloatVector> queryVectors, int k, int nProbe) {
+    if (k <= 0) {
+      throw new IllegalArgumentException("k must be positive.");
+    }
+    if (nProbe <= 0) {
+      throw new IllegalArgumentException("nProbe must be positive.");
+    }
+
+    lock.readLock().lock();
+    try {
+      List<Integer> probes = new ArrayList<>();
+      if (centroids.isEmpty()) {
+        probes.add(0);
+      } else {
+        PriorityQueue<SearchResult> nearestLists =
+            new PriorityQueue<>(Comparator.comparingDouble(SearchResult::score).reversed());
+        for (int c = 0; c < centroids.size(); c++) {
+          double distance = multiVectorDistance.compute(queryVectors, centroids.get(c));
+          nearestLists.add(new SearchResult(c, distance));
+          if (nearestLists.size() > nProbe) {
+            nearestLists.poll();
+          }
+        }
+        nearestLists.forEach(list -> probes.add((int) list.id()));
+      }
+
+      PriorityQueue<SearchResult> best =
+          new PriorityQueue<>(Comparator.comparingDouble(SearchResult::score).reversed());
+      for (int list : probes) {
+        PostingList postings = postingLists.get(list);
+        for (int i = 0; i < postings.size; i++) {
+          long id = postings.ids[i];
+          double distance = multiVectorDistance.compute(queryVectors, vectorMap.get(id));
+          if (best.size() < k || distance < best.peek().score()) {
+            best.add(new SearchResult(id, distance));
+            if (best.size() > k) {
+              best.poll();
+            }
+          }
+        }
+      }
+      List<SearchResult> results = new ArrayList<>(best);
+      results.sort(Comparator.comparingDouble(SearchResult::score));
+      return results;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Sets the number of posting lists that {@link #search(List, int, int)} scans.
+   *
+   * @param nProbe A positive integer.
+   * @throws IllegalArgumentException if nProbe is not positive.
+   */
+  public void setNProbe(int nProbe) {
+    if (nProbe <= 0) {
+      throw new IllegalArgumentException("nProbe must be positive.");
+    }
+    this.nProbe = nProbe;
+  }
+
+  /**
+   * Checks whether the centroids have been trained.
+   *
+   * @return {@code true} if items are partitioned into posting lists.
+   */
+  public boolean isTrained() {
+    lock.readLock().lock();
+    try {
+      return !centroids.isEmpty();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public Optional<List<FloatVector>> get(long id) {
+    lock.readLock().lock();
+    try {
+      return Optional.ofNullable(vectorMap.get(id));
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public int size() {
+    lock.readLock().lock();
+    try {
+      return vectorMap.size();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public Set<Long> keySet() {
+    lock.readLock().lock();
+    try {
+      return new HashSet<>(vectorMap.keySet());
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public MultiVectorDistance getDistance() {
+    return multiVectorDistance;
+  }
+
+  @Override
+  public void save(Path path) throws IOException {
+    log.info("Saving index with {} items to {}", size(), path);
+    lock.readLock().lock();
+    try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(path.toFile()))) {
+      oos.writeObject(this);
+      log.info("Save complete.");
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /** Clears all items and the trained centroids. */
+  @Override
+  public void clear() {
+    lock.writeLock().lock();
+    try {
+      vectorMap.clear();
+      assignments.clear();
+      centroids = new ArrayList<>();
+      postingLists = new ArrayList<>(List.of(new PostingList()));
+      log.info("Index cleared.");
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /** Shrinks the posting lists to their sizes, since removals are applied immediately. */
+  @Override
+  public void vacuum() {
+    lock.writeLock().lock();
+    try {
+      postingLists.forEach(PostingList::trim);
+      log.info("Vacuum complete.");
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /** Custom deserialization method to re-initialize the transient lock. */
+  @Serial
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    this.lock = new ReentrantReadWriteLock();
+  }
+
+  /** A growable list of item IDs belonging to one centroid. */
+  private static final class PostingList implements Serializable {
+    @Serial private static final long serialVersionUID = 1L;
+    private long[] ids = new long[8];
+    private int size = 0;
+
+    void add(long id) {
+      if (size == ids.length) {
+        ids = Arrays.copyOf(ids, size * 2);
+      }
+      ids[size++] = id;
+    }
+
+    /** Removes an ID by moving the last ID into its slot. */
+    void remove(long id) {
+      for (int i = 0; i < size; i++) {
+        if (ids[i] == id) {
+          ids[i] = ids[--size];
+          return;
+        }
+      }
+    }
+
+    void trim() {
+      ids = Arrays.copyOf(ids, Math.max(8, size));
+    }
+  }
+
+  /**
+   * A builder for configuring and creating an {@link IvfIndex}. This provides a fluent API for
+   * setting parameters.
+   */
+  public static class Builder {
+    private MultiVectorDistance multiVectorDistance;
+    private int numLists = 256;
+    private int nProbe = 8;
+    private int trainingSampleSize = 10_000;
+    private int trainingIterations = 20;
+    private long seed = 42L;
+
+    /**
+     * Sets the distance function used for training, assignment, and search.
+     *
+     * @param distance The distance function to use.
+     * @return This builder instance.
+     */
+    public Builder withDistance(MultiVectorDistance distance) {
+      this.multiVectorDistance = distance;
+      return this;
+    }
+
+    /**
+     * Sets the number of centroids (posting lists). A common choice is around the square root of
+     * the expected number of items.
+     *
+     * @param numLists A positive integer.
+     * @return This builder instance.
+     */
+    public Builder withNumLists(int numLists) {
+      if (numLists <= 0) {
+        throw new IllegalArgumentException("numLists must be positive.");
+      }
+      this.numLists = numLists;
+      return this;
+    }
+
+    /**
+     * Sets the default number of posting lists a search scans.
+     *
+     * @param nProbe A positive integer.
+     * @return This builder instance.
+     */
+    public Builder withNProbe(int nProbe) {
+      if (nProbe <= 0) {
+        throw new IllegalArgumentException("nProbe must be positive.");
+      }
+      this.nProbe = nProbe;
+      return this;
+    }
+
+    /**
+     * Sets the number of items k-means trains on, which is also the number of items after which
+     * the index trains itself.
+     *
+     * @param trainingSampleSize A positive integer, usually at least 30 times the number of lists.
+     * @return This builder instance.
+     */
+    public Builder withTrainingSampleSize(int trainingSampleSize) {
+      if (trainingSampleSize <= 0) {
+        throw new IllegalArgumentException("trainingSampleSize must be positive.");
+      }
+      this.trainingSampleSize = trainingSampleSize;
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of k-means iterations.
+     *
+     * @param trainingIterations A positive integer.
+     * @return This builder instance.
+     */
+    public Builder withTrainingIterations(int trainingIterations) {
+      if (trainingIterations <= 0) {
+        throw new IllegalArgumentException("trainingIterations must be positive.");
+      }
+      this.trainingIterations = trainingIterations;
+      return this;
+    }
+
+    /**
+     * Sets the seed of the random number generator used for training, which makes training
+     * reproducible.
+     *
+     * @param seed The seed.
+     * @return This builder instance.
+     */
+    public Builder withSeed(long seed) {
+      this.seed = seed;
+      return this;
+    }
+
+    /**
+     * Builds the {@link IvfIndex} with the configured parameters.
+     *
+     * @return A new IvfIndex instance.
+     * @throws NullPointerException if a distance function has not been configured.
+     */
+    public IvfIndex build() {
+      Objects.requireNonNull(multiVectorDistance, "A distance function must be configured.");
+      return new IvfIndex(this);
+    }
+  }
+}
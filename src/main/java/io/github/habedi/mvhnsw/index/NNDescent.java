@@ -0,0 +1,239 @@
+package io.github.habedi.mvhnsw.index;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Builds an approximate k-nearest-neighbor graph with NN-Descent (Dong, Charikar, and Li, 2011).
+ *
+ * <p>NN-Descent starts from random neighbor lists and repeatedly runs a local join: for each item,
+ * every pair of its neighbors (and reverse neighbors) is compared, and each of the two is offered
+ * to the other's list. A neighbor of a neighbor is likely to be a neighbor, so the lists converge
+ * quickly, typically after a handful of iterations. Only pairs involving at least one neighbor that
+ * is new since the last iteration are compared. The local joins of different items run in parallel
+ * on an executor, and each neighbor list is guarded by its own monitor.
+ *
+ * <p>Items are identified by their ordinal, from 0 to {@code size - 1}.
+ */
+final class NNDescent {
+
+  private static final Logger log = LogManager.getLogger(NNDescent.class);
+
+  /** Graphs of at most this many items are computed exactly, which is cheaper for small graphs. */
+  static final int BRUTE_FORCE_LIMIT = 256;
+
+  /** The iterations stop once fewer than this fraction of the list entries change. */
+  private static final double CONVERGENCE_RATIO = 0.001;
+
+  private static final int MAX_ITERATIONS = 20;
+
+  /** The number of local-join tasks per processor. */
+  private static final int CHUNKS_PER_CPU = 4;
+
+  /** Computes the distance between the items with two ordinals. */
+  interface OrdinalDistance {
+    double between(int a, int b);
+  }
+
+  private final int size;
+  private final int k;
+  private final OrdinalDistance distance;
+  private final Executor executor;
+  private final Random random;
+  private final int[][] neighbors;
+  private final double[][] distances;
+  private final boolean[][] fresh;
+  private final int[] counts;
+
+  private NNDescent(int size, int k, OrdinalDistance distance, Executor executor, long seed) {
+    this.size = size;
+    this.k = k;
+    this.distance = distance;
+    this.executor = executor;
+    this.random = new Random(seed);
+    this.neighbors = new int[size][k];
+    this.distances = new double[size][k];
+    this.fresh = new boolean[size][k];
+    this.counts = new int[size];
+  }
+
+  /**
+   * Computes the approximate {@code k} nearest neighbors of every item.
+   *
+   * @param size The number of items.
+   * @param k The number of neighbors per item. Must be less than {@code size}.
+   * @param distance The distance between two items. It must be symmetric and thread-safe.
+   * @param executor The executor to run the local joins on.
+   * @param seed The seed of the random initial lists and samples.
+   * @return The neighbor ordinals of each item, sorted by distance in ascending order, and their
+   *     distances.
+   */
+  static Result build(int size, int k, OrdinalDistance distance, Executor executor, long seed) {
+    if (k <= 0 || k >= size) {
+      throw new IllegalArgumentException("k must be positive and less than the number of items.");
+    }
+    NNDescent descent = new NNDescent(size, k, distance, executor, seed);
+    if (size <= BRUTE_FORCE_LIMIT) {
+      descent.bruteForce();
+    } else {
+      descent.descend();
+    }
+    return new Result(descent.neighbors, descent.distances);
+  }
+
+  /** The neighbor lists of all items, by ordinal. */
+  record Result(int[][] neighbors, double[][] distances) {}
+
+  private void bruteForce() {
+    for (int a = 0; a < size; a++) {
+      for (int b = a + 1; b < size; b++) {
+        double d = distance.between(a, b);
+        offer(a, b, d);
+        offer(b, a, d);
+      }
+    }
+  }
+
+  private void descend() {
+    for (int a = 0; a < size; a++) {
+      while (counts[a] < k) {
+        int b = random.nextInt(size);
+        if (b != a) {
+          offer(a, b, distance.between(a, b));
+        }
+      }
+    }
+
+    for (int iteration = 0; iteration < MAX_ITERATIONS; iteration++) {
+      int[][] newLists = new int[size][];
+      int[][] oldLists = new int[size][];
+      sample(newLists, oldLists);
+
+      LongAdder updates = new LongAdder();
+      int chunks = Math.min(size, Runtime.getRuntime().availableProcessors() * CHUNKS_PER_CPU);
+      List<CompletableFuture<Void>> futures = new ArrayList<>(chunks);
+      for (int c = 0; c < chunks; c++) {
+        int from = (int) ((long) size * c / chunks);
+        int to = (int) ((long) size * (c + 1) / chunks);
+        futures.add(
+            CompletableFuture.runAsync(
+                () -> {
+                  for (int a = from; a < to; a++) {
+                    updates.add(localJoin(newLists[a], oldLists[a]));
+                  }
+                },
+                executor));
+      }
+      Futures.join(futures);
+
+      log.debug("NN-Descent iteration {} made {} updates.", iteration, updates.sum());
+      if (updates.sum() < CONVERGENCE_RATIO * size * k) {
+        break;
+      }
+    }
+  }
+
+  /**
+   * Splits each item's neighbors into new and old ones, marks the new ones as old, and adds a
+   * sample of the reverse neighbors of each kind.
+   */
+  private void sample(int[][] newLists, int[][] oldLists) {
+    List<List<Integer>> newReverse = new ArrayList<>(size);
+    List<List<Integer>> oldReverse = new ArrayList<>(size);
+    for (int a = 0; a < size; a++) {
+      newReverse.add(new ArrayList<>());
+      oldReverse.add(new ArrayList<>());
+    }
+    for (int a = 0; a < size; a++) {
+      for (int i = 0; i < counts[a]; i++) {
+        (fresh[a][i] ? newReverse : oldReverse).get(neighbors[a][i]).add(a);
+      }
+    }
+    for (int a = 0; a < size; a++) {
+      List<Integer> newList = new ArrayList<>();
+      List<Integer> oldList = new ArrayList<>();
+      for (int i = 0; i < counts[a]; i++) {
+        if (fresh[a][i]) {
+          newList.add(neighbors[a][i]);
+          fresh[a][i] = false;
+        } else {
+          oldList.add(neighbors[a][i]);
+        }
+      }
+      addSample(newList, newReverse.get(a));
+      addSample(oldList, oldReverse.get(a));
+      newLists[a] = newList.stream().mapToInt(Integer::intValue).distinct().toArray();
+      oldLists[a] = oldList.stream().mapToInt(Integer::intValue).distinct().toArray();
+    }
+  }
+
+  /** Adds at most {@code k} randomly chosen reverse neighbors to a list. */
+  private void addSample(List<Integer> list, List<Integer> reverse) {
+    if (reverse.size() > k) {
+      for (int i = 0; i < k; i++) {
+        int j = i + random.nextInt(reverse.size() - i);
+        list.add(reverse.get(j));
+        reverse.set(j, reverse.get(i));
+      }
+    } else {
+      list.addAll(reverse);
+    }
+  }
+
+  /** Compares new neighbors with each other and with old neighbors. */
+  private int localJoin(int[] newList, int[] oldList) {
+    int updates = 0;
+    for (int i = 0; i < newList.length; i++) {
+      int a = newList[i];
+      for (int j = i + 1; j < newList.length; j++) {
+        updates += compare(a, newList[j]);
+      }
+      for (int b : oldList) {
+        updates += compare(a, b);
+      }
+    }
+    return updates;
+  }
+
+  /** Offers two items to each other's lists and returns the number of lists that changed. */
+  private int compare(int a, int b) {
+    if (a == b) {
+      return 0;
+    }
+    double d = distance.between(a, b);
+    return (offer(a, b, d) ? 1 : 0) + (offer(b, a, d) ? 1 : 0);
+  }
+
+  /** Inserts a neighbor into a sorted list if it is closer than the furthest one. */
+  private boolean offer(int a, int b, double d) {
+    synchronized (neighbors[a]) {
+      int count = counts[a];
+      if (count == k && d >= distances[a][k - 1]) {
+        return false;
+      }
+      for (int i = 0; i < count; i++) {
+        if (neighbors[a][i] == b) {
+          return false;
+        }
+      }
+      int position = count == k ? k - 1 : count;
+      while (position > 0 && distances[a][position - 1] > d) {
+        neighbors[a][position] = neighbors[a][position - 1];
+        distances[a][position] = distances[a][position - 1];
+        fresh[a][position] = fresh[a][position - 1];
+        position--;
+      }
+      neighbors[a][position] = b;
+      distances[a][position] = d;
+      fresh[a][position] = true;
+      counts[a] = Math.min(count + 1, k);
+      return true;
+    }
+  }
+}
@@ -0,0 +1,492 @@
+package io.github.habedi.mvhnsw.index;
+
+import io.github.habedi.mvhnsw.common.FloatVector;
+import io.github.habedi.mvhnsw.distance.Distance;
+import io.github.habedi.mvhnsw.distance.MultiVectorDistance;
+import io.github.habedi.mvhnsw.distance.WeightedAverageDistance;
+import java.io.*;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A thread-safe, serializable implementation of the {@link Index} interface that builds one
+ * single-vector HNSW graph per component slot.
+ *
+ * <p>Items are lists of vectors where the vector at position {@code i} is compared with the {@code
+ * i}-th configured {@link Distance}. Instead of one graph built on the blended {@link
+ * WeightedAverageDistance}, this index keeps a separate {@link MultiVectorHNSW} graph for every
+ * component, so each hop of a traversal only computes one distance. A search probes all component
+ * graphs in parallel (each with its own efSearch), takes the union of the candidates they return,
+ * and re-ranks that union with the exact weighted distance.
+ *
+ * <p>Compared to {@link MultiVectorHNSW}, this uses more memory for the graphs and may miss items
+ * that are only close under the blended distance but not close in any single component. In return,
+ * traversals are cheaper and run in parallel.
+ */
+public final class PerComponentHNSW implements Index, Serializable {
+
+  @Serial private static final long serialVersionUID = 1L;
+  private static final Logger log = LogManager.getLogger(PerComponentHNSW.class);
+
+  private final WeightedAverageDistance multiVectorDistance;
+
+  /** The single-vector graphs, one per component slot. */
+  private final List<MultiVectorHNSW> graphs;
+
+  /** Stores the full vector data for each live item ID, used for the exact re-ranking. */
+  private final Map<Long, List<FloatVector>> vectorMap;
+
+  /** The IDs of the items that are being inserted into the component graphs. */
+  private transient Set<Long> pending;
+
+  /** A lock to keep the component graphs consistent with each other. */
+  private transient ReentrantReadWriteLock lock;
+
+  /** Signaled when an item is no longer pending, so a save can wait for a consistent state. */
+  private transient Condition inserted;
+
+  /** The executor used to probe the component graphs in parallel. */
+  private transient Executor executor;
+
+  /** Private constructor to be called by the {@link Builder}. */
+  private PerComponentHNSW(Builder builder) {
+    float[] weightsArray = new float[builder.weights.size()];
+    for (int i = 0; i < weightsArray.length; i++) {
+      weightsArray[i] = builder.weights.get(i);
+    }
+    this.multiVectorDistance = new WeightedAverageDistance(builder.distances, weightsArray);
+    this.graphs = new ArrayList<>(builder.distances.size());
+    for (Distance<FloatVector> distance : builder.distances) {
+      graphs.add(
+          MultiVectorHNSW.builder()
+              .withM(builder.m)
+              .withEfConstruction(builder.efConstruction)
+              .withWeightedAverageDistance()
+              .addDistance(distance, 1.0f)
+              .and()
+              .build());
+    }
+    this.vectorMap = new HashMap<>();
+    this.pending = new HashSet<>();
+    this.lock = new ReentrantReadWriteLock();
+    this.inserted = lock.writeLock().newCondition();
+    this.executor = builder.executor;
+    log.info(
+        "Initialized PerComponentHNSW with {} component graphs, M={}, efConstruction={}",
+        graphs.size(),
+        builder.m,
+        builder.efConstruction);
+  }
+
+  /**
+   * Creates a new {@link Builder} to configure and construct a PerComponentHNSW index.
+   *
+   * @return A new Builder instance.
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Loads an index from a file.
+   *
+   * @param path The path to the serialized index file.
+   * @return A new instance of PerComponentHNSW with the loaded data.
+   * @throws IOException if an I/O error occurs while reading the file.
+   * @throws ClassNotFoundException if the class of a serialized object cannot be found.
+   */
+  public static PerComponentHNSW load(Path path) throws IOException, ClassNotFoundException {
+    log.info("Loading index from {}", path);
+    try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(path.toFile()))) {
+      PerComponentHNSW index = (PerComponentHNSW) ois.readObject();
+      log.info("Successfully loaded index with {} items.", index.size());
+      return index;
+    }
+  }
+
+  /**
+   * Sets the executor used to probe the component graphs in parallel. This is not persisted, and a
+   * loaded index uses the common fork-join pool until this is called.
+   *
+   * @param executor The executor to use.
+   */
+  public void setExecutor(Executor executor) {
+    this.executor = Objects.requireNonNull(executor, "Executor cannot be null.");
+  }
+
+  /**
+   * Adds an item by inserting each of its vectors into its component graph, in parallel on the
+   * executor. The inserts run without holding the lock of this index, since each component graph
+   * has its own, so searches go on meanwhile and only return the item once every insert is done.
+   *
+   * @param id The unique identifier for the item.
+   * @param vectors The list of vectors representing the item, one per component graph.
+   * @throws IllegalArgumentException if the number of vectors does not match the number of
+   *     component graphs, or if an item with the same ID exists or is being added.
+   */
+  @Override
+  public void add(long id, List<FloatVector> vectors) {
+    if (vectors.size() != graphs.size()) {
+      throw new IllegalArgumentException(
+          "Number of vectors must match the number of component graphs.");
+    }
+    lock.writeLock().lock();
+    try {
+      if (vectorMap.containsKey(id) || !pending.add(id)) {
+        throw new IllegalArgumentException(
+            "Item with ID " + id + " already exists. Please remove it first to update.");
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+
+    List<CompletableFuture<Void>> inserts = new ArrayList<>(graphs.size());
+    for (int c = 0; c < graphs.size(); c++) {
+      MultiVectorHNSW graph = graphs.get(c);
+      List<FloatVector> component = List.of(vectors.get(c));
+      inserts.add(CompletableFuture.runAsync(() -> graph.add(id, component), executor));
+    }
+    RuntimeException failure = null;
+    try {
+      Futures.join(inserts);
+    } catch (RuntimeException e) {
+      failure = e;
+    }
+
+    lock.writeLock().lock();
+    try {
+      inserted.signalAll();
+      // The item is dropped if an insert failed or the index was cleared in the meantime. Any
+      // partial insert is undone, so the ID stays free in every graph
+      if (pending.remove(id) && failure == null) {
+        vectorMap.put(id, vectors);
+        return;
+      }
+      for (MultiVectorHNSW graph : graphs) {
+        graph.remove(id);
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  @Override
+  public boolean remove(long id) {
+    lock.writeLock().lock();
+    try {
+      if (vectorMap.remove(id) == null) {
+        return false;
+      }
+      for (MultiVectorHNSW graph : graphs) {
+        graph.remove(id);
+      }
+      log.debug("Marked item {} for deletion", id);
+      return true;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public void addAll(Map<Long, List<FloatVector>> items) {
+    log.info("Adding {} items to the index.", items.size());
+    items.forEach(this::add);
+  }
+
+  @Override
+  public List<SearchResult> search(List<FloatVector> queryVectors, int k, int efSearch) {
+    int[] efs = new int[graphs.size()];
+    Arrays.fill(efs, efSearch);
+    return search(queryVectors, k, efs);
+  }
+
+  /**
+   * Searches the index with a separate efSearch for each component graph.
+   *
+   * <p>Each component graph is probed in parallel for its {@code efSearch} nearest neighbors of the
+   * matching query vector. The union of all candidates is then re-ranked with the exact weighted
+   * distance, and the {@code k} best are returned.
+   *
+   * @param queryVectors The list of vectors representing the query.
+   * @param k The number of nearest neighbors to return.
+   * @param efSearch The efSearch for each component graph, in component order. Each value must be
+   *     >= k, or 0 to skip probing that component graph.
+   * @return A list of {@link SearchResult}s, sorted by distance in ascending order.
+   * @throws IllegalArgumentException if the number of query vectors or efSearch values does not
+   *     match the number of component graphs, or an efSearch is neither 0 nor >= k.
+   */
+  public List<SearchResult> search(List<FloatVector> queryVectors, int k, int[] efSearch) {
+    return search(queryVectors, k, efSearch, multiVectorDistance);
+  }
+
+  /**
+   * Searches the index with per-query weights for the components, without rebuilding anything.
+   *
+   * <p>Because every component has its own graph, the weights do not affect the traversals, only
+   * the re-ranking. Component graphs whose weight is zero are not probed at all, and their
+   * distances are not computed during the re-ranking.
+   *
+   * @param queryVectors The list of vectors representing the query.
+   * @param k The number of nearest neighbors to return.
+   * @param efSearch The efSearch for each component graph, in component order. Each value must be
+   *     >= k, or 0 to skip probing that component graph.
+   * @param weights The weights for this query, one per component. They will be normalized.
+   * @return A list of {@link SearchResult}s, sorted by distance in ascending order, with scores
+   *     computed using the given weights.
+   * @throws IllegalArgumentException if the weights are invalid, or for the same reasons as {@link
+   *     #search(List, int, int[])}.
+   */
+  public List<SearchResult> search(
+      List<FloatVector> queryVectors, int k, int[] efSearch, float[] weights) {
+    WeightedAverageDistance distance = multiVectorDistance.withWeights(weights);
+    int[] efs = efSearch.clone();
+    for (int c = 0; c < efs.length && c < weights.length; c++) {
+      if (weights[c] == 0.0f) {
+        efs[c] = 0;
+      }
+    }
+    return search(queryVectors, k, efs, distance);
+  }
+
+  /** Probes the component graphs and re-ranks the fused candidates with the given distance. */
+  private List<SearchResult> search(
+      List<FloatVector> queryVectors, int k, int[] efSearch, WeightedAverageDistance distance) {
+    if (queryVectors.size() != graphs.size() || efSearch.length != graphs.size()) {
+      throw new IllegalArgumentException(
+          "Number of query vectors and efSearch values must match the number of component graphs.");
+    }
+    for (int ef : efSearch) {
+      if (ef != 0 && ef < k) {
+        throw new IllegalArgumentException("efSearch must be greater than or equal to k");
+      }
+    }
+
+    lock.readLock().lock();
+    try {
+      if (vectorMap.isEmpty()) {
+        return Collections.emptyList();
+      }
+
+      List<CompletableFuture<List<SearchResult>>> probes = new ArrayList<>(graphs.size());
+      for (int c = 0; c < graphs.size(); c++) {
+        if (efSearch[c] == 0) {
+          continue;
+        }
+        MultiVectorHNSW graph = graphs.get(c);
+        List<FloatVector> component = List.of(queryVectors.get(c));
+        int ef = efSearch[c];
+        probes.add(CompletableFuture.supplyAsync(() -> graph.search(component, ef, ef), executor));
+      }
+
+      Set<Long> candidates = new HashSet<>();
+      for (List<SearchResult> results : Futures.joinAll(probes)) {
+        for (SearchResult result : results) {
+          candidates.add(result.id());
+        }
+      }
+      log.trace("Re-ranking {} fused candidates", candidates.size());
+
+      PriorityQueue<SearchResult> best =
+          new PriorityQueue<>(Comparator.comparingDouble(SearchResult::score).reversed());
+      for (long id : candidates) {
+        List<FloatVector> vectors = vectorMap.get(id);
+        if (vectors == null) {
+          continue;
+        }
+        best.add(new SearchResult(id, distance.compute(queryVectors, vectors)));
+        if (best.size() > k) {
+          best.poll();
+        }
+      }
+      return best.stream()
+          .sorted(Comparator.comparingDouble(SearchResult::score))
+          .collect(Collectors.toList());
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public Optional<List<FloatVector>> get(long id) {
+    lock.readLock().lock();
+    try {
+      return Optional.ofNullable(vectorMap.get(id));
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public int size() {
+    lock.readLock().lock();
+    try {
+      return vectorMap.size();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public Set<Long> keySet() {
+    lock.readLock().lock();
+    try {
+      return new HashSet<>(vectorMap.keySet());
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public MultiVectorDistance getDistance() {
+    return multiVectorDistance;
+  }
+
+  @Override
+  public void save(Path path) throws IOException {
+    log.info("Saving index with {} items to {}", size(), path);
+    lock.writeLock().lock();
+    try {
+      // Inserts change the component graphs without holding the lock, so wait for them to finish
+      // and then downgrade to the read lock, which keeps new ones from starting
+      while (!pending.isEmpty()) {
+        inserted.awaitUninterruptibly();
+      }
+      lock.readLock().lock();
+    } finally {
+      lock.writeLock().unlock();
+    }
+    try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(path.toFile()))) {
+      oos.writeObject(this);
+      log.info("Save complete.");
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public void clear() {
+    lock.writeLock().lock();
+    try {
+      vectorMap.clear();
+      pending.clear();
+      inserted.signalAll();
+      graphs.forEach(MultiVectorHNSW::clear);
+      log.info("Index cleared.");
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public void vacuum() {
+    lock.writeLock().lock();
+    try {
+      log.info("Starting vacuum of {} component graphs.", graphs.size());
+      Futures.join(
+          graphs.stream().map(g -> CompletableFuture.runAsync(g::vacuum, executor)).toList());
+      log.info("Vacuum complete.");
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /** Custom deserialization method to re-initialize the transient state, lock and executor. */
+  @Serial
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    this.pending = new HashSet<>();
+    this.lock = new ReentrantReadWriteLock();
+    this.inserted = lock.writeLock().newCondition();
+    this.executor = ForkJoinPool.commonPool();
+  }
+
+  /**
+   * A builder for configuring and creating a {@link PerComponentHNSW} index. This provides a fluent
+   * API for setting parameters.
+   */
+  public static class Builder {
+    private final List<Distance<FloatVector>> distances = new ArrayList<>();
+    private final List<Float> weights = new ArrayList<>();
+    private int m = 16;
+    private int efConstruction = 200;
+    private Executor executor = ForkJoinPool.commonPool();
+
+    /**
+     * Sets the maximum number of connections per node per layer (M) of every component graph.
+     *
+     * @param m A positive integer, typically between 5 and 48.
+     * @return This builder instance.
+     */
+    public Builder withM(int m) {
+      if (m <= 0) {
+        throw new IllegalArgumentException("M must be positive.");
+      }
+      this.m = m;
+      return this;
+    }
+
+    /**
+     * Sets the size of the dynamic list for neighbors during the construction of every component
+     * graph (efConstruction).
+     *
+     * @param efConstruction A positive integer, typically between 64 and 512.
+     * @return This builder instance.
+     */
+    public Builder withEfConstruction(int efConstruction) {
+      if (efConstruction <= 0) {
+        throw new IllegalArgumentException("efConstruction must be positive.");
+      }
+      this.efConstruction = efConstruction;
+      return this;
+    }
+
+    /**
+     * Adds a component slot with its distance function and its weight in the re-ranking.
+     *
+     * @param distance The {@link Distance} function for the vector at this position.
+     * @param weight The weight of this component in the exact weighted distance.
+     * @return This builder instance.
+     */
+    public Builder addComponent(Distance<FloatVector> distance, float weight) {
+      this.distances.add(distance);
+      this.weights.add(weight);
+      return this;
+    }
+
+    /**
+     * Sets the executor used to insert into and probe the component graphs in parallel. Defaults
+     * to the common fork-join pool. Searches and vacuums wait for their tasks on this executor
+     * while holding the lock of the index, so it should not be an executor whose threads also call
+     * into the index and could block on that lock.
+     *
+     * @param executor The executor to use.
+     * @return This builder instance.
+     */
+    public Builder withExecutor(Executor executor) {
+      this.executor = Objects.requireNonNull(executor, "Executor cannot be null.");
+      return this;
+    }
+
+    /**
+     * Builds the {@link PerComponentHNSW} index with the configured parameters.
+     *
+     * @return A new PerComponentHNSW instance.
+     * @throws IllegalArgumentException if no components have been added or the weights are
+     *     invalid.
+     */
+    public PerComponentHNSW build() {
+      return new PerComponentHNSW(this);
+    }
+  }
+}
@@ -0,0 +1,77 @@
+package io.github.habedi.mvhnsw.index;
+
+import java.util.BitSet;
+import java.util.Objects;
+import java.util.function.LongPredicate;
+import java.util.stream.LongStream;
+
+/**
+ * Restricts a search to a subset of the items in an index.
+ *
+ * <p>A filter is either an allow-list of item IDs stored in a {@link BitSet} or an arbitrary {@link
+ * LongPredicate} on item IDs. The graph traversal still walks through items that do not match the
+ * filter (so the graph stays connected), but only matching items are admitted to the results.
+ *
+ * <p>An allow-list knows how many items it admits, which lets an index fall back to scanning the
+ * allowed items directly when the filter is very selective. A predicate does not, so the index only
+ * falls back to a scan when the traversal finds fewer than {@code k} matches.
+ */
+public final class SearchFilter {
+
+  private final LongPredicate predicate;
+  private final BitSet allowedIds;
+
+  private SearchFilter(LongPredicate predicate, BitSet allowedIds) {
+    this.predicate = predicate;
+    this.allowedIds = allowedIds;
+  }
+
+  /**
+   * Creates a filter that admits the items whose IDs match a predicate.
+   *
+   * @param predicate The predicate on item IDs. It must be thread-safe and cheap to evaluate.
+   * @return A new SearchFilter instance.
+   * @throws NullPointerException if the predicate is null.
+   */
+  public static SearchFilter of(LongPredicate predicate) {
+    return new SearchFilter(Objects.requireNonNull(predicate, "Predicate cannot be null."), null);
+  }
+
+  /**
+   * Creates a filter that admits the items whose IDs are set in a bitset. Only IDs between 0 and
+   * {@link Integer#MAX_VALUE} can be admitted.
+   *
+   * <p>The bitset is not copied, so it must not be modified while a search is using it.
+   *
+   * @param allowedIds The bitset of allowed item IDs.
+   * @return A new SearchFilter instance.
+   * @throws NullPointerException if the bitset is null.
+   */
+  public static SearchFilter of(BitSet allowedIds) {
+    Objects.requireNonNull(allowedIds, "Allowed IDs cannot be null.");
+    return new SearchFilter(null, allowedIds);
+  }
+
+  /**
+   * Tests whether an item is admitted by this filter.
+   *
+   * @param id The item ID.
+   * @return {@code true} if the item may appear in the results.
+   */
+  public boolean test(long id) {
+    if (allowedIds != null) {
+      return id >= 0 && id <= Integer.MAX_VALUE && allowedIds.get((int) id);
+    }
+    return predicate.test(id);
+  }
+
+  /** Returns the number of admitted IDs, or -1 if it is not known in advance. */
+  int cardinality() {
+    return allowedIds != null ? allowedIds.cardinality() : -1;
+  }
+
+  /** Returns the admitted IDs, or null if they cannot be enumerated. */
+  LongStream allowedIds() {
+    return allowedIds != null ? allowedIds.stream().asLongStream() : null;
+  }
+}
@@ -0,0 +1,129 @@
+package io.github.habedi.mvhnsw.index;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Limits on the work done by a single search.
+ *
+ * <p>A search that reaches any of its limits stops traversing the graph and returns the best
+ * results it has found so far, flagged as partial (see {@link SearchResponse#partial()}). This
+ * bounds the latency of queries that would otherwise take much longer than usual, for example
+ * because of a poor entry point or a graph with many deleted items. The limits are checked each
+ * time the search takes a candidate from its queue, so a search may slightly overshoot them.
+ *
+ * <p>Instances are immutable and are created with {@link #builder()}.
+ */
+public final class SearchOptions {
+
+  private final Duration timeout;
+  private final long maxDistanceEvaluations;
+  private final long maxVisitedNodes;
+
+  private SearchOptions(Builder builder) {
+    this.timeout = builder.timeout;
+    this.maxDistanceEvaluations = builder.maxDistanceEvaluations;
+    this.maxVisitedNodes = builder.maxVisitedNodes;
+  }
+
+  /**
+   * Creates a new {@link Builder} for search options. A builder without any limits set creates
+   * options that do not limit the search.
+   *
+   * @return A new Builder instance.
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Gets the maximum wall-clock time of a search, measured from the moment it starts.
+   *
+   * @return The timeout, or empty if the search time is not limited.
+   */
+  public Optional<Duration> getTimeout() {
+    return Optional.ofNullable(timeout);
+  }
+
+  /**
+   * Gets the maximum number of distance evaluations of a search.
+   *
+   * @return The limit, or {@link Long#MAX_VALUE} if it is not limited.
+   */
+  public long getMaxDistanceEvaluations() {
+    return maxDistanceEvaluations;
+  }
+
+  /**
+   * Gets the maximum number of nodes a search expands.
+   *
+   * @return The limit, or {@link Long#MAX_VALUE} if it is not limited.
+   */
+  public long getMaxVisitedNodes() {
+    return maxVisitedNodes;
+  }
+
+  /** A builder for {@link SearchOptions}. */
+  public static class Builder {
+    private Duration timeout;
+    private long maxDistanceEvaluations = Long.MAX_VALUE;
+    private long maxVisitedNodes = Long.MAX_VALUE;
+
+    /**
+     * Sets the maximum wall-clock time of a search.
+     *
+     * @param timeout A positive duration.
+     * @return This builder instance.
+     * @throws NullPointerException if the timeout is null.
+     * @throws IllegalArgumentException if the timeout is zero or negative.
+     */
+    public Builder withTimeout(Duration timeout) {
+      Objects.requireNonNull(timeout, "Timeout cannot be null.");
+      if (timeout.isZero() || timeout.isNegative()) {
+        throw new IllegalArgumentException("Timeout must be positive.");
+      }
+      this.timeout = timeout;
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of distance evaluations of a search.
+     *
+     * @param maxDistanceEvaluations A positive number.
+     * @return This builder instance.
+     * @throws IllegalArgumentException if the number is not positive.
+     */
+    public Builder withMaxDistanceEvaluations(long maxDistanceEvaluations) {
+      if (maxDistanceEvaluations <= 0) {
+        throw new IllegalArgumentException("maxDistanceEvaluations must be positive.");
+      }
+      this.maxDistanceEvaluations = maxDistanceEvaluations;
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of nodes a search expands, summed over all layers.
+     *
+     * @param maxVisitedNodes A positive number.
+     * @return This builder instance.
+     * @throws IllegalArgumentException if the number is not positive.
+     */
+    public Builder withMaxVisitedNodes(long maxVisitedNodes) {
+      if (maxVisitedNodes <= 0) {
+        throw new IllegalArgumentException("maxVisitedNodes must be positive.");
+      }
+      this.maxVisitedNodes = maxVisitedNodes;
+      return this;
+    }
+
+    /**
+     * Builds the {@link SearchOptions}.
+     *
+     * @return A new SearchOptions instance.
+     */
+    public SearchOptions build() {
+      return new SearchOptions(this);
+    }
+  }
+}
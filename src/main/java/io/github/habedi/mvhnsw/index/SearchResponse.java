@@ -0,0 +1,13 @@
+package io.github.habedi.mvhnsw.index;
+
+import java.util.List;
+
+/**
+ * The results of a search that was limited by {@link SearchOptions}.
+ *
+ * @param results The results, sorted by distance in ascending order.
+ * @param partial Whether the search stopped early because it reached one of its limits, in which
+ *     case the results are the best found so far and may be fewer or worse than those of an
+ *     unlimited search.
+ */
+public record SearchResponse(List<SearchResult> results, boolean partial) {}
@@ -0,0 +1,652 @@
+package io.github.habedi.mvhnsw.index;
+
+import io.github.habedi.mvhnsw.common.FloatVector;
+import io.github.habedi.mvhnsw.distance.MultiVectorDistance;
+import java.io.*;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A thread-safe, serializable implementation of the {@link Index} interface that splits the items
+ * into several segments, in the style of a log-structured merge tree.
+ *
+ * <p>New items are added to a small mutable {@link MultiVectorHNSW} segment. Once it holds {@code
+ * segmentSize} items, it is sealed into an immutable {@link FrozenMultiVectorHNSW} and a new
+ * mutable segment is started, so an insertion never searches a graph larger than one segment.
+ * Removing an item from a sealed segment sets its bit in the segment's deleted bitset, which is
+ * cheap, and searches traverse deleted items but leave them out of the results.
+ *
+ * <p>A search takes a snapshot of the segments and releases the lock before it searches them in
+ * parallel on the configured executor, then merges the {@code k} best results of each. To keep
+ * the number of segments low, sealed segments are merged in the background on the merge executor:
+ * segments are grouped into tiers by size (each tier is {@code mergeFactor} times larger than the
+ * previous one), and once a tier has {@code mergeFactor} segments, their live items are bulk-built
+ * into one frozen segment of the next tier. A rebuild is thus bounded by the size of the segments
+ * it merges, instead of the size of the whole index.
+ */
+public final class SegmentedIndex implements Index, Serializable {
+
+  @Serial private static final long serialVersionUID = 1L;
+  private static final Logger log = LogManager.getLogger(SegmentedIndex.class);
+
+  private final MultiVectorDistance multiVectorDistance;
+  private final int m;
+  private final int efConstruction;
+  private final int segmentSize;
+  private final int mergeFactor;
+
+  /** The segment that new items are added to. */
+  private MultiVectorHNSW mutableSegment;
+
+  /** The sealed segments, in the order they were sealed or merged. */
+  private final List<Segment> sealedSegments;
+
+  /** Maps the ID of each live item in a sealed segment to that segment. Rebuilt when loading. */
+  private transient Map<Long, Segment> locations;
+
+  /** A lock to manage concurrent access to the list of segments. */
+  private transient ReentrantReadWriteLock lock;
+
+  /** The executor used to search the segments and to build merged segments. */
+  private transient Executor executor;
+
+  /** The executor that runs the background merges. */
+  private transient Executor mergeExecutor;
+
+  /** Whether a background merge is running or scheduled. */
+  private transient AtomicBoolean merging;
+
+  /** Private constructor to be called by the {@link Builder}. */
+  private SegmentedIndex(Builder builder) {
+    this.multiVectorDistance = builder.multiVectorDistance;
+    this.m = builder.m;
+    this.efConstruction = builder.efConstruction;
+    this.segmentSize = builder.segmentSize;
+    this.mergeFactor = builder.mergeFactor;
+    this.mutableSegment = newSegment();
+    this.sealedSegments = new ArrayList<>();
+    this.locations = new HashMap<>();
+    this.lock = new ReentrantReadWriteLock();
+    this.executor = builder.executor;
+    this.mergeExecutor = builder.mergeExecutor;
+    this.merging = new AtomicBoolean(false);
+    log.info(
+        "Initialized SegmentedIndex with segmentSize={}, mergeFactor={}, M={}, distance={}",
+        this.segmentSize,
+        this.mergeFactor,
+        this.m,
+        this.multiVectorDistance.getClass().getSimpleName());
+  }
+
+  /**
+   * Creates a new {@link Builder} to configure and construct a SegmentedIndex.
+   *
+   * @return A new Builder instance.
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Loads an index from a file.
+   *
+   * @param path The path to the serialized index file.
+   * @return A new instance of SegmentedIndex with the loaded data.
+   * @throws IOException if an I/O error occurs while reading the file.
+   * @throws ClassNotFoundException if the class of a serialized object cannot be found.
+   */
+  public static SegmentedIndex load(Path path) throws IOException, ClassNotFoundException {
+    log.info("Loading index from {}", path);
+    try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(path.toFile()))) {
+      SegmentedIndex index = (SegmentedIndex) ois.readObject();
+      log.info("Successfully loaded index with {} items.", index.size());
+      return index;
+    }
+  }
+
+  /**
+   * Sets the executor used to search the segments and to build merged segments. This is not
+   * persisted, and a loaded index uses the common fork-join pool until this is called.
+   *
+   * @param executor The executor to use.
+   */
+  public void setExecutor(Executor executor) {
+    this.executor = Objects.requireNonNull(executor, "Executor cannot be null.");
+  }
+
+  /**
+   * Sets the executor that runs the background merges. This is not persisted, and a loaded index
+   * uses the common fork-join pool until this is called.
+   *
+   * @param mergeExecutor The executor to use.
+   */
+  public void setMergeExecutor(Executor mergeExecutor) {
+    this.mergeExecutor = Objects.requireNonNull(mergeExecutor, "Executor cannot be null.");
+  }
+
+  private MultiVectorHNSW newSegment() {
+    return MultiVectorHNSW.builder()
+        .withDistance(multiVectorDistance)
+        .withM(m)
+        .withEfConstruction(efConstruction)
+        .build();
+  }
+
+  /** Bulk-builds a frozen segment from a batch of items. */
+  private Segment buildSegment(Map<Long, List<FloatVector>> items) {
+    return new Segment(
+        MultiVectorHNSW.builder()
+            .withDistance(multiVectorDistance)
+            .withM(m)
+            .withEfConstruction(efConstruction)
+            .withExecutor(executor)
+            .bulkBuild(items)
+            .freeze());
+  }
+
+  @Override
+  public void add(long id, List<FloatVector> vectors) {
+    boolean sealed = false;
+    lock.writeLock().lock();
+    try {
+      if (locations.containsKey(id)) {
+        throw new IllegalArgumentException(
+            "Item with ID " + id + " already exists. Please remove it first to update.");
+      }
+      mutableSegment.add(id, vectors);
+      if (mutableSegment.size() >= segmentSize) {
+        seal();
+        sealed = true;
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+    if (sealed) {
+      scheduleMerge();
+    }
+  }
+
+  /** Freezes the mutable segment into a sealed segment and starts a new mutable segment. */
+  private void seal() {
+    log.debug("Sealing a segment with {} items.", mutableSegment.size());
+    Segment segment = new Segment(mutableSegment.freeze());
+    for (int ordinal = 0; ordinal < segment.graph.size(); ordinal++) {
+      locations.put(segment.graph.idOf(ordinal), segment);
+    }
+    sealedSegments.add(segment);
+    mutableSegment = newSegment();
+  }
+
+  @Override
+  public void addAll(Map<Long, List<FloatVector>> items) {
+    log.info("Adding {} items to the index.", items.size());
+    items.forEach(this::add);
+  }
+
+  /**
+   * Marks an item as deleted in its segment. The item is dropped for good when its segment is
+   * merged or vacuumed, or, in the mutable segment, when that segment is sealed.
+   *
+   * @param id The unique identifier of the item to remove.
+   * @return {@code true} if the item was found and marked for deletion, {@code false} otherwise.
+   */
+  @Override
+  public boolean remove(long id) {
+    lock.writeLock().lock();
+    try {
+      Segment segment = locations.remove(id);
+      return segment != null ? segment.remove(id) : mutableSegment.remove(id);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Searches every segment for the {@code k} nearest neighbors to a given query and merges the
+   * results.
+   *
+   * @param queryVectors The list of vectors representing the query.
+   * @param k The number of nearest neighbors to return.
+   * @param efSearch The size of the dynamic candidate list in each segment. Must be >= k.
+   * @return A list of {@link SearchResult}s, sorted by distance in ascending order.
+   * @throws IllegalArgumentException if efSearch is less than k.
+   */
+  @Override
+  public List<SearchResult> search(List<FloatVector> queryVectors, int k, int efSearch) {
+    if (efSearch < k) {
+      throw new IllegalArgumentException("efSearch must be greater than or equal to k");
+    }
+
+    // Sealed segments never change apart from their deleted bits, and the mutable segment has its
+    // own lock, so the searches run on a snapshot without holding the lock. A merge that swaps
+    // segments meanwhile does not wait for them.
+    List<Segment> segments;
+    MultiVectorHNSW mutable;
+    lock.readLock().lock();
+    try {
+      segments = new ArrayList<>(sealedSegments);
+      mutable = mutableSegment;
+    } finally {
+      lock.readLock().unlock();
+    }
+
+    List<CompletableFuture<List<SearchResult>>> searches = new ArrayList<>(segments.size());
+    for (Segment segment : segments) {
+      searches.add(
+          CompletableFuture.supplyAsync(() -> segment.search(queryVectors, k, efSearch), executor));
+    }
+    // The mutable segment is searched by the calling thread
+    List<SearchResult> merged = new ArrayList<>(mutable.search(queryVectors, k, efSearch));
+    for (List<SearchResult> results : Futures.joinAll(searches)) {
+      merged.addAll(results);
+    }
+    return merged.stream()
+        .sorted(Comparator.comparingDouble(SearchResult::score))
+        .limit(k)
+        .collect(Collectors.toList());
+  }
+
+  @Override
+  public Optional<List<FloatVector>> get(long id) {
+    lock.readLock().lock();
+    try {
+      Segment segment = locations.get(id);
+      return segment != null ? segment.graph.get(id) : mutableSegment.get(id);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public int size() {
+    lock.readLock().lock();
+    try {
+      return locations.size() + mutableSegment.size();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public Set<Long> keySet() {
+    lock.readLock().lock();
+    try {
+      Set<Long> ids = new HashSet<>(locations.keySet());
+      ids.addAll(mutableSegment.keySet());
+      return ids;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public MultiVectorDistance getDistance() {
+    return multiVectorDistance;
+  }
+
+  /**
+   * Returns the number of segments, including the mutable one.
+   *
+   * @return The number of segments.
+   */
+  public int getSegmentCount() {
+    lock.readLock().lock();
+    try {
+      return sealedSegments.size() + 1;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public void save(Path path) throws IOException {
+    log.info("Saving index with {} items to {}", size(), path);
+    lock.readLock().lock();
+    try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(path.toFile()))) {
+      oos.writeObject(this);
+      log.info("Save complete.");
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /** Removes all items and segments. A background merge that is running is discarded. */
+  @Override
+  public void clear() {
+    lock.writeLock().lock();
+    try {
+      sealedSegments.clear();
+      mutableSegment = newSegment();
+      locations.clear();
+      log.info("Index cleared.");
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Rebuilds every segment that has removed items. Each segment is rebuilt on its own, so the cost
+   * of a rebuild is bounded by the segment size rather than the size of the index.
+   */
+  @Override
+  public void vacuum() {
+    lock.writeLock().lock();
+    try {
+      mutableSegment.vacuum();
+      for (int i = 0; i < sealedSegments.size(); i++) {
+        Segment segment = sealedSegments.get(i);
+        if (segment.removed > 0) {
+          Segment rebuilt = segment.size() > 0 ? buildSegment(segment.liveItems()) : null;
+          if (rebuilt != null) {
+            rebuilt.locate(locations);
+          }
+          sealedSegments.set(i, rebuilt);
+        }
+      }
+      sealedSegments.removeIf(Objects::isNull);
+      log.info("Vacuum complete. The index has {} segments.", sealedSegments.size() + 1);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /** Starts a background merge unless one is already running. */
+  private void scheduleMerge() {
+    if (!merging.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      mergeExecutor.execute(this::mergeSegments);
+    } catch (RejectedExecutionException e) {
+      merging.set(false);
+      log.warn("Could not schedule a segment merge.", e);
+    }
+  }
+
+  /** Merges full tiers of sealed segments until no tier is full. */
+  private void mergeSegments() {
+    try {
+      List<Segment> group;
+      while ((group = findMergeGroup()) != null) {
+        merge(group);
+      }
+    } catch (RuntimeException e) {
+      log.error("Segment merge failed.", e);
+    } finally {
+      merging.set(false);
+    }
+  }
+
+  /** Returns {@code mergeFactor} sealed segments of the same tier, or null if there are none. */
+  private List<Segment> findMergeGroup() {
+    lock.readLock().lock();
+    try {
+      Map<Integer, List<Segment>> tiers = new TreeMap<>();
+      for (Segment segment : sealedSegments) {
+        List<Segment> tier =
+            tiers.computeIfAbsent(tier(segment.size()), t -> new ArrayList<>());
+        tier.add(segment);
+        if (tier.size() == mergeFactor) {
+          return tier;
+        }
+      }
+      return null;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /** Returns the tier of a segment: 0 below {@code segmentSize * mergeFactor}, and so on. */
+  private int tier(int size) {
+    int tier = 0;
+    for (long limit = (long) segmentSize * mergeFactor; size >= limit; limit *= mergeFactor) {
+      tier++;
+    }
+    return tier;
+  }
+
+  /**
+   * Bulk-builds one frozen segment from the live items of a group of sealed segments and swaps it
+   * in. The build runs without the lock, since sealed segments are only changed by removals, which
+   * are applied to the merged segment before it is swapped in.
+   */
+  private void merge(List<Segment> group) {
+    Map<Long, List<FloatVector>> items = new LinkedHashMap<>();
+    for (Segment segment : group) {
+      items.putAll(segment.liveItems());
+    }
+    Segment merged = items.isEmpty() ? null : buildSegment(items);
+
+    lock.writeLock().lock();
+    try {
+      Set<Segment> sources = Collections.newSetFromMap(new IdentityHashMap<>());
+      sources.addAll(group);
+      if (!sealedSegments.containsAll(group)) {
+        // The index was cleared while merging
+        return;
+      }
+      sealedSegments.removeIf(sources::contains);
+      if (merged != null) {
+        for (int ordinal = 0; ordinal < merged.graph.size(); ordinal++) {
+          long id = merged.graph.idOf(ordinal);
+          if (sources.contains(locations.get(id))) {
+            locations.put(id, merged);
+          } else {
+            // Removed while merging
+            merged.remove(id);
+          }
+        }
+        if (merged.size() > 0) {
+          sealedSegments.add(merged);
+        }
+        log.debug("Merged {} segments into one with {} items.", group.size(), merged.size());
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /** Custom deserialization method to re-initialize the transient fields. */
+  @Serial
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    this.locations = new HashMap<>();
+    for (Segment segment : sealedSegments) {
+      segment.locate(locations);
+    }
+    this.lock = new ReentrantReadWriteLock();
+    this.executor = ForkJoinPool.commonPool();
+    this.mergeExecutor = ForkJoinPool.commonPool();
+    this.merging = new AtomicBoolean(false);
+  }
+
+  /**
+   * A sealed segment: a frozen graph and a bitset of the ordinals of its removed items. Bits are
+   * only set under the write lock of the index, and searches read them without it.
+   */
+  private static final class Segment implements Serializable {
+    @Serial private static final long serialVersionUID = 1L;
+
+    private final FrozenMultiVectorHNSW graph;
+    private final AtomicLongArray deleted;
+
+    /** The number of removed items. Only used under the lock of the index. */
+    private int removed = 0;
+
+    Segment(FrozenMultiVectorHNSW graph) {
+      this.graph = graph;
+      this.deleted = new AtomicLongArray((graph.size() + 63) / 64);
+    }
+
+    /** Marks an item as removed and returns whether it was live. */
+    boolean remove(long id) {
+      int ordinal = graph.ordinalOf(id);
+      if (ordinal < 0 || isDeleted(ordinal)) {
+        return false;
+      }
+      deleted.getAndAccumulate(ordinal >>> 6, 1L << ordinal, (word, bit) -> word | bit);
+      removed++;
+      return true;
+    }
+
+    boolean isDeleted(int ordinal) {
+      return (deleted.get(ordinal >>> 6) & (1L << ordinal)) != 0;
+    }
+
+    int size() {
+      return graph.size() - removed;
+    }
+
+    List<SearchResult> search(List<FloatVector> queryVectors, int k, int efSearch) {
+      return graph.search(queryVectors, k, efSearch, this::isDeleted);
+    }
+
+    /** Returns the live items, in the order of their ordinals. */
+    Map<Long, List<FloatVector>> liveItems() {
+      Map<Long, List<FloatVector>> items = new LinkedHashMap<>();
+      for (int ordinal = 0; ordinal < graph.size(); ordinal++) {
+        if (!isDeleted(ordinal)) {
+          items.put(graph.idOf(ordinal), graph.vectorsOf(ordinal));
+        }
+      }
+      return items;
+    }
+
+    /** Maps the ID of each live item to this segment. */
+    void locate(Map<Long, Segment> locations) {
+      for (int ordinal = 0; ordinal < graph.size(); ordinal++) {
+        if (!isDeleted(ordinal)) {
+          locations.put(graph.idOf(ordinal), this);
+        }
+      }
+    }
+  }
+
+  /**
+   * A builder for configuring and creating a {@link SegmentedIndex}. This provides a fluent API
+   * for setting parameters.
+   */
+  public static class Builder {
+    private MultiVectorDistance multiVectorDistance;
+    private int m = 16;
+    private int efConstruction = 200;
+    private int segmentSize = 100_000;
+    private int mergeFactor = 4;
+    private Executor executor = ForkJoinPool.commonPool();
+    private Executor mergeExecutor = ForkJoinPool.commonPool();
+
+    /**
+     * Sets the distance function used by every segment.
+     *
+     * @param distance The distance function to use.
+     * @return This builder instance.
+     */
+    public Builder withDistance(MultiVectorDistance distance) {
+      this.multiVectorDistance = distance;
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of connections per node per layer (M) of every segment.
+     *
+     * @param m A positive integer, typically between 5 and 48.
+     * @return This builder instance.
+     */
+    public Builder withM(int m) {
+      if (m <= 0) {
+        throw new IllegalArgumentException("M must be positive.");
+      }
+      this.m = m;
+      return this;
+    }
+
+    /**
+     * Sets the size of the dynamic list for neighbors during the construction of every segment.
+     *
+     * @param efConstruction A positive integer, typically between 64 and 512.
+     * @return This builder instance.
+     */
+    public Builder withEfConstruction(int efConstruction) {
+      if (efConstruction <= 0) {
+        throw new IllegalArgumentException("efConstruction must be positive.");
+      }
+      this.efConstruction = efConstruction;
+      return this;
+    }
+
+    /**
+     * Sets the number of items at which the mutable segment is sealed. Smaller segments make
+     * insertions cheaper but searches more expensive, since every segment is searched.
+     *
+     * @param segmentSize A positive integer.
+     * @return This builder instance.
+     */
+    public Builder withSegmentSize(int segmentSize) {
+      if (segmentSize <= 0) {
+        throw new IllegalArgumentException("segmentSize must be positive.");
+      }
+      this.segmentSize = segmentSize;
+      return this;
+    }
+
+    /**
+     * Sets the number of sealed segments of the same tier that are merged into one.
+     *
+     * @param mergeFactor An integer of at least 2.
+     * @return This builder instance.
+     */
+    public Builder withMergeFactor(int mergeFactor) {
+      if (mergeFactor < 2) {
+        throw new IllegalArgumentException("mergeFactor must be at least 2.");
+      }
+      this.mergeFactor = mergeFactor;
+      return this;
+    }
+
+    /**
+     * Sets the executor used to search the segments and to build merged segments. Defaults to the
+     * common fork-join pool.
+     *
+     * @param executor The executor to use.
+     * @return This builder instance.
+     */
+    public Builder withExecutor(Executor executor) {
+      this.executor = Objects.requireNonNull(executor, "Executor cannot be null.");
+      return this;
+    }
+
+    /**
+     * Sets the executor that runs the background merges. A merge waits for the tasks of its build
+     * on the search executor, so give a bounded pool its own merge executor rather than the same
+     * one. Defaults to the common fork-join pool.
+     *
+     * @param mergeExecutor The executor to use.
+     * @return This builder instance.
+     */
+    public Builder withMergeExecutor(Executor mergeExecutor) {
+      this.mergeExecutor = Objects.requireNonNull(mergeExecutor, "Executor cannot be null.");
+      return this;
+    }
+
+    /**
+     * Builds the {@link SegmentedIndex} with the configured parameters.
+     *
+     * @return A new SegmentedIndex instance.
+     * @throws NullPointerException if a distance function has not been configured.
+     */
+    public SegmentedIndex build() {
+      Objects.requireNonNull(multiVectorDistance, "A distance function must be configured.");
+      return new SegmentedIndex(this);
+    }
+  }
+}
@@ -0,0 +1,405 @@
+package io.github.habedi.mvhnsw.index;
+
+import io.github.habedi.mvhnsw.common.FloatVector;
+import io.github.habedi.mvhnsw.distance.MultiVectorDistance;
+import java.io.*;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+import java.util.stream.Collectors;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A thread-safe implementation of the {@link Index} interface that hash-partitions items across
+ * several independent {@link MultiVectorHNSW} shards.
+ *
+ * <p>Each shard has its own graph and its own lock, so writes to different shards run in parallel
+ * and each insertion only searches a graph of about {@code 1 / numShards} of the items. {@link
+ * #addAll(Map)} adds the items of each shard in a separate task on the configured executor. A
+ * search runs on every shard in parallel and merges the {@code k} best results of each with a
+ * bounded heap, so it returns the same results as the shards would if they were one index, up to
+ * the approximation of each shard's graph.
+ *
+ * <p>An index is saved as a small file at the given path, holding its configuration, and one file
+ * per shard next to it, named after it with a {@code .shard-<n>} suffix. The shards are saved and
+ * loaded in parallel. Since the shards live in separate files, the index itself is not {@link
+ * Serializable}; use {@link #save(Path)} and {@link #load(Path)} instead.
+ */
+public final class ShardedIndex implements Index {
+
+  private static final Logger log = LogManager.getLogger(ShardedIndex.class);
+
+  private final MultiVectorDistance multiVectorDistance;
+  private final int numShards;
+
+  /** The shards, saved to their own files. */
+  private final MultiVectorHNSW[] shards;
+
+  /** The executor used to run the tasks of each shard. */
+  private Executor executor;
+
+  /** Private constructor to be called by the {@link Builder}. */
+  private ShardedIndex(Builder builder) {
+    this.multiVectorDistance = builder.multiVectorDistance;
+    this.numShards = builder.numShards;
+    this.executor = builder.executor;
+    this.shards = new MultiVectorHNSW[numShards];
+    for (int i = 0; i < numShards; i++) {
+      shards[i] =
+          MultiVectorHNSW.builder()
+              .withDistance(multiVectorDistance)
+              .withM(builder.m)
+              .withEfConstruction(builder.efConstruction)
+              .withExecutor(executor)
+              .build();
+    }
+    log.info(
+        "Initialized ShardedIndex with {} shards, M={}, efConstruction={}, distance={}",
+        this.numShards,
+        builder.m,
+        builder.efConstruction,
+        this.multiVectorDistance.getClass().getSimpleName());
+  }
+
+  /** Private constructor to be called by {@link #load(Path)}, which then loads the shards. */
+  private ShardedIndex(MultiVectorDistance multiVectorDistance, int numShards) {
+    this.multiVectorDistance = multiVectorDistance;
+    this.numShards = numShards;
+    this.executor = ForkJoinPool.commonPool();
+    this.shards = new MultiVectorHNSW[numShards];
+  }
+
+  /**
+   * Creates a new {@link Builder} to configure and construct a ShardedIndex.
+   *
+   * @return A new Builder instance.
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Loads an index and its shards from files written by {@link #save(Path)}. The shards are loaded
+   * in parallel on the common fork-join pool.
+   *
+   * @param path The path to the index file.
+   * @return A new instance of ShardedIndex with the loaded data.
+   * @throws IOException if an I/O error occurs while reading the files.
+   * @throws ClassNotFoundException if the class of a serialized object cannot be found.
+   */
+  public static ShardedIndex load(Path path) throws IOException, ClassNotFoundException {
+    log.info("Loading index from {}", path);
+    ShardedIndex index;
+    try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(path.toFile()))) {
+      MultiVectorDistance distance = (MultiVectorDistance) ois.readObject();
+      index = new ShardedIndex(distance, ois.readInt());
+    }
+    try {
+      index.forEachShard(
+          i -> {
+            try {
+              index.shards[i] = MultiVectorHNSW.load(shardPath(path, i));
+            } catch (IOException e) {
+              throw new UncheckedIOException(e);
+            } catch (ClassNotFoundException e) {
+              throw new IllegalStateException(e);
+            }
+          });
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    } catch (IllegalStateException e) {
+      if (e.getCause() instanceof ClassNotFoundException cause) {
+        throw cause;
+      }
+      throw e;
+    }
+    log.info("Successfully loaded index with {} items.", index.size());
+    return index;
+  }
+
+  private static Path shardPath(Path path, int shard) {
+    return path.resolveSibling(path.getFileName() + ".shard-" + shard);
+  }
+
+  /**
+   * Sets the executor used to run the tasks of each shard. This is not persisted, and a loaded
+   * index uses the common fork-join pool until this is called.
+   *
+   * @param executor The executor to use.
+   */
+  public void setExecutor(Executor executor) {
+    this.executor = Objects.requireNonNull(executor, "Executor cannot be null.");
+    for (MultiVectorHNSW shard : shards) {
+      shard.setExecutor(executor);
+    }
+  }
+
+  /**
+   * Returns the number of shards.
+   *
+   * @return The number of shards.
+   */
+  public int getNumShards() {
+    return numShards;
+  }
+
+  /** Returns the shard of an item. The ID is mixed first, so that sequential IDs spread evenly. */
+  private MultiVectorHNSW shardOf(long id) {
+    long h = id * 0x9E3779B97F4A7C15L;
+    h ^= h >>> 32;
+    return shards[Math.floorMod((int) h, numShards)];
+  }
+
+  @Override
+  public void add(long id, List<FloatVector> vectors) {
+    shardOf(id).add(id, vectors);
+  }
+
+  /**
+   * Adds a batch of items, adding the items of each shard in parallel.
+   *
+   * @param items A map where keys are the unique item IDs and values are the corresponding lists
+   *     of vectors.
+   */
+  @Override
+  public void addAll(Map<Long, List<FloatVector>> items) {
+    log.info("Adding {} items to the index.", items.size());
+    Map<MultiVectorHNSW, Map<Long, List<FloatVector>>> partitions = new IdentityHashMap<>();
+    items.forEach(
+        (id, vectors) ->
+            partitions.computeIfAbsent(shardOf(id), shard -> new HashMap<>()).put(id, vectors));
+    List<CompletableFuture<Void>> futures = new ArrayList<>(partitions.size());
+    partitions.forEach(
+        (shard, partition) ->
+            futures.add(CompletableFuture.runAsync(() -> shard.addAll(partition), executor)));
+    Futures.join(futures);
+  }
+
+  @Override
+  public boolean remove(long id) {
+    return shardOf(id).remove(id);
+  }
+
+  /**
+   * Searches every shard in parallel for the {@code k} nearest neighbors to a given query and
+   * merges the results.
+   *
+   * @param queryVectors The list of vectors representing the query.
+   * @param k The number of nearest neighbors to return.
+   * @param efSearch The size of the dynamic candidate list in each shard. Must be >= k.
+   * @return A list of {@link SearchResult}s, sorted by distance in ascending order.
+   * @throws IllegalArgumentException if efSearch is less than k.
+   */
+  @Override
+  public List<SearchResult> search(List<FloatVector> queryVectors, int k, int efSearch) {
+    if (efSearch < k) {
+      throw new IllegalArgumentException("efSearch must be greater than or equal to k");
+    }
+
+    List<CompletableFuture<List<SearchResult>>> searches = new ArrayList<>(numShards - 1);
+    for (int i = 1; i < numShards; i++) {
+      MultiVectorHNSW shard = shards[i];
+      searches.add(
+          CompletableFuture.supplyAsync(() -> shard.search(queryVectors, k, efSearch), executor));
+    }
+
+    // The first shard is searched by the calling thread
+    PriorityQueue<SearchResult> best =
+        new PriorityQueue<>(Comparator.comparingDouble(SearchResult::score).reversed());
+    offerAll(best, shards[0].search(queryVectors, k, efSearch), k);
+    for (List<SearchResult> results : Futures.joinAll(searches)) {
+      offerAll(best, results, k);
+    }
+    return best.stream()
+        .sorted(Comparator.comparingDouble(SearchResult::score))
+        .collect(Collectors.toList());
+  }
+
+  /** Adds results to a max-heap that keeps the {@code k} closest. */
+  private static void offerAll(
+      PriorityQueue<SearchResult> best, List<SearchResult> results, int k) {
+    for (SearchResult result : results) {
+      if (best.size() < k) {
+        best.add(result);
+      } else if (result.score() < best.peek().score()) {
+        best.poll();
+        best.add(result);
+      } else {
+        // Each shard's results are sorted, so the rest are no closer
+        return;
+      }
+    }
+  }
+
+  @Override
+  public Optional<List<FloatVector>> get(long id) {
+    return shardOf(id).get(id);
+  }
+
+  @Override
+  public int size() {
+    int size = 0;
+    for (MultiVectorHNSW shard : shards) {
+      size += shard.size();
+    }
+    return size;
+  }
+
+  @Override
+  public Set<Long> keySet() {
+    Set<Long> keys = new HashSet<>();
+    for (MultiVectorHNSW shard : shards) {
+      keys.addAll(shard.keySet());
+    }
+    return keys;
+  }
+
+  @Override
+  public MultiVectorDistance getDistance() {
+    return multiVectorDistance;
+  }
+
+  /**
+   * Saves the configuration of the index to a file and each shard to a file next to it, named
+   * after it with a {@code .shard-<n>} suffix. The shards are saved in parallel.
+   *
+   * @param path The {@link Path} to the index file.
+   * @throws IOException if an I/O error occurs while writing the files.
+   */
+  @Override
+  public void save(Path path) throws IOException {
+    log.info("Saving index with {} shards to {}", numShards, path);
+    try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(path.toFile()))) {
+      oos.writeObject(multiVectorDistance);
+      oos.writeInt(numShards);
+    }
+    try {
+      forEachShard(
+          i -> {
+            try {
+              shards[i].save(shardPath(path, i));
+            } catch (IOException e) {
+              throw new UncheckedIOException(e);
+            }
+          });
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+    log.info("Save complete.");
+  }
+
+  /** Removes all items from every shard. */
+  @Override
+  public void clear() {
+    forEachShard(i -> shards[i].clear());
+    log.info("Index cleared.");
+  }
+
+  /** Vacuums every shard in parallel. */
+  @Override
+  public void vacuum() {
+    forEachShard(i -> shards[i].vacuum());
+  }
+
+  /** Runs a task for each shard index in parallel and waits for all of them. */
+  private void forEachShard(IntConsumer task) {
+    List<CompletableFuture<Void>> futures = new ArrayList<>(numShards);
+    for (int i = 0; i < numShards; i++) {
+      int shard = i;
+      futures.add(CompletableFuture.runAsync(() -> task.accept(shard), executor));
+    }
+    Futures.join(futures);
+  }
+
+  /**
+   * A builder for configuring and creating a {@link ShardedIndex}. This provides a fluent API for
+   * setting parameters.
+   */
+  public static class Builder {
+    private MultiVectorDistance multiVectorDistance;
+    private int numShards = Runtime.getRuntime().availableProcessors();
+    private int m = 16;
+    private int efConstruction = 200;
+    private Executor executor = ForkJoinPool.commonPool();
+
+    /**
+     * Sets the distance function used by every shard.
+     *
+     * @param distance The distance function to use.
+     * @return This builder instance.
+     */
+    public Builder withDistance(MultiVectorDistance distance) {
+      this.multiVectorDistance = distance;
+      return this;
+    }
+
+    /**
+     * Sets the number of shards. Defaults to the number of processors.
+     *
+     * @param numShards A positive integer.
+     * @return This builder instance.
+     */
+    public Builder withNumShards(int numShards) {
+      if (numShards <= 0) {
+        throw new IllegalArgumentException("numShards must be positive.");
+      }
+      this.numShards = numShards;
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of connections per node per layer (M) of every shard.
+     *
+     * @param m A positive integer, typically between 5 and 48.
+     * @return This builder instance.
+     */
+    public Builder withM(int m) {
+      if (m <= 0) {
+        throw new IllegalArgumentException("M must be positive.");
+      }
+      this.m = m;
+      return this;
+    }
+
+    /**
+     * Sets the size of the dynamic list for neighbors during the construction of every shard.
+     *
+     * @param efConstruction A positive integer, typically between 64 and 512.
+     * @return This builder instance.
+     */
+    public Builder withEfConstruction(int efConstruction) {
+      if (efConstruction <= 0) {
+        throw new IllegalArgumentException("efConstruction must be positive.");
+      }
+      this.efConstruction = efConstruction;
+      return this;
+    }
+
+    /**
+     * Sets the executor used to add, search, save, and load the shards in parallel. Defaults to
+     * the common fork-join pool.
+     *
+     * @param executor The executor to use.
+     * @return This builder instance.
+     */
+    public Builder withExecutor(Executor executor) {
+      this.executor = Objects.requireNonNull(executor, "Executor cannot be null.");
+      return this;
+    }
+
+    /**
+     * Builds the {@link ShardedIndex} with the configured parameters.
+     *
+     * @return A new ShardedIndex instance.
+     * @throws NullPointerException if a distance function has not been configured.
+     */
+    public ShardedIndex build() {
+      Objects.requireNonNull(multiVectorDistance, "A distance function must be configured.");
+      return new ShardedIndex(this);
+    }
+  }
+}
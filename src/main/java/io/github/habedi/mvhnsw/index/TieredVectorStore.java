@@ -0,0 +1,362 @@
+package io.github.habedi.mvhnsw.index;
+
+import io.github.habedi.mvhnsw.common.FloatVector;
+import io.github.habedi.mvhnsw.common.SparseFloatVector;
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Stores the vectors of a {@link MultiVectorHNSW} index in a memory-mapped file, with a bounded
+ * in-memory cache of the most recently used items in front of it.
+ *
+ * <p>Items are appended to the file, which is mapped in fixed-size chunks; an item never spans two
+ * chunks. Dense vectors are stored as their values, and sparse vectors as their index/value pairs,
+ * so they are read back sparse. The cache holds decoded items and evicts them with the CLOCK
+ * algorithm: each cached item has a reference bit that is set on every hit, and the clock hand
+ * evicts the first item whose bit is clear, clearing bits as it passes. Hot items thus stay cached
+ * at the cost of one byte per item, while items that miss are read from the mapping, which the
+ * operating system pages in from disk. A hit only reads a concurrent map and sets the bit, and only
+ * inserting into the cache, which may evict, takes a lock.
+ *
+ * <p>Reads are thread-safe. Writes must not run concurrently with each other or with reads, which
+ * the index guarantees with its write lock. When serialized, only the absolute path of the file and
+ * the locations of the items are written, so the file must stay at that path for the saved index to
+ * load.
+ */
+final class TieredVectorStore implements Serializable {
+
+  @Serial private static final long serialVersionUID = 1L;
+
+  /** The size of each mapped chunk of the file, which is also the maximum size of an item. */
+  static final int CHUNK_SIZE = 64 << 20;
+
+  private final String file;
+  private final int cacheCapacity;
+
+  /** The location of each item in the file. */
+  private final Map<Long, Long> offsets = new HashMap<>();
+
+  /** The offset at which the next item is appended. */
+  private long end = 0;
+
+  private transient FileChannel channel;
+  private transient List<MappedByteBuffer> chunks;
+  private transient Clock cache;
+  private transient LongAdder hits;
+  private transient LongAdder misses;
+
+  /**
+   * Creates a store backed by a new file.
+   *
+   * @param file The file to store the vectors in. An existing file is overwritten.
+   * @param cacheCapacity The maximum number of items to keep in memory.
+   */
+  TieredVectorStore(Path file, int cacheCapacity) {
+    if (cacheCapacity <= 0) {
+      throw new IllegalArgumentException("cacheCapacity must be positive.");
+    }
+    this.file = file.toAbsolutePath().toString();
+    this.cacheCapacity = cacheCapacity;
+    try {
+      open(StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not create vector file " + file, e);
+    }
+  }
+
+  private void open(StandardOpenOption... options) throws IOException {
+    List<StandardOpenOption> all =
+        new ArrayList<>(List.of(StandardOpenOption.READ, StandardOpenOption.WRITE));
+    all.addAll(List.of(options));
+    this.channel = FileChannel.open(Path.of(file), all.toArray(new StandardOpenOption[0]));
+    this.chunks = new CopyOnWriteArrayList<>();
+    this.cache = new Clock(cacheCapacity);
+    this.hits = new LongAdder();
+    this.misses = new LongAdder();
+  }
+
+  /** Returns the vectors of an item, or null if it is not stored. */
+  List<FloatVector> get(long id) {
+    List<FloatVector> cached = cache.get(id);
+    if (cached != null) {
+      hits.increment();
+      return cached;
+    }
+    Long offset = offsets.get(id);
+    if (offset == null) {
+      return null;
+    }
+    misses.increment();
+    List<FloatVector> vectors = read(offset);
+    cache.put(id, vectors);
+    return vectors;
+  }
+
+  /** Appends the vectors of an item to the file, replacing any earlier vectors of the item. */
+  void put(long id, List<FloatVector> vectors) {
+    int size = 4;
+    for (FloatVector vector : vectors) {
+      size +=
+          vector instanceof SparseFloatVector sparse
+              ? 8 + 8 * sparse.nonZeroCount()
+              : 4 + 4 * vector.length();
+    }
+    if (size > CHUNK_SIZE) {
+      throw new IllegalArgumentException("Item " + id + " is too large for the vector file.");
+    }
+    // Skip to the next chunk if the item does not fit in the current one
+    if (end / CHUNK_SIZE != (end + size - 1) / CHUNK_SIZE) {
+      end = (end / CHUNK_SIZE + 1) * CHUNK_SIZE;
+    }
+    MappedByteBuffer chunk = chunk((int) (end / CHUNK_SIZE));
+    int position = (int) (end % CHUNK_SIZE);
+    chunk.putInt(position, vectors.size());
+    position += 4;
+    for (FloatVector vector : vectors) {
+      if (vector instanceof SparseFloatVector sparse) {
+        // A negative header marks a sparse vector and gives its number of non-zero entries
+        int[] indices = sparse.getUnsafeIndices();
+        float[] values = sparse.getUnsafeValues();
+        chunk.putInt(position, ~indices.length);
+        chunk.putInt(position + 4, sparse.length());
+        position += 8;
+        for (int index : indices) {
+          chunk.putInt(position, index);
+          position += 4;
+        }
+        for (float value : values) {
+          chunk.putFloat(position, value);
+          position += 4;
+        }
+        continue;
+      }
+      float[] data = vector.getUnsafeRawData();
+      chunk.putInt(position, data.length);
+      position += 4;
+      for (float value : data) {
+        chunk.putFloat(position, value);
+        position += 4;
+      }
+    }
+    offsets.put(id, end);
+    end += size;
+    cache.remove(id);
+  }
+
+  /** Removes all items and truncates the file. The cache counters are kept. */
+  void clear() {
+    try {
+      chunks.clear();
+      offsets.clear();
+      end = 0;
+      cache = new Clock(cacheCapacity);
+      channel.truncate(0);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not truncate vector file " + file, e);
+    }
+  }
+
+  /** Returns the maximum number of items kept in memory. */
+  int cacheCapacity() {
+    return cacheCapacity;
+  }
+
+  /**
+   * Returns the file that a rebuilt copy of this store is written to before it replaces this one.
+   * It is in the same directory, so that it can be moved over the file of this store.
+   */
+  Path rebuildPath() {
+    return Path.of(file + ".rebuild");
+  }
+
+  /**
+   * Takes over the items of another store, which is usually a rebuilt copy of this one, by moving
+   * its file over the file of this store. The other store must not be used afterward. If the file
+   * cannot be moved, this store is left unchanged.
+   */
+  void replaceWith(TieredVectorStore other) {
+    try {
+      Files.move(Path.of(other.file), Path.of(file), StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not replace vector file " + file, e);
+    }
+    FileChannel previous = channel;
+    channel = other.channel;
+    chunks = other.chunks;
+    cache = other.cache;
+    offsets.clear();
+    offsets.putAll(other.offsets);
+    end = other.end;
+    try {
+      // The chunks of the replaced file stay mapped until they are garbage collected
+      previous.close();
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not close the replaced vector file " + file, e);
+    }
+  }
+
+  /** Closes and deletes the file of this store, which must not be used afterward. */
+  void delete() {
+    try {
+      channel.close();
+      Files.deleteIfExists(Path.of(file));
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not delete vector file " + file, e);
+    }
+  }
+
+  /** Returns the hit and miss counts and the occupancy of the cache. */
+  VectorCacheStats stats() {
+    return new VectorCacheStats(hits.sum(), misses.sum(), cache.size(), cacheCapacity);
+  }
+
+  private List<FloatVector> read(long offset) {
+    MappedByteBuffer chunk = chunk((int) (offset / CHUNK_SIZE));
+    int position = (int) (offset % CHUNK_SIZE);
+    int count = chunk.getInt(position);
+    position += 4;
+    List<FloatVector> vectors = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      int header = chunk.getInt(position);
+      position += 4;
+      if (header < 0) {
+        int dimension = chunk.getInt(position);
+        position += 4;
+        int[] indices = new int[~header];
+        float[] values = new float[~header];
+        for (int j = 0; j < indices.length; j++) {
+          indices[j] = chunk.getInt(position);
+          position += 4;
+        }
+        for (int j = 0; j < values.length; j++) {
+          values[j] = chunk.getFloat(position);
+          position += 4;
+        }
+        vectors.add(new SparseFloatVector(dimension, indices, values));
+        continue;
+      }
+      float[] data = new float[header];
+      for (int d = 0; d < data.length; d++) {
+        data[d] = chunk.getFloat(position);
+        position += 4;
+      }
+      vectors.add(new FloatVector(data));
+    }
+    return vectors;
+  }
+
+  /** Returns a mapped chunk of the file, mapping (and growing the file) on first use. */
+  private MappedByteBuffer chunk(int index) {
+    if (index < chunks.size()) {
+      return chunks.get(index);
+    }
+    synchronized (this) {
+      try {
+        while (chunks.size() <= index) {
+          long position = (long) chunks.size() * CHUNK_SIZE;
+          chunks.add(channel.map(FileChannel.MapMode.READ_WRITE, position, CHUNK_SIZE));
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException("Could not map vector file " + file, e);
+      }
+      return chunks.get(index);
+    }
+  }
+
+  /** Writes the mapped chunks to disk before the locations of the items are serialized. */
+  @Serial
+  private void writeObject(ObjectOutputStream out) throws IOException {
+    for (MappedByteBuffer chunk : chunks) {
+      chunk.force();
+    }
+    out.defaultWriteObject();
+  }
+
+  /** Reopens the file and starts with an empty cache. */
+  @Serial
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    open();
+  }
+
+  /**
+   * A fixed-size cache with CLOCK eviction. Lookups go to a concurrent map of entries, each of
+   * which pairs an item with its slot, and set the reference bit of the slot without locking; a bit
+   * set on a slot that was just reused only gives its new item a second chance. Inserting and
+   * removing items is synchronized.
+   */
+  private static final class Clock {
+    private final Entry[] entries;
+    private final byte[] referenced;
+    private final ConcurrentHashMap<Long, Entry> slots;
+    private int used = 0;
+    private int hand = 0;
+
+    Clock(int capacity) {
+      this.entries = new Entry[capacity];
+      this.referenced = new byte[capacity];
+      this.slots = new ConcurrentHashMap<>();
+    }
+
+    List<FloatVector> get(long id) {
+      Entry entry = slots.get(id);
+      if (entry == null) {
+        return null;
+      }
+      referenced[entry.slot] = 1;
+      return entry.value;
+    }
+
+    synchronized void put(long id, List<FloatVector> value) {
+      if (slots.containsKey(id)) {
+        return;
+      }
+      int slot;
+      if (used < entries.length) {
+        slot = used++;
+      } else {
+        while (referenced[hand] != 0) {
+          referenced[hand] = 0;
+          hand = (hand + 1) % entries.length;
+        }
+        slot = hand;
+        hand = (hand + 1) % entries.length;
+        if (entries[slot] != null) {
+          slots.remove(entries[slot].id);
+        }
+      }
+      Entry entry = new Entry(id, slot, value);
+      entries[slot] = entry;
+      referenced[slot] = 0;
+      slots.put(id, entry);
+    }
+
+    synchronized void remove(long id) {
+      Entry entry = slots.remove(id);
+      if (entry != null) {
+        // Leave an unreferenced empty slot for the hand to reuse
+        entries[entry.slot] = null;
+        referenced[entry.slot] = 0;
+      }
+    }
+
+    int size() {
+      return slots.size();
+    }
+
+    /** A cached item and the slot that it occupies. */
+    private record Entry(long id, int slot, List<FloatVector> value) {}
+  }
+}
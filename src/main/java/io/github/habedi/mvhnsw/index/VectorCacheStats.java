@@ -0,0 +1,22 @@
+package io.github.habedi.mvhnsw.index;
+
+/**
+ * A snapshot of the counters of the in-memory vector cache of an index with tiered vector storage.
+ *
+ * @param hits The number of vector lookups served from the cache.
+ * @param misses The number of vector lookups read from the vector file.
+ * @param size The number of items currently in the cache.
+ * @param capacity The maximum number of items in the cache.
+ */
+public record VectorCacheStats(long hits, long misses, int size, int capacity) {
+
+  /**
+   * Returns the fraction of lookups served from the cache.
+   *
+   * @return The hit rate, or 0 if there have been no lookups.
+   */
+  public double hitRate() {
+    long total = hits + misses;
+    return total == 0 ? 0.0 : (double) hits / total;
+  }
+}
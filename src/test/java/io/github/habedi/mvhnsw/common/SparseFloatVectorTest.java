@@ -0,0 +1,122 @@
+package io.github.habedi.mvhnsw.common;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+class SparseFloatVectorTest {
+
+  @Test
+  void testCoreFunctionality() {
+    SparseFloatVector vector = SparseFloatVector.of(5, new int[] {1, 3}, new float[] {2.0f, 4.0f});
+    assertEquals(5, vector.length());
+    assertEquals(2, vector.nonZeroCount());
+    assertEquals(0.0f, vector.getPrimitive(0));
+    assertEquals(4.0f, vector.get(3));
+    assertArrayEquals(new float[] {0.0f, 2.0f, 0.0f, 4.0f, 0.0f}, vector.toPrimitiveArray());
+    assertArrayEquals(vector.toPrimitiveArray(), vector.getUnsafeRawData());
+    assertThrows(IndexOutOfBoundsException.class, () -> vector.getPrimitive(5));
+  }
+
+  @Test
+  void testInvalidConstructors() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> new SparseFloatVector(0, new int[] {}, new float[] {}));
+    assertThrows(
+        IllegalArgumentException.class, () -> new SparseFloatVector(3, null, new float[] {}));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> new SparseFloatVector(3, new int[] {0}, new float[] {1.0f, 2.0f}));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> new SparseFloatVector(3, new int[] {2, 1}, new float[] {1.0f, 2.0f})); // Unsorted
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> new SparseFloatVector(3, new int[] {1, 1}, new float[] {1.0f, 2.0f})); // Duplicate
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> new SparseFloatVector(3, new int[] {3}, new float[] {1.0f})); // Out of range
+    assertThrows(IllegalArgumentException.class, () -> SparseFloatVector.fromDense(new float[] {}));
+  }
+
+  @Test
+  void testFromDenseKeepsOnlyNonZeros() {
+    SparseFloatVector vector = SparseFloatVector.fromDense(new float[] {0.0f, 1.5f, 0.0f, -2.0f});
+    assertArrayEquals(new int[] {1, 3}, vector.getUnsafeIndices());
+    assertArrayEquals(new float[] {1.5f, -2.0f}, vector.getUnsafeValues());
+  }
+
+  @Test
+  void testDotProductMatchesDense() {
+    float[] a = {1.0f, 0.0f, 2.0f, 0.0f, 3.0f, 0.0f};
+    float[] b = {0.0f, 5.0f, 4.0f, 0.0f, 1.0f, 7.0f};
+    double expected = FloatVector.of(a).dot(FloatVector.of(b)); // 2*4 + 3*1 = 11
+
+    SparseFloatVector sa = SparseFloatVector.fromDense(a);
+    SparseFloatVector sb = SparseFloatVector.fromDense(b);
+    assertEquals(expected, sa.dot(sb), 0.0001);
+    assertEquals(expected, sb.dot(sa), 0.0001);
+    assertEquals(expected, sa.dot(FloatVector.of(b)), 0.0001); // Sparse-dense
+    assertEquals(expected, FloatVector.of(a).dot(sb), 0.0001); // Dense-sparse
+  }
+
+  @Test
+  void testGallopingIntersection() {
+    // A very skewed pair of vectors makes the intersection gallop through the larger one
+    int dimension = 10_000;
+    int[] denseIndices = new int[2000];
+    float[] denseValues = new float[2000];
+    for (int i = 0; i < denseIndices.length; i++) {
+      denseIndices[i] = i * 5;
+      denseValues[i] = 1.0f;
+    }
+    SparseFloatVector large = SparseFloatVector.of(dimension, denseIndices, denseValues);
+    SparseFloatVector small =
+        SparseFloatVector.of(dimension, new int[] {3, 10, 9995}, new float[] {9.0f, 2.0f, 3.0f});
+
+    // Index 3 is absent from the large vector, 10 and 9995 are present
+    assertEquals(5.0, small.dot(large), 0.0001);
+    assertEquals(5.0, large.dot(small), 0.0001);
+  }
+
+  @Test
+  void testArithmeticOperations() {
+    SparseFloatVector v1 = SparseFloatVector.fromDense(new float[] {1.0f, 0.0f, 3.0f});
+    SparseFloatVector v2 = SparseFloatVector.fromDense(new float[] {0.0f, 2.0f, 4.0f});
+
+    FloatVector sum = v1.add(v2);
+    assertInstanceOf(SparseFloatVector.class, sum);
+    assertArrayEquals(new float[] {1.0f, 2.0f, 7.0f}, sum.toPrimitiveArray());
+
+    FloatVector product = v1.mul(v2);
+    assertInstanceOf(SparseFloatVector.class, product);
+    assertArrayEquals(new float[] {0.0f, 0.0f, 12.0f}, product.toPrimitiveArray());
+
+    FloatVector denseSum = v1.add(FloatVector.of(1.0f, 1.0f, 1.0f));
+    assertArrayEquals(new float[] {2.0f, 1.0f, 4.0f}, denseSum.toPrimitiveArray());
+
+    assertThrows(IllegalArgumentException.class, () -> v1.dot(FloatVector.of(1.0f, 2.0f)));
+  }
+
+  @Test
+  void testNormAndCosine() {
+    SparseFloatVector v1 = SparseFloatVector.of(10, new int[] {2, 7}, new float[] {3.0f, 4.0f});
+    assertEquals(5.0, v1.norm(), 0.0001);
+    assertEquals(1.0, v1.cosine(v1), 0.0001);
+
+    SparseFloatVector empty = SparseFloatVector.of(10, new int[] {}, new float[] {});
+    assertEquals(0.0, empty.norm(), 0.0001);
+    assertEquals(0.0, v1.cosine(empty), 0.0001);
+  }
+
+  @Test
+  void testEqualsAndHashCode() {
+    SparseFloatVector v1 = SparseFloatVector.of(3, new int[] {1}, new float[] {2.0f});
+    SparseFloatVector v2 = SparseFloatVector.fromDense(new float[] {0.0f, 2.0f, 0.0f});
+    assertEquals(v1, v2);
+    assertEquals(v1.hashCode(), v2.hashCode());
+    assertNotEquals(v1, FloatVector.of(0.0f, 2.0f, 0.0f));
+    assertTrue(v1.toString().contains("dimension=3"));
+  }
+}
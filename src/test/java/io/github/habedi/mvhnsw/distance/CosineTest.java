@@ -4,6 +4,7 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import io.github.habedi.mvhnsw.common.FloatVector;
+import io.github.habedi.mvhnsw.common.SparseFloatVector;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
@@ -51,4 +52,14 @@ class CosineTest {
     FloatVector v2 = FloatVector.of(1.0f, 2.0f, 3.0f);
     assertThrows(IllegalArgumentException.class, () -> distance.compute(v1, v2));
   }
+
+  @Test
+  void testSparseVectors() {
+    SparseFloatVector v1 = SparseFloatVector.of(1000, new int[] {7}, new float[] {2.0f});
+    SparseFloatVector v2 = SparseFloatVector.of(1000, new int[] {7, 9}, new float[] {1.0f, 1.0f});
+    SparseFloatVector v3 = SparseFloatVector.of(1000, new int[] {9}, new float[] {1.0f});
+    assertEquals(1.0 - 1.0 / Math.sqrt(2.0), distance.compute(v1, v2), 0.0001);
+    assertEquals(1.0, distance.compute(v1, v3), 0.0001); // No overlapping terms
+    assertEquals(0.0, distance.compute(v1, v1), 0.0001);
+  }
 }
@@ -4,6 +4,7 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import io.github.habedi.mvhnsw.common.FloatVector;
+import io.github.habedi.mvhnsw.common.SparseFloatVector;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
@@ -50,4 +51,13 @@ class DotProductTest {
   void testGetName() {
     assertEquals("DotProduct", distance.getName());
   }
+
+  @Test
+  void testSparseVectors() {
+    SparseFloatVector v1 = SparseFloatVector.of(4, new int[] {0, 2}, new float[] {1.0f, 3.0f});
+    SparseFloatVector v2 = SparseFloatVector.of(4, new int[] {2, 3}, new float[] {6.0f, 5.0f});
+    // Only index 2 overlaps: 3 * 6 = 18
+    assertEquals(-18.0, distance.compute(v1, v2), 0.0001);
+    assertEquals(-18.0, distance.compute(FloatVector.of(1.0f, 0.0f, 3.0f, 0.0f), v2), 0.0001);
+  }
 }
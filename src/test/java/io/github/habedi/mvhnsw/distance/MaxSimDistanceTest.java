@@ -0,0 +1,105 @@
+package io.github.habedi.mvhnsw.distance;
+
+import static jdk.incubator.vector.FloatVector.SPECIES_PREFERRED;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.github.habedi.mvhnsw.common.FloatVector;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class MaxSimDistanceTest {
+
+  private static final int SIMD_LANE_COUNT = SPECIES_PREFERRED.length();
+  private MaxSimDistance distance;
+
+  @BeforeEach
+  void setUp() {
+    distance = new MaxSimDistance();
+  }
+
+  @Test
+  void testVariableLengthSets() {
+    List<FloatVector> query = List.of(FloatVector.of(1.0f, 0.0f), FloatVector.of(0.0f, 1.0f));
+    List<FloatVector> doc =
+        List.of(FloatVector.of(2.0f, 0.0f), FloatVector.of(0.5f, 0.5f), FloatVector.of(0.0f, 3.0f));
+
+    // max(2, 0.5, 0) + max(0, 0.5, 3) = 2 + 3 = 5, negated
+    assertEquals(-5.0, distance.compute(query, doc), 0.0001);
+    // Asymmetric: each of the three document vectors picks its best query vector
+    // max(2, 0) + max(0.5, 0.5) + max(0, 3) = 2 + 0.5 + 3 = 5.5, negated
+    assertEquals(-5.5, distance.compute(doc, query), 0.0001);
+  }
+
+  @Test
+  void testBlockedKernelMatchesNaiveComputation() {
+    // Enough document vectors to hit both the blocked and the leftover loops, and a dimension
+    // that hits both the vectorized and scalar loops
+    Random random = new Random(42);
+    int dim = SIMD_LANE_COUNT * 2 + 3;
+    List<FloatVector> query = randomVectors(random, 3, dim);
+    List<FloatVector> doc = randomVectors(random, 11, dim);
+
+    double expected = 0.0;
+    for (FloatVector q : query) {
+      double best = Double.NEGATIVE_INFINITY;
+      for (FloatVector d : doc) {
+        best = Math.max(best, q.dot(d));
+      }
+      expected += best;
+    }
+    assertEquals(-expected, distance.compute(query, doc), 0.0001);
+  }
+
+  @Test
+  void testCosineSimilarity() {
+    MaxSimDistance cosine = new MaxSimDistance(MaxSimDistance.Similarity.COSINE);
+    List<FloatVector> query = List.of(FloatVector.of(2.0f, 0.0f));
+    List<FloatVector> doc = List.of(FloatVector.of(0.0f, 5.0f), FloatVector.of(10.0f, 0.0f));
+    assertEquals(-1.0, cosine.compute(query, doc), 0.0001);
+    assertEquals(MaxSimDistance.Similarity.COSINE, cosine.getSimilarity());
+  }
+
+  @Test
+  void testPooledProxyIsAnUpperBound() {
+    Random random = new Random(7);
+    List<FloatVector> query = randomVectors(random, 4, 8);
+    List<FloatVector> doc = randomVectors(random, 6, 8);
+
+    FloatVector pooled =
+        distance.pool(List.of(FloatVector.of(1.0f, 2.0f), FloatVector.of(3.0f, 4.0f)));
+    assertArrayEquals(new float[] {2.0f, 3.0f}, pooled.toPrimitiveArray(), 0.0001f);
+
+    double proxy = query.size() * distance.computePooled(distance.pool(query), distance.pool(doc));
+    assertTrue(distance.compute(query, doc) <= proxy + 1e-6);
+  }
+
+  @Test
+  void testInvalidArguments() {
+    List<FloatVector> vectors = List.of(FloatVector.of(1.0f, 2.0f));
+    List<FloatVector> mismatched = List.of(FloatVector.of(1.0f, 2.0f, 3.0f));
+    assertThrows(
+        IllegalArgumentException.class, () -> distance.compute(Collections.emptyList(), vectors));
+    assertThrows(IllegalArgumentException.class, () -> distance.compute(vectors, mismatched));
+    assertThrows(IllegalArgumentException.class, () -> distance.pool(Collections.emptyList()));
+    assertThrows(NullPointerException.class, () -> new MaxSimDistance(null));
+  }
+
+  private static List<FloatVector> randomVectors(Random random, int count, int dim) {
+    List<FloatVector> vectors = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      float[] data = new float[dim];
+      for (int k = 0; k < dim; k++) {
+        data[k] = random.nextFloat() * 2 - 1;
+      }
+      vectors.add(new FloatVector(data));
+    }
+    return vectors;
+  }
+}
@@ -5,6 +5,7 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import io.github.habedi.mvhnsw.common.FloatVector;
+import io.github.habedi.mvhnsw.common.SparseFloatVector;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
@@ -55,4 +56,16 @@ class SquaredEuclideanTest {
     // (3-1)^2 = 4, summed over all elements
     assertEquals(size * 4.0, distance.compute(v1, v2), 0.001);
   }
+
+  @Test
+  void testSparseVectors() {
+    float[] a = {1.0f, 0.0f, 2.0f, 0.0f};
+    float[] b = {0.0f, 3.0f, 4.0f, 0.0f};
+    // (1-0)^2 + (0-3)^2 + (2-4)^2 = 1 + 9 + 4 = 14
+    SparseFloatVector sa = SparseFloatVector.fromDense(a);
+    SparseFloatVector sb = SparseFloatVector.fromDense(b);
+    assertEquals(14.0, distance.compute(sa, sb), 0.0001);
+    assertEquals(14.0, distance.compute(sa, FloatVector.of(b)), 0.0001);
+    assertEquals(14.0, distance.compute(FloatVector.of(a), sb), 0.0001);
+  }
 }
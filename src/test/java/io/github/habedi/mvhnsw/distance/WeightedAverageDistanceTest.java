@@ -1,9 +1,11 @@
 package io.github.habedi.mvhnsw.distance;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import io.github.habedi.mvhnsw.common.FloatVector;
+import io.github.habedi.mvhnsw.common.SparseFloatVector;
 import java.util.Collections;
 import java.util.List;
 import org.junit.jupiter.api.BeforeEach;
@@ -49,6 +51,54 @@ class WeightedAverageDistanceTest {
     assertEquals(17.8, weightedDistance.compute(vectors1, vectors2), 0.0001);
   }
 
+  @Test
+  void testMixedDenseAndSparseComponents() {
+    List<Distance<FloatVector>> distances = List.of(cosine, new DotProduct());
+    WeightedAverageDistance weightedDistance =
+        new WeightedAverageDistance(distances, new float[] {0.8f, 0.2f});
+
+    List<FloatVector> vectors1 =
+        List.of(
+            FloatVector.of(1.0f, 0.0f),
+            SparseFloatVector.of(30_000, new int[] {5, 42}, new float[] {1.0f, 2.0f}));
+    List<FloatVector> vectors2 =
+        List.of(
+            FloatVector.of(0.0f, 1.0f),
+            SparseFloatVector.of(30_000, new int[] {42, 999}, new float[] {3.0f, 1.0f}));
+
+    // Cosine dist = 1.0 (orthogonal), sparse dot = 2 * 3 = 6, so dot distance = -6
+    // Total = (0.8 * 1.0) + (0.2 * -6.0) = 0.8 - 1.2 = -0.4
+    assertEquals(-0.4, weightedDistance.compute(vectors1, vectors2), 0.0001);
+  }
+
+  @Test
+  void testWithWeightsAndZeroWeightSkipping() {
+    Distance<FloatVector> failing =
+        new Distance<>() {
+          @Override
+          public double compute(FloatVector a, FloatVector b) {
+            throw new AssertionError("Zero-weight components must not be computed.");
+          }
+
+          @Override
+          public String getName() {
+            return "Failing";
+          }
+        };
+    WeightedAverageDistance weightedDistance =
+        new WeightedAverageDistance(List.of(squaredEuclidean, failing), new float[] {0.5f, 0.5f});
+    WeightedAverageDistance titleOnly = weightedDistance.withWeights(new float[] {2.0f, 0.0f});
+
+    List<FloatVector> vectors1 = List.of(FloatVector.of(1.0f, 2.0f), FloatVector.of(1.0f, 0.0f));
+    List<FloatVector> vectors2 = List.of(FloatVector.of(4.0f, 6.0f), FloatVector.of(0.0f, 1.0f));
+
+    assertEquals(25.0, titleOnly.compute(vectors1, vectors2), 0.0001);
+    assertEquals(2, titleOnly.size());
+    assertEquals(1.0f, titleOnly.getWeights()[0], 0.0001f);
+    assertThrows(
+        IllegalArgumentException.class, () -> weightedDistance.withWeights(new float[] {1.0f}));
+  }
+
   @Test
   void testInvalidConstructorArguments() {
     List<Distance<FloatVector>> distances = List.of(squaredEuclidean);
@@ -90,4 +140,20 @@ class WeightedAverageDistanceTest {
     assertThrows(
         IllegalArgumentException.class, () -> weightedDistance.compute(vectors3, vectors3));
   }
+
+  @Test
+  void testEquality() {
+    WeightedAverageDistance distance =
+        new WeightedAverageDistance(List.of(squaredEuclidean, cosine), new float[] {1.0f, 3.0f});
+    // Equal components and normalized weights make equal distances
+    WeightedAverageDistance same =
+        new WeightedAverageDistance(
+            List.of(new SquaredEuclidean(), new Cosine()), new float[] {0.25f, 0.75f});
+    assertEquals(distance, same);
+    assertEquals(distance.hashCode(), same.hashCode());
+    assertNotEquals(distance, distance.withWeights(new float[] {0.5f, 0.5f}));
+    assertNotEquals(
+        distance,
+        new WeightedAverageDistance(List.of(cosine, cosine), new float[] {0.25f, 0.75f}));
+  }
 }
@@ -0,0 +1,49 @@
+package io.github.habedi.mvhnsw.distance;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import io.github.habedi.mvhnsw.common.FloatVector;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class WeightedMeanPoolingTest {
+
+  @Test
+  void testPoolAndCompute() {
+    // Weights [3, 1] are normalized to [0.75, 0.25]
+    WeightedMeanPooling pooling =
+        new WeightedMeanPooling(new float[] {3.0f, 1.0f}, new SquaredEuclidean());
+
+    FloatVector pooled =
+        pooling.pool(List.of(FloatVector.of(4.0f, 0.0f), FloatVector.of(0.0f, 8.0f)));
+    assertArrayEquals(new float[] {3.0f, 2.0f}, pooled.toPrimitiveArray(), 0.0001f);
+
+    // (3-0)^2 + (2-0)^2 = 13
+    assertEquals(13.0, pooling.computePooled(pooled, FloatVector.of(0.0f, 0.0f)), 0.0001);
+  }
+
+  @Test
+  void testInvalidArguments() {
+    Distance<FloatVector> distance = new SquaredEuclidean();
+    assertThrows(NullPointerException.class, () -> new WeightedMeanPooling(null, distance));
+    assertThrows(
+        NullPointerException.class, () -> new WeightedMeanPooling(new float[] {1.0f}, null));
+    assertThrows(
+        IllegalArgumentException.class, () -> new WeightedMeanPooling(new float[] {}, distance));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> new WeightedMeanPooling(new float[] {-1.0f, 2.0f}, distance));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> new WeightedMeanPooling(new float[] {0.0f}, distance));
+
+    WeightedMeanPooling pooling = new WeightedMeanPooling(new float[] {1.0f, 1.0f}, distance);
+    assertThrows(
+        IllegalArgumentException.class, () -> pooling.pool(List.of(FloatVector.of(1.0f))));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> pooling.pool(List.of(FloatVector.of(1.0f), FloatVector.of(1.0f, 2.0f))));
+  }
+}
@@ -0,0 +1,99 @@
+package io.github.habedi.mvhnsw.index;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+class CsrLayerTest {
+
+  private static final int SIZE = 500;
+
+  /** Random neighbor lists, with every third item left off the layer if {@code sparse} is set. */
+  private static int[][] randomLists(boolean sparse, long seed) {
+    Random random = new Random(seed);
+    int[][] lists = new int[SIZE][];
+    for (int i = 0; i < SIZE; i++) {
+      if (sparse && i % 3 != 0) {
+        continue;
+      }
+      lists[i] = random.ints(random.nextInt(20), 0, SIZE).distinct().toArray();
+    }
+    return lists;
+  }
+
+  private static CsrLayer build(int[][] lists, boolean compress, int chunkBits) {
+    int members = (int) Arrays.stream(lists).filter(list -> list != null).count();
+    CsrLayer.Builder builder = new CsrLayer.Builder(SIZE, members, compress, chunkBits);
+    for (int i = 0; i < SIZE; i++) {
+      if (lists[i] != null) {
+        builder.add(i, lists[i].clone(), lists[i].length);
+      }
+    }
+    return builder.build();
+  }
+
+  private static void assertLists(int[][] lists, CsrLayer layer, boolean sorted) {
+    int[] buffer = new int[layer.maxDegree()];
+    for (int i = 0; i < SIZE; i++) {
+      int degree = layer.neighbors(i, buffer);
+      int[] expected = lists[i] != null ? lists[i].clone() : new int[0];
+      if (sorted) {
+        Arrays.sort(expected);
+      }
+      assertArrayEquals(expected, Arrays.copyOf(buffer, degree), "item " + i);
+    }
+  }
+
+  @Test
+  void testListsAreKeptInOrder() {
+    int[][] lists = randomLists(false, 1);
+    assertLists(lists, build(lists, false, CsrLayer.DEFAULT_CHUNK_BITS), false);
+  }
+
+  @Test
+  void testCompressedListsAreSorted() {
+    int[][] lists = randomLists(false, 2);
+    CsrLayer compressed = build(lists, true, CsrLayer.DEFAULT_CHUNK_BITS);
+    assertLists(lists, compressed, true);
+    assertTrue(compressed.bytes() < build(lists, false, CsrLayer.DEFAULT_CHUNK_BITS).bytes());
+  }
+
+  @Test
+  void testListsAcrossManySmallChunks() {
+    // Chunks of 64 entries force most lists into a new chunk
+    for (boolean compress : new boolean[] {false, true}) {
+      int[][] lists = randomLists(false, 3);
+      assertLists(lists, build(lists, compress, 6), compress);
+    }
+  }
+
+  @Test
+  void testListLongerThanAChunk() {
+    int[][] lists = new int[SIZE][];
+    for (int i = 0; i < SIZE; i++) {
+      lists[i] = i == 7 ? IntStream.range(0, 100).toArray() : new int[] {i};
+    }
+    for (boolean compress : new boolean[] {false, true}) {
+      assertLists(lists, build(lists, compress, 4), false);
+    }
+  }
+
+  @Test
+  void testUpperLayerKeepsOnlyItsMembers() {
+    int[][] lists = randomLists(true, 4);
+    for (boolean compress : new boolean[] {false, true}) {
+      CsrLayer sparse = build(lists, compress, CsrLayer.DEFAULT_CHUNK_BITS);
+      assertLists(lists, sparse, compress);
+    }
+  }
+
+  @Test
+  void testWrongNumberOfListsIsRejected() {
+    CsrLayer.Builder builder = new CsrLayer.Builder(SIZE, 2, false);
+    builder.add(0, new int[] {1}, 1);
+    assertThrows(IllegalStateException.class, builder::build);
+  }
+}
@@ -0,0 +1,202 @@
+package io.github.habedi.mvhnsw.index;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import io.github.habedi.mvhnsw.common.FloatVector;
+import io.github.habedi.mvhnsw.distance.Cosine;
+import io.github.habedi.mvhnsw.distance.SquaredEuclidean;
+import io.github.habedi.mvhnsw.distance.WeightedAverageDistance;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class DiskVamanaIndexTest {
+
+  private final WeightedAverageDistance distance =
+      new WeightedAverageDistance(
+          List.of(new SquaredEuclidean(), new SquaredEuclidean()), new float[] {0.5f, 0.5f});
+  private final Random random = new Random(11);
+
+  private List<FloatVector> randomItem() {
+    return List.of(
+        FloatVector.of(random.nextFloat() * 10, random.nextFloat() * 10, random.nextFloat()),
+        FloatVector.of(random.nextFloat(), random.nextFloat()));
+  }
+
+  private Map<Long, List<FloatVector>> randomItems(int count) {
+    Map<Long, List<FloatVector>> items = new HashMap<>();
+    for (long i = 0; i < count; i++) {
+      items.put(i, randomItem());
+    }
+    return items;
+  }
+
+  private DiskVamanaIndex build(Map<Long, List<FloatVector>> items, Path path) throws IOException {
+    return DiskVamanaIndex.builder()
+        .withDistance(distance)
+        .withMaxDegree(16)
+        .withBuildListSize(40)
+        .build(items, path);
+  }
+
+  @Test
+  void testSearchHasHighRecall(@TempDir File tempDir) throws IOException {
+    Map<Long, List<FloatVector>> items = randomItems(2000);
+    FlatIndex exact = FlatIndex.builder().withDistance(distance).build();
+    exact.addAll(items);
+
+    try (DiskVamanaIndex index = build(items, new File(tempDir, "vamana.idx").toPath())) {
+      assertEquals(2000, index.size());
+      index.setBeamWidth(4);
+      int hits = 0;
+      for (int q = 0; q < 50; q++) {
+        List<FloatVector> query = randomItem();
+        List<Long> truth = exact.search(query, 10).stream().map(SearchResult::id).toList();
+        List<SearchResult> results = index.search(query, 10, 50);
+        assertEquals(10, results.size());
+        // Results are re-ranked with the full vectors, so the scores are exact
+        for (SearchResult result : results) {
+          assertEquals(distance.compute(query, items.get(result.id())), result.score(), 1e-9);
+        }
+        hits += results.stream().filter(r -> truth.contains(r.id())).count();
+      }
+      assertTrue(hits / 500.0 > 0.9, "Recall was " + hits / 500.0);
+    }
+  }
+
+  @Test
+  void testRemovalIsPersistedAndVacuumed(@TempDir File tempDir) throws IOException {
+    Map<Long, List<FloatVector>> items = randomItems(300);
+    Path path = new File(tempDir, "vamana.idx").toPath();
+    List<FloatVector> item = items.get(7L);
+    try (DiskVamanaIndex index = build(items, path)) {
+      assertEquals(item, index.get(7L).orElseThrow());
+      assertEquals(7L, index.search(item, 1, 10).get(0).id());
+      assertTrue(index.remove(7L));
+      assertFalse(index.remove(7L));
+      assertTrue(index.get(7L).isEmpty());
+      // Item 6 shares a byte of the removal bitmap with item 7
+      assertTrue(index.remove(6L));
+      assertEquals(298, index.size());
+    }
+
+    try (DiskVamanaIndex index = DiskVamanaIndex.open(path)) {
+      assertEquals(298, index.size());
+      assertFalse(index.keySet().contains(7L));
+      assertFalse(index.keySet().contains(6L));
+      assertTrue(index.search(item, 10, 20).stream().noneMatch(r -> r.id() == 7L));
+
+      index.vacuum();
+      assertEquals(298, index.size());
+      assertArrayEquals(new String[] {"vamana.idx"}, tempDir.list());
+      assertEquals(items.get(8L), index.get(8L).orElseThrow());
+      assertEquals(8L, index.search(items.get(8L), 1, 10).get(0).id());
+
+      File copy = new File(tempDir, "copy.idx");
+      index.save(copy.toPath());
+      try (DiskVamanaIndex loaded = DiskVamanaIndex.open(copy.toPath())) {
+        assertEquals(index.search(item, 5, 20), loaded.search(item, 5, 20));
+      }
+    }
+  }
+
+  /** A distance that is not one of the built-in classes, so searches decode the codes. */
+  private static final class OtherEuclidean extends SquaredEuclidean {}
+
+  @Test
+  void testCodesSmallerThanTheVectors(@TempDir File tempDir) throws IOException {
+    Map<Long, List<FloatVector>> items = new HashMap<>();
+    while (items.size() < 1000) {
+      float[] first = new float[16];
+      float[] second = new float[16];
+      for (int d = 0; d < 16; d++) {
+        first[d] = random.nextFloat();
+        second[d] = random.nextFloat();
+      }
+      // IDs are spread over the whole range, since items are found by binary search
+      items.put(random.nextLong(), List.of(new FloatVector(first), new FloatVector(second)));
+    }
+    long[] ids = items.keySet().stream().mapToLong(Long::longValue).toArray();
+
+    for (WeightedAverageDistance weighted :
+        List.of(
+            new WeightedAverageDistance(
+                List.of(new Cosine(), new SquaredEuclidean()), new float[] {0.5f, 0.5f}),
+            new WeightedAverageDistance(
+                List.of(new OtherEuclidean(), new SquaredEuclidean()), new float[] {0.5f, 0.5f}))) {
+      FlatIndex exact = FlatIndex.builder().withDistance(weighted).build();
+      exact.addAll(items);
+      Path path = new File(tempDir, "codes.idx").toPath();
+      try (DiskVamanaIndex index =
+          DiskVamanaIndex.builder()
+              .withDistance(weighted)
+              .withMaxDegree(16)
+              .withBuildListSize(40)
+              .withCodeSize(8)
+              .build(items, path)) {
+        assertEquals(items.get(ids[3]), index.get(ids[3]).orElseThrow());
+        assertTrue(index.get(ids[3] + 1).isEmpty() || items.containsKey(ids[3] + 1));
+        int hits = 0;
+        for (int q = 0; q < 20; q++) {
+          List<FloatVector> query = items.get(ids[q]);
+          List<Long> truth = exact.search(query, 10).stream().map(SearchResult::id).toList();
+          List<SearchResult> results = index.search(query, 10, 50);
+          assertEquals(ids[q], results.get(0).id());
+          hits += results.stream().filter(r -> truth.contains(r.id())).count();
+        }
+        assertTrue(hits / 200.0 > 0.8, "Recall was " + hits / 200.0);
+
+        assertTrue(index.remove(ids[5]));
+        assertTrue(index.get(ids[5]).isEmpty());
+      }
+    }
+  }
+
+  @Test
+  void testLargeRecordsSpanSectors(@TempDir File tempDir) throws IOException {
+    Map<Long, List<FloatVector>> items = new HashMap<>();
+    for (long i = 0; i < 20; i++) {
+      float[] data = new float[1500];
+      data[0] = i;
+      items.put(i, List.of(new FloatVector(data)));
+    }
+    WeightedAverageDistance single =
+        new WeightedAverageDistance(List.of(new SquaredEuclidean()), new float[] {1.0f});
+    try (DiskVamanaIndex index =
+        DiskVamanaIndex.builder()
+            .withDistance(single)
+            .build(items, new File(tempDir, "wide.idx").toPath())) {
+      assertEquals(items.get(13L), index.get(13L).orElseThrow());
+      assertEquals(13L, index.search(items.get(13L), 1, 5).get(0).id());
+    }
+  }
+
+  @Test
+  void testValidation(@TempDir File tempDir) throws IOException {
+    Path path = new File(tempDir, "vamana.idx").toPath();
+    assertThrows(
+        NullPointerException.class, () -> DiskVamanaIndex.builder().build(Map.of(), path));
+    assertThrows(IllegalArgumentException.class, () -> DiskVamanaIndex.builder().withAlpha(0.5f));
+    assertThrows(
+        IllegalArgumentException.class, () -> DiskVamanaIndex.builder().withCodeSize(0));
+    assertThrows(
+        IllegalArgumentException.class,
+        () ->
+            build(
+                Map.of(1L, List.of(FloatVector.of(1, 2)), 2L, List.of(FloatVector.of(1, 2, 3))),
+                path));
+
+    try (DiskVamanaIndex index = build(randomItems(10), path)) {
+      assertThrows(UnsupportedOperationException.class, () -> index.add(99L, randomItem()));
+      assertThrows(UnsupportedOperationException.class, index::clear);
+      assertThrows(IllegalArgumentException.class, () -> index.search(randomItem(), 5, 4));
+      assertThrows(IllegalArgumentException.class, () -> index.setBeamWidth(0));
+    }
+  }
+}
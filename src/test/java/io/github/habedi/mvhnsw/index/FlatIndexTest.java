@@ -0,0 +1,124 @@
+package io.github.habedi.mvhnsw.index;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import io.github.habedi.mvhnsw.common.FloatVector;
+import io.github.habedi.mvhnsw.distance.SquaredEuclidean;
+import io.github.habedi.mvhnsw.distance.WeightedAverageDistance;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class FlatIndexTest {
+
+  private final WeightedAverageDistance distance =
+      new WeightedAverageDistance(List.of(new SquaredEuclidean()), new float[] {1.0f});
+  private FlatIndex index;
+
+  @BeforeEach
+  void setUp() {
+    index = FlatIndex.builder().withDistance(distance).build();
+    for (long i = 0; i < 100; i++) {
+      index.add(i, List.of(FloatVector.of(i, 0.0f)));
+    }
+  }
+
+  @Test
+  void testAddGetAndRemove() {
+    assertEquals(100, index.size());
+    assertTrue(index.get(5L).isPresent());
+    assertThrows(IllegalArgumentException.class, () -> index.add(5L, index.get(5L).get()));
+
+    // Removing moves the last item into the freed slot
+    assertTrue(index.remove(5L));
+    assertFalse(index.remove(5L));
+    assertTrue(index.get(5L).isEmpty());
+    assertEquals(List.of(FloatVector.of(99.0f, 0.0f)), index.get(99L).get());
+    assertEquals(99, index.size());
+    assertFalse(index.keySet().contains(5L));
+
+    index.add(5L, List.of(FloatVector.of(5.0f, 0.0f)));
+    assertEquals(100, index.size());
+  }
+
+  @Test
+  void testSearchIsExact() {
+    List<SearchResult> results = index.search(List.of(FloatVector.of(42.2f, 0.0f)), 3, 3);
+    assertEquals(List.of(42L, 43L, 41L), results.stream().map(SearchResult::id).toList());
+    assertEquals(0.04, results.get(0).score(), 0.0001);
+
+    index.remove(42L);
+    assertEquals(43L, index.search(List.of(FloatVector.of(42.2f, 0.0f)), 1).get(0).id());
+    assertEquals(99, index.search(List.of(FloatVector.of(0.0f, 0.0f)), 500).size());
+    assertThrows(
+        IllegalArgumentException.class, () -> index.search(List.of(FloatVector.of(0, 0)), 0));
+  }
+
+  @Test
+  void testParallelAndBatchSearch() {
+    var executor = Executors.newFixedThreadPool(3);
+    try {
+      FlatIndex large = FlatIndex.builder().withDistance(distance).withExecutor(executor).build();
+      Random random = new Random(7);
+      List<List<FloatVector>> items = new ArrayList<>();
+      for (long i = 0; i < 10_000; i++) {
+        List<FloatVector> item = List.of(FloatVector.of(random.nextFloat(), random.nextFloat()));
+        items.add(item);
+        large.add(i, item);
+      }
+      List<List<FloatVector>> queries = new ArrayList<>();
+      for (int q = 0; q < 10; q++) {
+        queries.add(List.of(FloatVector.of(random.nextFloat(), random.nextFloat())));
+      }
+
+      List<List<SearchResult>> batch = large.searchBatch(queries, 10);
+      assertEquals(queries.size(), batch.size());
+      for (int q = 0; q < queries.size(); q++) {
+        List<FloatVector> query = queries.get(q);
+        List<Long> expected = new ArrayList<>();
+        for (long i = 0; i < items.size(); i++) {
+          expected.add(i);
+        }
+        expected.sort(
+            Comparator.comparingDouble(i -> distance.compute(query, items.get(i.intValue()))));
+        List<Long> exact = expected.subList(0, 10);
+        assertEquals(exact, batch.get(q).stream().map(SearchResult::id).toList());
+        assertEquals(batch.get(q), large.search(query, 10));
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  void testSaveLoadClearAndVacuum(@TempDir File tempDir)
+      throws IOException, ClassNotFoundException {
+    index.remove(10L);
+    index.vacuum();
+    File indexFile = new File(tempDir, "flat.idx");
+    index.save(indexFile.toPath());
+
+    FlatIndex loaded = FlatIndex.load(indexFile.toPath());
+    assertEquals(99, loaded.size());
+    assertEquals(
+        index.search(List.of(FloatVector.of(10.0f, 0.0f)), 5),
+        loaded.search(List.of(FloatVector.of(10.0f, 0.0f)), 5));
+
+    loaded.clear();
+    assertEquals(0, loaded.size());
+    assertTrue(loaded.search(List.of(FloatVector.of(10.0f, 0.0f)), 5).isEmpty());
+  }
+
+  @Test
+  void testBuilderValidation() {
+    assertThrows(NullPointerException.class, () -> FlatIndex.builder().build());
+    assertThrows(NullPointerException.class, () -> FlatIndex.builder().withExecutor(null));
+  }
+}
@@ -0,0 +1,181 @@
+package io.github.habedi.mvhnsw.index;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import io.github.habedi.mvhnsw.common.FloatVector;
+import io.github.habedi.mvhnsw.distance.SquaredEuclidean;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class FrozenMultiVectorHNSWTest {
+
+  private final Random random = new Random(13);
+  private MultiVectorHNSW index;
+
+  @BeforeEach
+  void setUp() {
+    index =
+        MultiVectorHNSW.builder()
+            .withM(8)
+            .withEfConstruction(64)
+            .withWeightedAverageDistance()
+            .addDistance(new SquaredEuclidean(), 0.5f)
+            .addDistance(new SquaredEuclidean(), 0.5f)
+            .withMeanPooledRouting(new SquaredEuclidean())
+            .and()
+            .build();
+    for (long i = 0; i < 1000; i++) {
+      index.add(i, randomItem());
+    }
+  }
+
+  private List<FloatVector> randomItem() {
+    return List.of(
+        FloatVector.of(random.nextFloat(), random.nextFloat()),
+        FloatVector.of(random.nextFloat(), random.nextFloat()));
+  }
+
+  @Test
+  void testSearchMatchesSourceIndex() {
+    FrozenMultiVectorHNSW frozen = index.freeze();
+    assertEquals(index.size(), frozen.size());
+    assertEquals(index.keySet(), frozen.keySet());
+    assertEquals(index.get(123L), frozen.get(123L));
+    assertTrue(frozen.get(5000L).isEmpty());
+
+    // The traversal is the same, so the results are too
+    for (int q = 0; q < 20; q++) {
+      List<FloatVector> query = randomItem();
+      assertEquals(index.search(query, 10, 40), frozen.search(query, 10, 40));
+    }
+    // A wide search visits most of the index, well past the initial size of the visited set
+    for (int q = 0; q < 5; q++) {
+      List<FloatVector> query = randomItem();
+      assertEquals(index.search(query, 10, 800), frozen.search(query, 10, 800));
+      assertEquals(index.search(query, 10, 40), frozen.search(query, 10, 40));
+    }
+  }
+
+  @Test
+  void testRemovedItemsAreDropped() {
+    for (long i = 0; i < 1000; i += 10) {
+      index.remove(i);
+    }
+    FrozenMultiVectorHNSW frozen = index.freeze();
+    assertEquals(900, frozen.size());
+    assertTrue(frozen.get(10L).isEmpty());
+
+    // Changes to the source index do not affect the frozen copy
+    index.add(5000L, randomItem());
+    assertEquals(900, frozen.size());
+
+    FlatIndex exact = FlatIndex.builder().withDistance(index.getDistance()).build();
+    for (long id : frozen.keySet()) {
+      exact.add(id, frozen.get(id).orElseThrow());
+    }
+    int hits = 0;
+    for (int q = 0; q < 20; q++) {
+      List<FloatVector> query = randomItem();
+      List<Long> truth = exact.search(query, 10).stream().map(SearchResult::id).toList();
+      List<SearchResult> results = frozen.search(query, 10, 50);
+      assertTrue(results.stream().noneMatch(r -> r.id() % 10 == 0 && r.id() < 1000));
+      hits += results.stream().filter(r -> truth.contains(r.id())).count();
+    }
+    assertTrue(hits / 200.0 > 0.9, "Recall was " + hits / 200.0);
+  }
+
+  @Test
+  void testReorderingKeepsResults() {
+    index.remove(0L);
+    FrozenMultiVectorHNSW reordered = index.freeze(true);
+    FrozenMultiVectorHNSW byId = index.freeze(false);
+    assertEquals(byId.keySet(), reordered.keySet());
+    // Only reordering copies the vectors
+    assertSame(index.get(1L).orElseThrow(), byId.get(1L).orElseThrow());
+    assertNotSame(index.get(1L).orElseThrow(), reordered.get(1L).orElseThrow());
+    for (long id = 0; id < 1000; id += 7) {
+      assertEquals(byId.get(id), reordered.get(id));
+    }
+    for (int q = 0; q < 20; q++) {
+      List<FloatVector> query = randomItem();
+      assertEquals(byId.search(query, 10, 40), reordered.search(query, 10, 40));
+    }
+  }
+
+  @Test
+  void testCompressedAdjacency(@TempDir File tempDir) throws IOException, ClassNotFoundException {
+    FrozenMultiVectorHNSW plain = index.freeze(true, false);
+    FrozenMultiVectorHNSW compressed = index.freeze(true, true);
+    assertTrue(compressed.adjacencyBytes() < plain.adjacencyBytes() * 3 / 4);
+    assertEquals(plain.keySet(), compressed.keySet());
+
+    // The same neighbors are visited in a different order, so the results agree closely
+    int hits = 0;
+    for (int q = 0; q < 20; q++) {
+      List<FloatVector> query = randomItem();
+      List<Long> expected = plain.search(query, 10, 50).stream().map(SearchResult::id).toList();
+      List<SearchResult> results = compressed.search(query, 10, 50);
+      hits += results.stream().filter(r -> expected.contains(r.id())).count();
+    }
+    assertTrue(hits / 200.0 > 0.95, "Overlap was " + hits / 200.0);
+
+    File indexFile = new File(tempDir, "compressed.idx");
+    compressed.save(indexFile.toPath());
+    FrozenMultiVectorHNSW loaded = FrozenMultiVectorHNSW.load(indexFile.toPath());
+    List<FloatVector> query = randomItem();
+    assertEquals(compressed.search(query, 5, 20), loaded.search(query, 5, 20));
+    assertEquals(compressed.adjacencyBytes(), loaded.adjacencyBytes());
+  }
+
+  @Test
+  void testConcurrentSearches() throws InterruptedException {
+    FrozenMultiVectorHNSW frozen = index.freeze();
+    List<FloatVector> query = randomItem();
+    List<SearchResult> expected = frozen.search(query, 10, 40);
+    List<Thread> threads = new ArrayList<>();
+    List<Throwable> failures = new ArrayList<>();
+    for (int t = 0; t < 4; t++) {
+      Thread thread =
+          new Thread(
+              () -> {
+                for (int i = 0; i < 200; i++) {
+                  if (!expected.equals(frozen.search(query, 10, 40))) {
+                    synchronized (failures) {
+                      failures.add(new AssertionError("Results differ"));
+                    }
+                  }
+                }
+              });
+      threads.add(thread);
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertTrue(failures.isEmpty());
+  }
+
+  @Test
+  void testSaveLoadAndReadOnly(@TempDir File tempDir) throws IOException, ClassNotFoundException {
+    FrozenMultiVectorHNSW frozen = index.freeze();
+    File indexFile = new File(tempDir, "frozen.idx");
+    frozen.save(indexFile.toPath());
+    FrozenMultiVectorHNSW loaded = FrozenMultiVectorHNSW.load(indexFile.toPath());
+    List<FloatVector> query = randomItem();
+    assertEquals(frozen.search(query, 5, 20), loaded.search(query, 5, 20));
+
+    assertThrows(UnsupportedOperationException.class, () -> loaded.add(1L, query));
+    assertThrows(UnsupportedOperationException.class, () -> loaded.remove(1L));
+    assertThrows(UnsupportedOperationException.class, loaded::clear);
+    assertThrows(IllegalArgumentException.class, () -> loaded.search(query, 5, 4));
+
+    index.clear();
+    assertTrue(index.freeze().search(query, 5, 20).isEmpty());
+  }
+}
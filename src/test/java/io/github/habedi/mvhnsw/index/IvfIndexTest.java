@@ -0,0 +1,124 @@
+package io.github.habedi.mvhnsw.index;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import io.github.habedi.mvhnsw.common.FloatVector;
+import io.github.habedi.mvhnsw.distance.SquaredEuclidean;
+import io.github.habedi.mvhnsw.distance.WeightedAverageDistance;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class IvfIndexTest {
+
+  private final WeightedAverageDistance distance =
+      new WeightedAverageDistance(
+          List.of(new SquaredEuclidean(), new SquaredEuclidean()), new float[] {0.5f, 0.5f});
+  private final Random random = new Random(3);
+  private IvfIndex index;
+  private FlatIndex exact;
+
+  @BeforeEach
+  void setUp() {
+    index =
+        IvfIndex.builder()
+            .withDistance(distance)
+            .withNumLists(16)
+            .withNProbe(4)
+            .withTrainingSampleSize(500)
+            .build();
+    exact = FlatIndex.builder().withDistance(distance).build();
+  }
+
+  private List<FloatVector> randomItem() {
+    return List.of(
+        FloatVector.of(random.nextFloat() * 10, random.nextFloat() * 10),
+        FloatVector.of(random.nextFloat(), random.nextFloat()));
+  }
+
+  private void addItems(int count) {
+    for (long i = 0; i < count; i++) {
+      List<FloatVector> item = randomItem();
+      index.add(i, item);
+      exact.add(i, item);
+    }
+  }
+
+  @Test
+  void testSearchBeforeTrainingIsExact() {
+    addItems(100);
+    assertFalse(index.isTrained());
+    List<FloatVector> query = randomItem();
+    assertEquals(exact.search(query, 10), index.search(query, 10, 10));
+  }
+
+  @Test
+  void testTrainsAutomaticallyAndKeepsRecall() {
+    addItems(2000);
+    assertTrue(index.isTrained());
+    assertEquals(2000, index.size());
+
+    int hits = 0;
+    for (int q = 0; q < 50; q++) {
+      List<FloatVector> query = randomItem();
+      List<Long> truth = exact.search(query, 10).stream().map(SearchResult::id).toList();
+      // Probing every list is exhaustive, so it must match the exact search
+      assertEquals(
+          truth, index.searchWithNProbe(query, 10, 16).stream().map(SearchResult::id).toList());
+      hits += index.search(query, 10, 10).stream().filter(r -> truth.contains(r.id())).count();
+    }
+    assertTrue(hits / 500.0 > 0.8, "Recall with nProbe=4 was " + hits / 500.0);
+  }
+
+  @Test
+  void testRemoveAndReAdd() {
+    addItems(1000);
+    List<FloatVector> item = index.get(7L).orElseThrow();
+    assertTrue(index.remove(7L));
+    assertFalse(index.remove(7L));
+    assertTrue(index.get(7L).isEmpty());
+    assertTrue(index.searchWithNProbe(item, 1000, 16).stream().noneMatch(r -> r.id() == 7L));
+
+    index.add(7L, item);
+    List<SearchResult> results = index.searchWithNProbe(item, 1000, 16);
+    assertEquals(1000, results.size());
+    assertEquals(7L, results.get(0).id());
+    assertThrows(IllegalArgumentException.class, () -> index.add(7L, item));
+  }
+
+  @Test
+  void testExplicitTrainingAndPersistence(@TempDir File tempDir)
+      throws IOException, ClassNotFoundException {
+    List<List<FloatVector>> sample = new ArrayList<>();
+    for (int i = 0; i < 300; i++) {
+      sample.add(randomItem());
+    }
+    index.train(sample);
+    assertTrue(index.isTrained());
+    addItems(200);
+
+    File indexFile = new File(tempDir, "ivf.idx");
+    index.save(indexFile.toPath());
+    IvfIndex loaded = IvfIndex.load(indexFile.toPath());
+    List<FloatVector> query = randomItem();
+    assertEquals(index.search(query, 5, 5), loaded.search(query, 5, 5));
+
+    loaded.clear();
+    assertFalse(loaded.isTrained());
+    assertEquals(0, loaded.size());
+  }
+
+  @Test
+  void testValidation() {
+    assertThrows(NullPointerException.class, () -> IvfIndex.builder().build());
+    assertThrows(IllegalArgumentException.class, () -> IvfIndex.builder().withNumLists(0));
+    assertThrows(IllegalArgumentException.class, () -> index.train(List.of()));
+    assertThrows(IllegalArgumentException.class, () -> index.setNProbe(0));
+    assertThrows(IllegalArgumentException.class, () -> index.searchWithNProbe(randomItem(), 0, 1));
+  }
+}
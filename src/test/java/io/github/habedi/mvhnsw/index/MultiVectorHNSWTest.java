@@ -3,17 +3,34 @@ package io.github.habedi.mvhnsw.index;
 import static org.junit.jupiter.api.Assertions.*;
 
 import io.github.habedi.mvhnsw.common.FloatVector;
+import io.github.habedi.mvhnsw.distance.DotProduct;
 import io.github.habedi.mvhnsw.distance.SquaredEuclidean;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
@@ -162,6 +179,827 @@ class MultiVectorHNSWTest {
     assertEquals(vectors2, loadedIndex.get(2L).get());
   }
 
+  @Test
+  void testSearchWithPooledRouting(@TempDir File tempDir)
+      throws IOException, ClassNotFoundException {
+    Index routedIndex =
+        MultiVectorHNSW.builder()
+            .withM(4)
+            .withEfConstruction(50)
+            .withWeightedAverageDistance()
+            .addDistance(new SquaredEuclidean(), 0.5f)
+            .addDistance(new SquaredEuclidean(), 0.5f)
+            .withMeanPooledRouting(new SquaredEuclidean())
+            .and()
+            .build();
+    for (int i = 0; i < 200; i++) {
+      routedIndex.add(i, List.of(FloatVector.of(i, i), FloatVector.of(i, -i)));
+    }
+
+    List<FloatVector> query = List.of(FloatVector.of(42.0f, 42.0f), FloatVector.of(42.0f, -42.0f));
+    List<SearchResult> results = routedIndex.search(query, 3, 20);
+    assertEquals(3, results.size());
+    assertEquals(42L, results.get(0).id());
+    assertEquals(0.0, results.get(0).score(), 0.0001); // Final scores use the full distance
+
+    File indexPath = new File(tempDir, "routed.index");
+    routedIndex.save(indexPath.toPath());
+    Index loadedIndex = MultiVectorHNSW.load(indexPath.toPath());
+    assertEquals(42L, loadedIndex.search(query, 1, 20).get(0).id());
+  }
+
+  @Test
+  void testSearchWithPerQueryWeights() {
+    MultiVectorHNSW weightedIndex =
+        MultiVectorHNSW.builder()
+            .withWeightedAverageDistance()
+            .addDistance(new SquaredEuclidean(), 0.5f)
+            .addDistance(new SquaredEuclidean(), 0.5f)
+            .and()
+            .build();
+    // Item 1 matches the query on the first vector, item 2 on the second
+    weightedIndex.add(1L, List.of(FloatVector.of(0.0f, 0.0f), FloatVector.of(9.0f, 9.0f)));
+    weightedIndex.add(2L, List.of(FloatVector.of(9.0f, 9.0f), FloatVector.of(0.0f, 0.0f)));
+    List<FloatVector> query = List.of(FloatVector.of(0.0f, 0.0f), FloatVector.of(0.0f, 0.0f));
+
+    List<SearchResult> firstHeavy = weightedIndex.search(query, 1, 10, new float[] {1.0f, 0.0f});
+    assertEquals(1L, firstHeavy.get(0).id());
+    assertEquals(0.0, firstHeavy.get(0).score(), 0.0001);
+
+    List<SearchResult> secondHeavy = weightedIndex.search(query, 1, 10, new float[] {0.1f, 0.9f});
+    assertEquals(2L, secondHeavy.get(0).id());
+
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> weightedIndex.search(query, 1, 10, new float[] {1.0f}));
+    MultiVectorHNSW customIndex = MultiVectorHNSW.builder().withDistance((v1, v2) -> 0.0).build();
+    assertThrows(
+        UnsupportedOperationException.class,
+        () -> customIndex.search(query, 1, 10, new float[] {1.0f, 1.0f}));
+  }
+
+  @Test
+  void testFilteredSearch() {
+    MultiVectorHNSW filteredIndex = (MultiVectorHNSW) index;
+    for (long i = 0; i < 200; i++) {
+      filteredIndex.add(i, List.of(FloatVector.of(i, i)));
+    }
+    List<FloatVector> query = List.of(FloatVector.of(100.0f, 100.0f));
+
+    // A predicate that admits only odd IDs
+    List<SearchResult> odd = filteredIndex.search(query, 5, 20, SearchFilter.of(id -> id % 2 == 1));
+    assertEquals(5, odd.size());
+    assertTrue(odd.stream().allMatch(r -> r.id() % 2 == 1));
+    assertTrue(List.of(99L, 101L).contains(odd.get(0).id()));
+
+    // A selective allow-list is answered exactly
+    BitSet allowed = new BitSet();
+    allowed.set(3);
+    allowed.set(150);
+    allowed.set(199);
+    List<SearchResult> few = filteredIndex.search(query, 5, 20, SearchFilter.of(allowed));
+    assertEquals(List.of(150L, 3L, 199L), few.stream().map(SearchResult::id).toList());
+
+    // Deleted items never match
+    filteredIndex.remove(150L);
+    few = filteredIndex.search(query, 5, 20, SearchFilter.of(allowed));
+    assertEquals(List.of(3L, 199L), few.stream().map(SearchResult::id).toList());
+
+    // A predicate that matches nothing near the query still returns k results
+    List<SearchResult> far = filteredIndex.search(query, 3, 3, SearchFilter.of(id -> id < 3));
+    assertEquals(List.of(2L, 1L, 0L), far.stream().map(SearchResult::id).toList());
+
+    assertThrows(
+        NullPointerException.class, () -> filteredIndex.search(query, 1, 10, (SearchFilter) null));
+  }
+
+  @Test
+  void testSelectiveFilterDoesNotWalkTheGraph() {
+    AtomicInteger computed = new AtomicInteger();
+    SquaredEuclidean euclidean = new SquaredEuclidean();
+    MultiVectorHNSW countingIndex =
+        MultiVectorHNSW.builder()
+            .withM(8)
+            .withEfConstruction(64)
+            .withDistance(
+                (v1, v2) -> {
+                  computed.incrementAndGet();
+                  return euclidean.compute(v1.get(0), v2.get(0));
+                })
+            .build();
+    Random random = new Random(31);
+    Map<Long, List<FloatVector>> items = new HashMap<>();
+    for (long i = 0; i < 2000; i++) {
+      items.put(i, List.of(FloatVector.of(random.nextFloat(), random.nextFloat())));
+      countingIndex.add(i, items.get(i));
+    }
+
+    for (int modulus : new int[] {100, 5}) {
+      SearchFilter filter = SearchFilter.of(id -> id % modulus == 0);
+      int hits = 0;
+      for (int q = 0; q < 10; q++) {
+        List<FloatVector> query = List.of(FloatVector.of(random.nextFloat(), random.nextFloat()));
+        List<Long> truth =
+            items.keySet().stream()
+                .filter(id -> id % modulus == 0)
+                .sorted(
+                    Comparator.comparingDouble(
+                        id -> euclidean.compute(query.get(0), items.get(id).get(0))))
+                .limit(5)
+                .toList();
+        computed.set(0);
+        List<SearchResult> results = countingIndex.search(query, 5, 20, filter);
+        // Neither a walk over the whole graph nor one followed by a scan
+        assertTrue(computed.get() < 1000, "Distances computed: " + computed.get());
+        assertTrue(results.stream().allMatch(r -> r.id() % modulus == 0));
+        hits += results.stream().filter(r -> truth.contains(r.id())).count();
+      }
+      assertTrue(hits >= 45, "Hits for 1/" + modulus + ": " + hits);
+    }
+  }
+
+  @Test
+  void testFilterWithFewerMatchesThanKDoesNotScan() {
+    MultiVectorHNSW filteredIndex = (MultiVectorHNSW) index;
+    for (long i = 0; i < 100; i++) {
+      filteredIndex.add(i, List.of(FloatVector.of(i, i)));
+    }
+    List<FloatVector> query = List.of(FloatVector.of(5.0f, 5.0f));
+    AtomicInteger checked = new AtomicInteger();
+    SearchFilter filter =
+        SearchFilter.of(
+            id -> {
+              checked.incrementAndGet();
+              return id < 10;
+            });
+
+    // A tenth of the items match, which is too many for a scan to pay off after the traversal
+    List<SearchResult> results = filteredIndex.search(query, 20, 20, filter);
+    assertTrue(checked.get() <= 100, "Filter checks: " + checked.get());
+    assertEquals(10, results.size());
+    assertEquals(5L, results.get(0).id());
+  }
+
+  @Test
+  void testSearchRange() {
+    MultiVectorHNSW rangeIndex = (MultiVectorHNSW) index;
+    for (long i = 0; i < 500; i++) {
+      rangeIndex.add(i, List.of(FloatVector.of(i, 0.0f)));
+    }
+    List<FloatVector> query = List.of(FloatVector.of(250.0f, 0.0f));
+
+    // Squared Euclidean, so a radius of 400 covers items 230 to 270
+    List<SearchResult> results = rangeIndex.searchRange(query, 400.0, 4);
+    assertEquals(41, results.size());
+    assertEquals(250L, results.get(0).id());
+    assertTrue(results.stream().allMatch(r -> r.score() <= 400.0));
+    for (int i = 1; i < results.size(); i++) {
+      assertTrue(results.get(i - 1).score() <= results.get(i).score());
+    }
+
+    rangeIndex.remove(250L);
+    assertEquals(40, rangeIndex.searchRange(query, 400.0, 4).size());
+    List<SearchResult> adjacent = rangeIndex.searchRange(query, 1.0, 4);
+    assertEquals(
+        Set.of(249L, 251L), adjacent.stream().map(SearchResult::id).collect(Collectors.toSet()));
+    assertTrue(rangeIndex.searchRange(query, 0.5, 4).isEmpty());
+
+    assertThrows(IllegalArgumentException.class, () -> rangeIndex.searchRange(query, 1.0, 0));
+    assertThrows(
+        IllegalArgumentException.class, () -> rangeIndex.searchRange(query, Double.NaN, 4));
+  }
+
+  @Test
+  void testSearchRangeCrossesGaps() {
+    MultiVectorHNSW rangeIndex = (MultiVectorHNSW) index;
+    // Two vertical lines of items within the radius, joined only by a bridge outside of it
+    List<float[]> points = new ArrayList<>();
+    for (int i = -10; i < 24; i++) {
+      points.add(new float[] {0.6f, i * 0.05f});
+      points.add(new float[] {-0.6f, i * 0.05f});
+    }
+    for (int i = -11; i <= 11; i++) {
+      points.add(new float[] {i * 0.05f, 1.2f});
+    }
+    Collections.shuffle(points, new Random(8));
+    Set<Long> expected = new HashSet<>();
+    for (int i = 0; i < points.size(); i++) {
+      float[] point = points.get(i);
+      rangeIndex.add(i, List.of(FloatVector.of(point)));
+      if (point[0] * point[0] + point[1] * point[1] <= 0.98f) {
+        expected.add((long) i);
+      }
+    }
+    assertEquals(52, expected.size());
+
+    // The beam is larger than the bridge but smaller than the in-range set, so reaching the
+    // second line requires the beam to hold only nodes outside the radius
+    List<FloatVector> query = List.of(FloatVector.of(0.0f, 0.0f));
+    Set<Long> found =
+        rangeIndex.searchRange(query, 0.98, 30).stream()
+            .map(SearchResult::id)
+            .collect(Collectors.toSet());
+    assertEquals(expected, found);
+  }
+
+  @Test
+  void testSearchCursor() {
+    MultiVectorHNSW cursorIndex = (MultiVectorHNSW) index;
+    for (long i = 0; i < 300; i++) {
+      cursorIndex.add(i, List.of(FloatVector.of(i, 0.0f)));
+    }
+    List<FloatVector> query = List.of(FloatVector.of(100.2f, 0.0f));
+
+    // Pages continue where the previous one stopped, in order and without repeats
+    MultiVectorHNSW.Cursor cursor = cursorIndex.searchCursor(query, 10);
+    List<Long> ids = new ArrayList<>();
+    for (int page = 0; page < 3; page++) {
+      List<SearchResult> batch = cursor.next(10);
+      assertEquals(10, batch.size());
+      batch.forEach(r -> ids.add(r.id()));
+    }
+    List<Long> expected = new ArrayList<>();
+    expected.add(100L);
+    for (long d = 1; d <= 15; d++) {
+      expected.add(100L + d);
+      expected.add(100L - d);
+    }
+    assertEquals(expected.subList(0, 30), ids);
+
+    // A filtered cursor keeps exploring until it finds matches
+    MultiVectorHNSW.Cursor small =
+        cursorIndex.searchCursor(query, 5, SearchFilter.of(id -> id < 5));
+    assertEquals(List.of(4L, 3L), small.next(2).stream().map(SearchResult::id).toList());
+    assertEquals(List.of(2L, 1L, 0L), small.next(10).stream().map(SearchResult::id).toList());
+    assertTrue(small.next(10).isEmpty());
+    assertFalse(small.hasMore());
+
+    assertThrows(IllegalArgumentException.class, () -> cursorIndex.searchCursor(query, 0));
+    assertThrows(IllegalArgumentException.class, () -> cursor.next(0));
+  }
+
+  @Test
+  void testSearchById() {
+    MultiVectorHNSW byIdIndex = (MultiVectorHNSW) index;
+    for (long i = 0; i < 200; i++) {
+      byIdIndex.add(i, List.of(FloatVector.of(i, 0.0f)));
+    }
+
+    List<SearchResult> similar = byIdIndex.searchById(50L, 4, 20);
+    assertEquals(
+        Set.of(48L, 49L, 51L, 52L),
+        similar.stream().map(SearchResult::id).collect(Collectors.toSet()));
+    assertEquals(1.0, similar.get(0).score(), 0.0001);
+    assertEquals(
+        index.search(List.of(FloatVector.of(50.0f, 0.0f)), 5, 20).subList(1, 5).stream()
+            .map(SearchResult::score)
+            .toList(),
+        similar.stream().map(SearchResult::score).toList());
+
+    byIdIndex.remove(50L);
+    assertThrows(IllegalArgumentException.class, () -> byIdIndex.searchById(50L, 4, 20));
+    assertThrows(IllegalArgumentException.class, () -> byIdIndex.searchById(999L, 4, 20));
+    assertThrows(IllegalArgumentException.class, () -> byIdIndex.searchById(1L, 4, 2));
+  }
+
+  @Test
+  void testSearchBatch() {
+    var executor = Executors.newFixedThreadPool(3);
+    try {
+      MultiVectorHNSW batchIndex =
+          MultiVectorHNSW.builder()
+              .withM(10)
+              .withEfConstruction(100)
+              .withExecutor(executor)
+              .withWeightedAverageDistance()
+              .addDistance(new SquaredEuclidean(), 1.0f)
+              .and()
+              .build();
+      for (long i = 0; i < 300; i++) {
+        batchIndex.add(i, List.of(FloatVector.of(i, i % 7)));
+      }
+      List<List<FloatVector>> queries = new ArrayList<>();
+      for (int q = 0; q < 100; q++) {
+        queries.add(List.of(FloatVector.of(q * 3.1f, q % 5)));
+      }
+
+      List<List<SearchResult>> batch = batchIndex.searchBatch(queries, 5, 30);
+      assertEquals(queries.size(), batch.size());
+      for (int q = 0; q < queries.size(); q++) {
+        assertEquals(batchIndex.search(queries.get(q), 5, 30), batch.get(q));
+      }
+
+      assertTrue(batchIndex.searchBatch(List.of(), 5, 30).isEmpty());
+      assertThrows(IllegalArgumentException.class, () -> batchIndex.searchBatch(queries, 5, 4));
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  void testSearchParallel() {
+    var executor = Executors.newFixedThreadPool(3);
+    try {
+      MultiVectorHNSW parallelIndex =
+          MultiVectorHNSW.builder()
+              .withM(10)
+              .withEfConstruction(100)
+              .withExecutor(executor)
+              .withWeightedAverageDistance()
+              .addDistance(new SquaredEuclidean(), 1.0f)
+              .and()
+              .build();
+      FlatIndex exact = FlatIndex.builder().withDistance(parallelIndex.getDistance()).build();
+      Random random = new Random(36);
+      for (long i = 0; i < 1000; i++) {
+        List<FloatVector> item = List.of(FloatVector.of(random.nextFloat(), random.nextFloat()));
+        parallelIndex.add(i, item);
+        exact.add(i, item);
+      }
+      // The workers may expand candidates in a different order than a sequential search, so the
+      // results are compared with the exact neighbors rather than with the sequential results
+      int hits = 0;
+      for (int q = 0; q < 20; q++) {
+        List<FloatVector> query = List.of(FloatVector.of(random.nextFloat(), random.nextFloat()));
+        List<Long> truth = exact.search(query, 10).stream().map(SearchResult::id).toList();
+        List<SearchResult> parallel = parallelIndex.searchParallel(query, 10, 200, 4);
+        assertEquals(10, parallel.size());
+        hits += parallel.stream().filter(r -> truth.contains(r.id())).count();
+        assertEquals(
+            parallelIndex.search(query, 10, 200), parallelIndex.searchParallel(query, 10, 200, 1));
+      }
+      assertTrue(hits / 200.0 > 0.95, "Recall was " + hits / 200.0);
+
+      assertThrows(
+          IllegalArgumentException.class,
+          () -> parallelIndex.searchParallel(List.of(FloatVector.of(0, 0)), 10, 200, 0));
+      parallelIndex.clear();
+      assertTrue(parallelIndex.searchParallel(List.of(FloatVector.of(0, 0)), 1, 1, 2).isEmpty());
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  void testAsyncSearchAndAdd() throws Exception {
+    MultiVectorHNSW asyncIndex = (MultiVectorHNSW) index;
+    List<CompletableFuture<Void>> adds = new ArrayList<>();
+    for (long i = 0; i < 100; i++) {
+      adds.add(asyncIndex.addAsync(i, List.of(FloatVector.of(i, i))));
+    }
+    CompletableFuture.allOf(adds.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+    assertEquals(100, asyncIndex.size());
+
+    List<FloatVector> query = List.of(FloatVector.of(42.0f, 42.0f));
+    assertEquals(
+        asyncIndex.search(query, 5, 20),
+        asyncIndex.searchAsync(query, 5, 20).get(10, TimeUnit.SECONDS));
+
+    // Failures complete the future exceptionally instead of being thrown to the caller
+    CompletableFuture<Void> duplicate = asyncIndex.addAsync(1L, vectors1);
+    ExecutionException failure =
+        assertThrows(ExecutionException.class, () -> duplicate.get(10, TimeUnit.SECONDS));
+    assertInstanceOf(IllegalArgumentException.class, failure.getCause());
+  }
+
+  @Test
+  void testAsyncCancellation() {
+    List<Runnable> tasks = new ArrayList<>();
+    AtomicInteger evaluations = new AtomicInteger();
+    AtomicReference<CompletableFuture<?>> toCancel = new AtomicReference<>();
+    MultiVectorHNSW asyncIndex =
+        MultiVectorHNSW.builder()
+            .withExecutor(tasks::add)
+            .withDistance(
+                (v1, v2) -> {
+                  CompletableFuture<?> future = toCancel.get();
+                  if (future != null) {
+                    evaluations.incrementAndGet();
+                    future.cancel(false);
+                  }
+                  return new SquaredEuclidean().compute(v1.get(0), v2.get(0));
+                })
+            .build();
+    for (long i = 0; i < 200; i++) {
+      asyncIndex.add(i, List.of(FloatVector.of(i, i)));
+    }
+
+    // Cancelled before it started, so the item is never added
+    CompletableFuture<Void> add = asyncIndex.addAsync(999L, vectors1);
+    add.cancel(false);
+    tasks.forEach(Runnable::run);
+    tasks.clear();
+    assertTrue(add.isCancelled());
+    assertTrue(asyncIndex.get(999L).isEmpty());
+
+    // Cancelled after its first distance evaluation, so the traversal stops almost at once
+    CompletableFuture<List<SearchResult>> search =
+        asyncIndex.searchAsync(List.of(FloatVector.of(100.0f, 100.0f)), 10, 100);
+    toCancel.set(search);
+    tasks.forEach(Runnable::run);
+    assertTrue(search.isCancelled());
+    assertTrue(evaluations.get() < 50, "Traversal continued after cancellation");
+  }
+
+  @Test
+  void testAsyncErrorCompletesFuture() {
+    AtomicBoolean failing = new AtomicBoolean();
+    MultiVectorHNSW asyncIndex =
+        MultiVectorHNSW.builder()
+            .withExecutor(Runnable::run)
+            .withDistance(
+                (v1, v2) -> {
+                  if (failing.get()) {
+                    throw new AssertionError("Distance failed");
+                  }
+                  return 0.0;
+                })
+            .build();
+    asyncIndex.add(1L, vectors1);
+    failing.set(true);
+
+    CompletableFuture<List<SearchResult>> search = asyncIndex.searchAsync(vectors2, 1, 10);
+    assertTrue(search.isCompletedExceptionally());
+    ExecutionException e = assertThrows(ExecutionException.class, search::get);
+    assertInstanceOf(AssertionError.class, e.getCause());
+  }
+
+  @Test
+  void testVirtualThreads() {
+    if (Runtime.version().feature() >= 21) {
+      assertDoesNotThrow(() -> MultiVectorHNSW.builder().withVirtualThreads());
+    } else {
+      assertThrows(
+          UnsupportedOperationException.class,
+          () -> MultiVectorHNSW.builder().withVirtualThreads());
+    }
+  }
+
+  @Test
+  void testSearchWithOptions() {
+    MultiVectorHNSW limitedIndex = (MultiVectorHNSW) index;
+    for (long i = 0; i < 500; i++) {
+      limitedIndex.add(i, List.of(FloatVector.of(i, i)));
+    }
+    List<FloatVector> query = List.of(FloatVector.of(250.0f, 250.0f));
+
+    SearchResponse unlimited = limitedIndex.search(query, 5, 50, SearchOptions.builder().build());
+    assertFalse(unlimited.partial());
+    assertEquals(limitedIndex.search(query, 5, 50), unlimited.results());
+
+    SearchResponse fewNodes =
+        limitedIndex.search(query, 5, 50, SearchOptions.builder().withMaxVisitedNodes(2).build());
+    assertTrue(fewNodes.partial());
+    assertFalse(fewNodes.results().isEmpty());
+
+    SearchResponse fewDistances =
+        limitedIndex.search(
+            query, 5, 50, SearchOptions.builder().withMaxDistanceEvaluations(10).build());
+    assertTrue(fewDistances.partial());
+    assertTrue(fewDistances.results().size() <= 5);
+
+    assertThrows(
+        IllegalArgumentException.class, () -> SearchOptions.builder().withMaxVisitedNodes(0));
+    assertThrows(
+        IllegalArgumentException.class, () -> SearchOptions.builder().withTimeout(Duration.ZERO));
+  }
+
+  @Test
+  void testSearchWithTimeout() {
+    AtomicInteger evaluations = new AtomicInteger();
+    MultiVectorHNSW slowIndex =
+        MultiVectorHNSW.builder()
+            .withDistance(
+                (v1, v2) -> {
+                  evaluations.incrementAndGet();
+                  LockSupport.parkNanos(1_000_000);
+                  return new SquaredEuclidean().compute(v1.get(0), v2.get(0));
+                })
+            .withEfConstruction(10)
+            .build();
+    for (long i = 0; i < 100; i++) {
+      slowIndex.add(i, List.of(FloatVector.of(i, i)));
+    }
+    List<FloatVector> query = List.of(FloatVector.of(50.0f, 50.0f));
+    evaluations.set(0);
+    slowIndex.search(query, 5, 100);
+    int complete = evaluations.get();
+
+    evaluations.set(0);
+    SearchResponse response =
+        slowIndex.search(
+            query, 5, 100, SearchOptions.builder().withTimeout(Duration.ofMillis(10)).build());
+    assertTrue(response.partial());
+    // Each distance takes at least a millisecond, so about ten fit in the timeout. The deadline
+    // is checked before each candidate is expanded, so past it, at most the neighbors of one
+    // candidate and the entry point of each lower layer are evaluated
+    assertTrue(evaluations.get() <= 50, evaluations.get() + " distances were evaluated");
+    assertTrue(evaluations.get() < complete, evaluations.get() + " of " + complete);
+  }
+
+  @Test
+  void testTuneEfSearch() {
+    MultiVectorHNSW tunedIndex = (MultiVectorHNSW) index;
+    Random random = new Random(42);
+    for (long i = 0; i < 1000; i++) {
+      tunedIndex.add(i, List.of(FloatVector.of(random.nextFloat(), random.nextFloat())));
+    }
+    List<List<FloatVector>> sample = new ArrayList<>();
+    for (int q = 0; q < 20; q++) {
+      sample.add(List.of(FloatVector.of(random.nextFloat(), random.nextFloat())));
+    }
+
+    Map<Integer, Integer> tuned = tunedIndex.tuneEfSearch(sample, 1.0, 1, 10);
+    assertEquals(tuned, tunedIndex.getTunedEfSearch());
+    assertTrue(tuned.get(1) >= 1 && tuned.get(10) >= 10);
+    assertTrue(tuned.get(10) <= tunedIndex.size());
+
+    // The tuned value is used as the default, so recall on the sample is perfect
+    for (List<FloatVector> query : sample) {
+      assertEquals(
+          tunedIndex.search(query, 10, 1000).stream().map(SearchResult::id).toList(),
+          tunedIndex.search(query, 10).stream().map(SearchResult::id).toList());
+    }
+
+    assertThrows(IllegalArgumentException.class, () -> tunedIndex.tuneEfSearch(sample, 0.0, 10));
+    assertThrows(IllegalArgumentException.class, () -> tunedIndex.tuneEfSearch(sample, 0.9));
+    assertThrows(IllegalArgumentException.class, () -> tunedIndex.tuneEfSearch(List.of(), 0.9, 1));
+  }
+
+  @Test
+  void testTieredVectorStorage(@TempDir File tempDir) throws IOException, ClassNotFoundException {
+    MultiVectorHNSW tiered =
+        MultiVectorHNSW.builder()
+            .withM(10)
+            .withEfConstruction(100)
+            .withWeightedAverageDistance()
+            .addDistance(new SquaredEuclidean(), 1.0f)
+            .and()
+            .withTieredVectorStorage(new File(tempDir, "vectors.bin").toPath(), 50)
+            .build();
+    Random random = new Random(5);
+    for (long i = 0; i < 500; i++) {
+      List<FloatVector> item = List.of(FloatVector.of(random.nextFloat(), random.nextFloat()));
+      tiered.add(i, item);
+      index.add(i, item);
+    }
+    assertEquals(index.get(42L), tiered.get(42L));
+
+    List<FloatVector> query = List.of(FloatVector.of(0.5f, 0.5f));
+    assertEquals(index.search(query, 10, 50), tiered.search(query, 10, 50));
+    VectorCacheStats stats = tiered.getVectorCacheStats().orElseThrow();
+    assertTrue(stats.hits() > 0 && stats.misses() > 0);
+    assertEquals(50, stats.size());
+    assertEquals(50, stats.capacity());
+    assertTrue(((MultiVectorHNSW) index).getVectorCacheStats().isEmpty());
+
+    // A saved index refers to the vector file and starts with an empty cache
+    File indexFile = new File(tempDir, "tiered.index");
+    tiered.save(indexFile.toPath());
+    MultiVectorHNSW loaded = MultiVectorHNSW.load(indexFile.toPath());
+    assertEquals(0, loaded.getVectorCacheStats().orElseThrow().size());
+    assertEquals(tiered.search(query, 10, 50), loaded.search(query, 10, 50));
+
+    // Vacuuming rebuilds into a new file, which replaces the current one
+    tiered.remove(3L);
+    tiered.vacuum();
+    assertEquals(499, tiered.size());
+    assertTrue(tiered.get(3L).isEmpty());
+    assertEquals(index.get(4L), tiered.get(4L));
+    assertEquals(index.search(query, 10, 50).get(0), tiered.search(query, 10, 50).get(0));
+    assertEquals(Set.of("vectors.bin", "tiered.index"), Set.of(tempDir.list()));
+    tiered.save(indexFile.toPath());
+    assertEquals(index.get(4L), MultiVectorHNSW.load(indexFile.toPath()).get(4L));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> MultiVectorHNSW.builder().withTieredVectorStorage(indexFile.toPath(), 0));
+  }
+
+  @Test
+  void testFailedVacuumKeepsTheIndex(@TempDir File tempDir) {
+    AtomicBoolean failing = new AtomicBoolean();
+    MultiVectorHNSW tiered =
+        MultiVectorHNSW.builder()
+            .withDistance(
+                (v1, v2) -> {
+                  if (failing.get()) {
+                    throw new IllegalStateException("Distance failed");
+                  }
+                  return new SquaredEuclidean().compute(v1.get(0), v2.get(0));
+                })
+            .withTieredVectorStorage(new File(tempDir, "vectors.bin").toPath(), 10)
+            .build();
+    for (long i = 0; i < 50; i++) {
+      tiered.add(i, List.of(FloatVector.of(i, i)));
+    }
+    tiered.remove(7L);
+
+    failing.set(true);
+    assertThrows(IllegalStateException.class, tiered::vacuum);
+    failing.set(false);
+    assertArrayEquals(new String[] {"vectors.bin"}, tempDir.list());
+    assertEquals(49, tiered.size());
+    assertEquals(List.of(FloatVector.of(8, 8)), tiered.get(8L).orElseThrow());
+    assertEquals(8L, tiered.search(List.of(FloatVector.of(8, 8)), 1, 10).get(0).id());
+  }
+
+  @Test
+  void testMergeIndexes() {
+    Random random = new Random(21);
+    MultiVectorHNSW merged = (MultiVectorHNSW) index;
+    List<MultiVectorHNSW> parts = new ArrayList<>();
+    FlatIndex exact = FlatIndex.builder().withDistance(merged.getDistance()).build();
+    for (int p = 0; p < 3; p++) {
+      MultiVectorHNSW part =
+          MultiVectorHNSW.builder()
+              .withM(10)
+              .withEfConstruction(100)
+              .withDistance(merged.getDistance())
+              .build();
+      for (long i = p * 400L; i < (p + 1) * 400L; i++) {
+        List<FloatVector> item = List.of(FloatVector.of(random.nextFloat(), random.nextFloat()));
+        (p == 0 ? merged : part).add(i, item);
+        exact.add(i, item);
+      }
+      if (p > 0) {
+        parts.add(part);
+      }
+    }
+    parts.get(0).remove(400L);
+    exact.remove(400L);
+
+    merged.merge(parts.toArray(new MultiVectorHNSW[0]));
+    assertEquals(1199, merged.size());
+    assertEquals(exact.get(1000L), merged.get(1000L));
+    assertTrue(merged.get(400L).isEmpty());
+    assertEquals(399, parts.get(0).size());
+
+    int hits = 0;
+    for (int q = 0; q < 20; q++) {
+      List<FloatVector> query = List.of(FloatVector.of(random.nextFloat(), random.nextFloat()));
+      List<Long> truth = exact.search(query, 10).stream().map(SearchResult::id).toList();
+      hits += merged.search(query, 10, 50).stream().filter(r -> truth.contains(r.id())).count();
+    }
+    assertTrue(hits / 200.0 > 0.9, "Recall was " + hits / 200.0);
+
+    // Items merged in can be removed and added again like any other
+    assertTrue(merged.remove(1000L));
+    merged.add(1000L, exact.get(1000L).orElseThrow());
+    assertEquals(1000L, merged.search(exact.get(1000L).get(), 1, 10).get(0).id());
+
+    assertThrows(IllegalArgumentException.class, () -> merged.merge(merged));
+    assertThrows(IllegalArgumentException.class, () -> merged.merge(parts.get(1)));
+    MultiVectorHNSW otherM =
+        MultiVectorHNSW.builder().withM(5).withDistance(merged.getDistance()).build();
+    assertThrows(IllegalArgumentException.class, () -> merged.merge(otherM));
+    MultiVectorHNSW otherDistance =
+        MultiVectorHNSW.builder()
+            .withM(10)
+            .withWeightedAverageDistance()
+            .addDistance(new DotProduct(), 1.0f)
+            .and()
+            .build();
+    assertThrows(IllegalArgumentException.class, () -> merged.merge(otherDistance));
+
+    // A distance that is equal but not the same instance can be merged
+    MultiVectorHNSW equalDistance =
+        MultiVectorHNSW.builder()
+            .withM(10)
+            .withWeightedAverageDistance()
+            .addDistance(new SquaredEuclidean(), 1.0f)
+            .and()
+            .build();
+    equalDistance.add(5000L, vectors2);
+    merged.merge(equalDistance);
+    assertEquals(vectors2, merged.get(5000L).orElseThrow());
+  }
+
+  @Test
+  void testConcurrentMergesInOppositeOrders() throws Exception {
+    ExecutorService pool = Executors.newFixedThreadPool(2);
+    try {
+      for (int round = 0; round < 20; round++) {
+        MultiVectorHNSW first = (MultiVectorHNSW) index;
+        MultiVectorHNSW second =
+            MultiVectorHNSW.builder().withM(10).withDistance(first.getDistance()).build();
+        first.clear();
+        for (long i = 0; i < 50; i++) {
+          first.add(i, List.of(FloatVector.of(i, i)));
+          second.add(100 + i, List.of(FloatVector.of(i, -i)));
+        }
+        CountDownLatch start = new CountDownLatch(1);
+        // Whichever merge runs second finds the other's items in both indexes and fails
+        CompletableFuture<Boolean> forward = mergeAfter(start, first, second, pool);
+        CompletableFuture<Boolean> backward = mergeAfter(start, second, first, pool);
+        start.countDown();
+        assertTrue(forward.get(10, TimeUnit.SECONDS) | backward.get(10, TimeUnit.SECONDS));
+        assertEquals(100, Math.max(first.size(), second.size()));
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  /** Merges one index into another once a latch opens, and returns whether the merge succeeded. */
+  private static CompletableFuture<Boolean> mergeAfter(
+      CountDownLatch start, MultiVectorHNSW into, MultiVectorHNSW from, ExecutorService pool) {
+    return CompletableFuture.supplyAsync(
+        () -> {
+          try {
+            start.await();
+            into.merge(from);
+            return true;
+          } catch (IllegalArgumentException e) {
+            return false;
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+          }
+        },
+        pool);
+  }
+
+  @Test
+  void testBulkBuild() {
+    Random random = new Random(34);
+    Map<Long, List<FloatVector>> items = new HashMap<>();
+    FlatIndex exact = FlatIndex.builder().withDistance(index.getDistance()).build();
+    for (long i = 0; i < 1000; i++) {
+      List<FloatVector> item = List.of(FloatVector.of(random.nextFloat(), random.nextFloat()));
+      items.put(i, item);
+      exact.add(i, item);
+    }
+    MultiVectorHNSW bulk =
+        MultiVectorHNSW.builder()
+            .withM(10)
+            .withEfConstruction(100)
+            .withDistance(index.getDistance())
+            .bulkBuild(items);
+    assertEquals(1000, bulk.size());
+    assertEquals(items.get(7L), bulk.get(7L).orElseThrow());
+
+    int hits = 0;
+    for (int q = 0; q < 20; q++) {
+      List<FloatVector> query = List.of(FloatVector.of(random.nextFloat(), random.nextFloat()));
+      List<Long> truth = exact.search(query, 10).stream().map(SearchResult::id).toList();
+      hits += bulk.search(query, 10, 50).stream().filter(r -> truth.contains(r.id())).count();
+    }
+    assertTrue(hits / 200.0 > 0.9, "Recall was " + hits / 200.0);
+
+    // A bulk-built index accepts further items like any other
+    bulk.add(1000L, vectors2);
+    assertEquals(1000L, bulk.search(vectors2, 1, 10).get(0).id());
+    assertTrue(bulk.remove(3L));
+    assertEquals(1000, bulk.size());
+
+    MultiVectorHNSW empty =
+        MultiVectorHNSW.builder().withDistance(index.getDistance()).bulkBuild(Map.of());
+    assertTrue(empty.search(vectors1, 1, 10).isEmpty());
+    // The neighbor selection runs on several threads of a real pool
+    ExecutorService pool = Executors.newFixedThreadPool(4);
+    try {
+      MultiVectorHNSW pooled =
+          MultiVectorHNSW.builder()
+              .withM(10)
+              .withEfConstruction(100)
+              .withDistance(index.getDistance())
+              .withExecutor(pool)
+              .bulkBuild(items);
+      hits = 0;
+      for (int q = 0; q < 20; q++) {
+        List<FloatVector> query = List.of(FloatVector.of(random.nextFloat(), random.nextFloat()));
+        List<Long> truth = exact.search(query, 10).stream().map(SearchResult::id).toList();
+        hits += pooled.search(query, 10, 50).stream().filter(r -> truth.contains(r.id())).count();
+      }
+      assertTrue(hits / 200.0 > 0.9, "Recall with a pool was " + hits / 200.0);
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  @Test
+  void testSeededBulkBuildIsRepeatable() {
+    Random random = new Random(35);
+    Map<Long, List<FloatVector>> items = new HashMap<>();
+    for (long i = 0; i < 500; i++) {
+      items.put(i, List.of(FloatVector.of(random.nextFloat(), random.nextFloat())));
+    }
+    List<List<SearchResult>> runs = new ArrayList<>();
+    for (int run = 0; run < 2; run++) {
+      MultiVectorHNSW bulk =
+          MultiVectorHNSW.builder()
+              .withM(6)
+              .withEfConstruction(50)
+              .withDistance(index.getDistance())
+              .withExecutor(Runnable::run)
+              .withSeed(7L)
+              .bulkBuild(items);
+      bulk.add(500L, vectors1);
+      runs.add(bulk.search(vectors2, 20, 20));
+    }
+    assertEquals(runs.get(0), runs.get(1));
+  }
+
   @Test
   void testBuilderValidation() {
     assertThrows(IllegalArgumentException.class, () -> MultiVectorHNSW.builder().withM(0));
@@ -0,0 +1,88 @@
+package io.github.habedi.mvhnsw.index;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+class NNDescentTest {
+
+  private static double[][] randomPoints(int size, long seed) {
+    Random random = new Random(seed);
+    double[][] points = new double[size][2];
+    for (double[] point : points) {
+      point[0] = random.nextDouble();
+      point[1] = random.nextDouble();
+    }
+    return points;
+  }
+
+  private static NNDescent.OrdinalDistance euclidean(double[][] points) {
+    return (a, b) -> {
+      double dx = points[a][0] - points[b][0];
+      double dy = points[a][1] - points[b][1];
+      return dx * dx + dy * dy;
+    };
+  }
+
+  private static int[] exactNeighbors(int a, int k, NNDescent.OrdinalDistance distance, int size) {
+    return IntStream.range(0, size)
+        .filter(b -> b != a)
+        .boxed()
+        .sorted(Comparator.comparingDouble(b -> distance.between(a, b)))
+        .limit(k)
+        .mapToInt(Integer::intValue)
+        .toArray();
+  }
+
+  @Test
+  void testBruteForceIsExact() {
+    double[][] points = randomPoints(100, 1);
+    NNDescent.OrdinalDistance distance = euclidean(points);
+    NNDescent.Result result = NNDescent.build(100, 5, distance, ForkJoinPool.commonPool(), 1);
+    for (int a = 0; a < 100; a++) {
+      assertArrayEquals(exactNeighbors(a, 5, distance, 100), result.neighbors()[a]);
+    }
+  }
+
+  @Test
+  void testDescentRecall() {
+    int size = 2000;
+    int k = 10;
+    double[][] points = randomPoints(size, 2);
+    NNDescent.OrdinalDistance distance = euclidean(points);
+    NNDescent.Result result = NNDescent.build(size, k, distance, ForkJoinPool.commonPool(), 2);
+
+    int hits = 0;
+    for (int a = 0; a < size; a += 20) {
+      int[] found = result.neighbors()[a];
+      double[] distances = result.distances()[a];
+      for (int i = 1; i < k; i++) {
+        assertTrue(distances[i - 1] <= distances[i]);
+      }
+      int[] truth = exactNeighbors(a, k, distance, size);
+      for (int b : found) {
+        if (Arrays.stream(truth).anyMatch(t -> t == b)) {
+          hits++;
+        }
+      }
+    }
+    double recall = hits / (double) (size / 20 * k);
+    assertTrue(recall > 0.9, "Recall was " + recall);
+  }
+
+  @Test
+  void testInvalidK() {
+    NNDescent.OrdinalDistance distance = euclidean(randomPoints(10, 3));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> NNDescent.build(10, 0, distance, ForkJoinPool.commonPool(), 3));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> NNDescent.build(10, 10, distance, ForkJoinPool.commonPool(), 3));
+  }
+}
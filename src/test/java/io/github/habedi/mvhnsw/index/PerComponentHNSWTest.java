@@ -0,0 +1,190 @@
+package io.github.habedi.mvhnsw.index;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import io.github.habedi.mvhnsw.common.FloatVector;
+import io.github.habedi.mvhnsw.distance.Cosine;
+import io.github.habedi.mvhnsw.distance.SquaredEuclidean;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class PerComponentHNSWTest {
+
+  private PerComponentHNSW index;
+
+  @BeforeEach
+  void setUp() {
+    index =
+        PerComponentHNSW.builder()
+            .withM(8)
+            .withEfConstruction(50)
+            .addComponent(new SquaredEuclidean(), 0.7f)
+            .addComponent(new Cosine(), 0.3f)
+            .build();
+    for (int i = 0; i < 100; i++) {
+      double angle = Math.toRadians(i * 3.6);
+      index.add(
+          i,
+          List.of(
+              FloatVector.of(i, i),
+              FloatVector.of((float) Math.cos(angle), (float) Math.sin(angle))));
+    }
+  }
+
+  @Test
+  void testAddGetAndRemove() {
+    assertEquals(100, index.size());
+    assertTrue(index.get(5L).isPresent());
+    assertThrows(IllegalArgumentException.class, () -> index.add(5L, index.get(5L).get()));
+    assertThrows(
+        IllegalArgumentException.class, () -> index.add(500L, List.of(FloatVector.of(1.0f))));
+
+    assertTrue(index.remove(5L));
+    assertFalse(index.remove(5L));
+    assertTrue(index.get(5L).isEmpty());
+    assertFalse(index.keySet().contains(5L));
+    assertEquals(99, index.size());
+  }
+
+  @Test
+  void testFailedAddIsRolledBack() {
+    // The cosine graph rejects the mismatched length, after the other graph accepted the item
+    List<FloatVector> invalid =
+        List.of(FloatVector.of(1.0f, 2.0f), FloatVector.of(1.0f, 0.0f, 0.0f));
+    assertThrows(IllegalArgumentException.class, () -> index.add(500L, invalid));
+    assertTrue(index.get(500L).isEmpty());
+    assertEquals(100, index.size());
+
+    List<FloatVector> valid = List.of(FloatVector.of(1.0f, 2.0f), FloatVector.of(1.0f, 0.0f));
+    index.add(500L, valid);
+    assertEquals(valid, index.get(500L).orElseThrow());
+    assertEquals(500L, index.search(valid, 1, 20).get(0).id());
+  }
+
+  @Test
+  void testSearchReRanksWithWeightedDistance() {
+    List<FloatVector> query = List.of(FloatVector.of(30.0f, 30.0f), FloatVector.of(0.0f, 1.0f));
+    List<SearchResult> results = index.search(query, 5, 20);
+
+    assertEquals(5, results.size());
+    assertEquals(30L, results.get(0).id());
+    for (SearchResult result : results) {
+      double exact = index.getDistance().compute(query, index.get(result.id()).get());
+      assertEquals(exact, result.score(), 0.0001);
+    }
+    for (int i = 1; i < results.size(); i++) {
+      assertTrue(results.get(i - 1).score() <= results.get(i).score());
+    }
+  }
+
+  @Test
+  void testSearchesRunWhileAnAddIsInProgress() throws InterruptedException {
+    // Holds the inserts of the adding thread until the searches below are done
+    CountDownLatch submitted = new CountDownLatch(2);
+    CountDownLatch release = new CountDownLatch(1);
+    Thread[] adder = new Thread[1];
+    ExecutorService pool = Executors.newCachedThreadPool();
+    PerComponentHNSW gated =
+        PerComponentHNSW.builder()
+            .withM(8)
+            .withEfConstruction(50)
+            .addComponent(new SquaredEuclidean(), 0.5f)
+            .addComponent(new SquaredEuclidean(), 0.5f)
+            .withExecutor(
+                task -> {
+                  if (Thread.currentThread() != adder[0]) {
+                    pool.execute(task);
+                    return;
+                  }
+                  submitted.countDown();
+                  pool.execute(
+                      () -> {
+                        try {
+                          release.await();
+                        } catch (InterruptedException e) {
+                          Thread.currentThread().interrupt();
+                        }
+                        task.run();
+                      });
+                })
+            .build();
+    try {
+      for (int i = 0; i < 20; i++) {
+        gated.add(i, List.of(FloatVector.of(i, i), FloatVector.of(i, i)));
+      }
+      List<FloatVector> item = List.of(FloatVector.of(5.5f, 5.5f), FloatVector.of(5.5f, 5.5f));
+      adder[0] = new Thread(() -> gated.add(100L, item));
+      adder[0].start();
+      submitted.await();
+
+      assertNotEquals(100L, gated.search(item, 1, 10).get(0).id());
+      assertTrue(gated.get(100L).isEmpty());
+      assertThrows(IllegalArgumentException.class, () -> gated.add(100L, item));
+
+      release.countDown();
+      adder[0].join();
+      assertEquals(21, gated.size());
+      assertEquals(100L, gated.search(item, 1, 10).get(0).id());
+    } finally {
+      release.countDown();
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  void testSearchWithPerComponentEf() {
+    List<FloatVector> query = List.of(FloatVector.of(70.0f, 70.0f), FloatVector.of(1.0f, 0.0f));
+    // Skip the second component graph entirely
+    List<SearchResult> results = index.search(query, 3, new int[] {10, 0});
+    assertEquals(3, results.size());
+    assertEquals(70L, results.get(0).id());
+
+    assertThrows(IllegalArgumentException.class, () -> index.search(query, 3, new int[] {10}));
+    assertThrows(IllegalArgumentException.class, () -> index.search(query, 3, new int[] {2, 10}));
+  }
+
+  @Test
+  void testSearchWithPerQueryWeights() {
+    // The first component points to item 80, the second (an angle of 90 degrees) to item 25
+    List<FloatVector> query = List.of(FloatVector.of(80.0f, 80.0f), FloatVector.of(0.0f, 1.0f));
+    int[] efs = {10, 10};
+
+    assertEquals(80L, index.search(query, 1, efs, new float[] {1.0f, 0.0f}).get(0).id());
+    List<SearchResult> cosineOnly = index.search(query, 1, efs, new float[] {0.0f, 1.0f});
+    assertEquals(25L, cosineOnly.get(0).id());
+    assertEquals(0.0, cosineOnly.get(0).score(), 0.0001);
+  }
+
+  @Test
+  void testRemovedItemsAreNotReturnedAndVacuum() {
+    List<FloatVector> query = List.of(FloatVector.of(30.0f, 30.0f), FloatVector.of(0.0f, 1.0f));
+    index.remove(30L);
+    assertNotEquals(30L, index.search(query, 1, 10).get(0).id());
+
+    index.vacuum();
+    assertEquals(99, index.size());
+    assertNotEquals(30L, index.search(query, 1, 10).get(0).id());
+
+    index.clear();
+    assertEquals(0, index.size());
+    assertTrue(index.search(query, 1, 10).isEmpty());
+  }
+
+  @Test
+  void testSaveAndLoad(@TempDir File tempDir) throws IOException, ClassNotFoundException {
+    File indexPath = new File(tempDir, "components.index");
+    index.save(indexPath.toPath());
+
+    PerComponentHNSW loadedIndex = PerComponentHNSW.load(indexPath.toPath());
+    assertEquals(100, loadedIndex.size());
+    List<FloatVector> query = List.of(FloatVector.of(42.0f, 42.0f), FloatVector.of(0.0f, 1.0f));
+    assertEquals(42L, loadedIndex.search(query, 1, 10).get(0).id());
+  }
+}
@@ -0,0 +1,203 @@
+package io.github.habedi.mvhnsw.index;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import io.github.habedi.mvhnsw.common.FloatVector;
+import io.github.habedi.mvhnsw.distance.SquaredEuclidean;
+import io.github.habedi.mvhnsw.distance.WeightedAverageDistance;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SegmentedIndexTest {
+
+  private final WeightedAverageDistance distance =
+      new WeightedAverageDistance(List.of(new SquaredEuclidean()), new float[] {1.0f});
+  private final Random random = new Random(9);
+  private SegmentedIndex index;
+  private FlatIndex exact;
+
+  @BeforeEach
+  void setUp() {
+    // Merges run on the calling thread, so the segment counts are deterministic
+    index =
+        SegmentedIndex.builder()
+            .withDistance(distance)
+            .withM(8)
+            .withEfConstruction(50)
+            .withSegmentSize(100)
+            .withMergeFactor(3)
+            .withExecutor(Runnable::run)
+            .withMergeExecutor(Runnable::run)
+            .build();
+    exact = FlatIndex.builder().withDistance(distance).build();
+  }
+
+  private void addItems(long from, long to) {
+    for (long i = from; i < to; i++) {
+      List<FloatVector> item = List.of(FloatVector.of(random.nextFloat(), random.nextFloat()));
+      index.add(i, item);
+      exact.add(i, item);
+    }
+  }
+
+  @Test
+  void testSealsAndMergesSegments() {
+    addItems(0, 250);
+    assertEquals(3, index.getSegmentCount());
+
+    // The third sealed segment fills tier 0, so the three are merged into one
+    addItems(250, 350);
+    assertEquals(2, index.getSegmentCount());
+    assertEquals(350, index.size());
+
+    addItems(350, 1000);
+    assertEquals(1000, index.size());
+    assertTrue(index.getSegmentCount() <= 4, "Segments: " + index.getSegmentCount());
+    for (long i = 0; i < 1000; i += 97) {
+      assertEquals(exact.get(i), index.get(i));
+    }
+  }
+
+  @Test
+  void testSearchMergesSegments() {
+    addItems(0, 450);
+    int hits = 0;
+    for (int q = 0; q < 20; q++) {
+      List<FloatVector> query = List.of(FloatVector.of(random.nextFloat(), random.nextFloat()));
+      List<Long> truth = exact.search(query, 10).stream().map(SearchResult::id).toList();
+      List<SearchResult> results = index.search(query, 10, 50);
+      assertEquals(10, results.size());
+      for (int i = 1; i < results.size(); i++) {
+        assertTrue(results.get(i - 1).score() <= results.get(i).score());
+      }
+      hits += results.stream().filter(r -> truth.contains(r.id())).count();
+    }
+    assertTrue(hits / 200.0 > 0.9, "Recall was " + hits / 200.0);
+  }
+
+  @Test
+  void testRemoveAcrossSegmentsAndVacuum() {
+    addItems(0, 250);
+    List<FloatVector> sealedItem = index.get(5L).orElseThrow();
+    assertTrue(index.remove(5L));
+    assertFalse(index.remove(5L));
+    assertTrue(index.remove(240L));
+    assertEquals(248, index.size());
+    assertTrue(index.search(sealedItem, 5, 20).stream().noneMatch(r -> r.id() == 5L));
+    assertThrows(IllegalArgumentException.class, () -> index.add(6L, sealedItem));
+
+    // A removed item can be added again, and goes to the mutable segment
+    index.add(5L, sealedItem);
+    assertEquals(5L, index.search(sealedItem, 1, 20).get(0).id());
+
+    index.vacuum();
+    assertEquals(249, index.size());
+    assertEquals(sealedItem, index.get(5L).orElseThrow());
+    assertFalse(index.keySet().contains(240L));
+  }
+
+  @Test
+  void testSaveLoadAndClear(@TempDir File tempDir) throws IOException, ClassNotFoundException {
+    addItems(0, 230);
+    index.remove(17L);
+    File indexFile = new File(tempDir, "segmented.idx");
+    index.save(indexFile.toPath());
+
+    SegmentedIndex loaded = SegmentedIndex.load(indexFile.toPath());
+    assertEquals(229, loaded.size());
+    assertEquals(3, loaded.getSegmentCount());
+    assertTrue(loaded.get(17L).isEmpty());
+    List<FloatVector> query = List.of(FloatVector.of(0.3f, 0.6f));
+    assertEquals(index.search(query, 5, 20), loaded.search(query, 5, 20));
+
+    loaded.clear();
+    assertEquals(0, loaded.size());
+    assertEquals(1, loaded.getSegmentCount());
+    assertTrue(loaded.search(query, 5, 20).isEmpty());
+  }
+
+  @Test
+  void testConcurrentSearchesDuringMerges() throws Exception {
+    // One search thread: a search that waited for its segment searches while holding the lock
+    // would deadlock with a merge waiting for the write lock
+    ExecutorService searchPool = Executors.newFixedThreadPool(1);
+    ExecutorService mergePool = Executors.newSingleThreadExecutor();
+    ExecutorService clients = Executors.newFixedThreadPool(3);
+    try {
+      SegmentedIndex concurrent =
+          SegmentedIndex.builder()
+              .withDistance(distance)
+              .withM(8)
+              .withEfConstruction(50)
+              .withSegmentSize(50)
+              .withMergeFactor(2)
+              .withExecutor(searchPool)
+              .withMergeExecutor(mergePool)
+              .build();
+      Map<Long, List<FloatVector>> items = new HashMap<>();
+      for (long i = 0; i < 2000; i++) {
+        items.put(i, List.of(FloatVector.of(random.nextFloat(), random.nextFloat())));
+      }
+      Future<?> writer =
+          clients.submit(
+              () -> {
+                for (long i = 0; i < 2000; i++) {
+                  concurrent.add(i, items.get(i));
+                  if (i % 5 == 0 && i >= 10) {
+                    assertTrue(concurrent.remove(i - 10));
+                  }
+                }
+              });
+      List<Future<?>> searchers = new ArrayList<>();
+      for (int s = 0; s < 2; s++) {
+        searchers.add(
+            clients.submit(
+                () -> {
+                  while (!writer.isDone()) {
+                    List<SearchResult> results = concurrent.search(items.get(7L), 5, 20);
+                    for (int i = 1; i < results.size(); i++) {
+                      assertTrue(results.get(i - 1).score() <= results.get(i).score());
+                    }
+                  }
+                }));
+      }
+      writer.get(2, TimeUnit.MINUTES);
+      for (Future<?> searcher : searchers) {
+        searcher.get(2, TimeUnit.MINUTES);
+      }
+      mergePool.shutdown();
+      assertTrue(mergePool.awaitTermination(2, TimeUnit.MINUTES));
+
+      assertEquals(1602, concurrent.size());
+      assertTrue(concurrent.getSegmentCount() < 20, "Segments: " + concurrent.getSegmentCount());
+      assertTrue(concurrent.get(1985L).isEmpty());
+      assertEquals(items.get(1986L), concurrent.get(1986L).orElseThrow());
+      List<SearchResult> results = concurrent.search(items.get(1985L), 5, 50);
+      assertTrue(results.stream().noneMatch(r -> r.id() % 5 == 0 && r.id() <= 1985));
+    } finally {
+      clients.shutdownNow();
+      searchPool.shutdownNow();
+      mergePool.shutdownNow();
+    }
+  }
+
+  @Test
+  void testBuilderValidation() {
+    assertThrows(NullPointerException.class, () -> SegmentedIndex.builder().build());
+    assertThrows(IllegalArgumentException.class, () -> SegmentedIndex.builder().withSegmentSize(0));
+    assertThrows(IllegalArgumentException.class, () -> SegmentedIndex.builder().withMergeFactor(1));
+    assertThrows(IllegalArgumentException.class, () -> index.search(List.of(), 5, 4));
+  }
+}
@@ -0,0 +1,114 @@
+package io.github.habedi.mvhnsw.index;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import io.github.habedi.mvhnsw.common.FloatVector;
+import io.github.habedi.mvhnsw.distance.SquaredEuclidean;
+import io.github.habedi.mvhnsw.distance.WeightedAverageDistance;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ShardedIndexTest {
+
+  private final WeightedAverageDistance distance =
+      new WeightedAverageDistance(List.of(new SquaredEuclidean()), new float[] {1.0f});
+  private final Random random = new Random(17);
+  private ExecutorService executor;
+  private ShardedIndex index;
+  private FlatIndex exact;
+
+  @BeforeEach
+  void setUp() {
+    executor = Executors.newFixedThreadPool(4);
+    index =
+        ShardedIndex.builder()
+            .withDistance(distance)
+            .withNumShards(4)
+            .withM(8)
+            .withEfConstruction(64)
+            .withExecutor(executor)
+            .build();
+    exact = FlatIndex.builder().withDistance(distance).build();
+    Map<Long, List<FloatVector>> items = new HashMap<>();
+    for (long i = 0; i < 1000; i++) {
+      items.put(i, List.of(FloatVector.of(random.nextFloat(), random.nextFloat())));
+    }
+    index.addAll(items);
+    exact.addAll(items);
+  }
+
+  @AfterEach
+  void tearDown() {
+    executor.shutdown();
+  }
+
+  @Test
+  void testAddAllSpreadsItemsAcrossShards() {
+    assertEquals(4, index.getNumShards());
+    assertEquals(1000, index.size());
+    assertEquals(exact.keySet(), index.keySet());
+    assertEquals(exact.get(321L), index.get(321L));
+    assertThrows(IllegalArgumentException.class, () -> index.add(321L, exact.get(321L).get()));
+    assertThrows(IllegalArgumentException.class, () -> index.addAll(Map.of(5L, List.of())));
+
+    index.add(5000L, List.of(FloatVector.of(0.5f, 0.5f)));
+    assertTrue(index.remove(5000L));
+    assertFalse(index.remove(5000L));
+    assertEquals(1000, index.size());
+  }
+
+  @Test
+  void testSearchMergesShards() {
+    int hits = 0;
+    for (int q = 0; q < 20; q++) {
+      List<FloatVector> query = List.of(FloatVector.of(random.nextFloat(), random.nextFloat()));
+      List<Long> truth = exact.search(query, 10).stream().map(SearchResult::id).toList();
+      List<SearchResult> results = index.search(query, 10, 40);
+      assertEquals(10, results.size());
+      for (int i = 1; i < results.size(); i++) {
+        assertTrue(results.get(i - 1).score() <= results.get(i).score());
+      }
+      hits += results.stream().filter(r -> truth.contains(r.id())).count();
+    }
+    assertTrue(hits / 200.0 > 0.95, "Recall was " + hits / 200.0);
+    assertThrows(IllegalArgumentException.class, () -> index.search(List.of(), 5, 4));
+  }
+
+  @Test
+  void testSaveLoadClearAndVacuum(@TempDir File tempDir)
+      throws IOException, ClassNotFoundException {
+    index.remove(7L);
+    index.vacuum();
+    File indexFile = new File(tempDir, "sharded.idx");
+    index.save(indexFile.toPath());
+    assertTrue(new File(tempDir, "sharded.idx.shard-3").exists());
+
+    ShardedIndex loaded = ShardedIndex.load(indexFile.toPath());
+    assertEquals(999, loaded.size());
+    assertTrue(loaded.get(7L).isEmpty());
+    List<FloatVector> query = List.of(FloatVector.of(0.2f, 0.9f));
+    assertEquals(index.search(query, 5, 20), loaded.search(query, 5, 20));
+
+    loaded.clear();
+    assertEquals(0, loaded.size());
+    assertTrue(loaded.search(query, 5, 20).isEmpty());
+    assertThrows(
+        IOException.class, () -> ShardedIndex.load(new File(tempDir, "missing").toPath()));
+  }
+
+  @Test
+  void testBuilderValidation() {
+    assertThrows(NullPointerException.class, () -> ShardedIndex.builder().build());
+    assertThrows(IllegalArgumentException.class, () -> ShardedIndex.builder().withNumShards(0));
+  }
+}
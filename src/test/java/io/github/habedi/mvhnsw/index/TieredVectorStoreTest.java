@@ -0,0 +1,129 @@
+package io.github.habedi.mvhnsw.index;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import io.github.habedi.mvhnsw.common.FloatVector;
+import io.github.habedi.mvhnsw.common.SparseFloatVector;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class TieredVectorStoreTest {
+
+  private static List<FloatVector> item(long id) {
+    return List.of(FloatVector.of(id, -id), FloatVector.of(id * 2.0f));
+  }
+
+  @Test
+  void testReadsThroughCacheAndCountsHits(@TempDir File tempDir) {
+    TieredVectorStore store = new TieredVectorStore(new File(tempDir, "v.bin").toPath(), 2);
+    for (long id = 0; id < 4; id++) {
+      store.put(id, item(id));
+    }
+    assertNull(store.get(99L));
+
+    assertEquals(item(0), store.get(0L));
+    assertEquals(item(0), store.get(0L));
+    assertEquals(item(1), store.get(1L));
+    assertEquals(new VectorCacheStats(1, 2, 2, 2), store.stats());
+
+    // Item 0 was referenced, so the clock hand passes it and evicts item 1
+    store.get(2L);
+    store.get(0L);
+    store.get(1L);
+    VectorCacheStats stats = store.stats();
+    assertEquals(2, stats.hits());
+    assertEquals(4, stats.misses());
+    assertEquals(2.0 / 6.0, stats.hitRate(), 1e-9);
+  }
+
+  @Test
+  void testPutReplacesAndClearEmpties(@TempDir File tempDir) {
+    TieredVectorStore store = new TieredVectorStore(new File(tempDir, "v.bin").toPath(), 4);
+    store.put(1L, item(1));
+    assertEquals(item(1), store.get(1L));
+    store.put(1L, item(7));
+    assertEquals(item(7), store.get(1L));
+
+    store.clear();
+    assertNull(store.get(1L));
+    store.put(2L, item(2));
+    assertEquals(item(2), store.get(2L));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> new TieredVectorStore(new File(tempDir, "w.bin").toPath(), 0));
+  }
+
+  @Test
+  void testSparseVectorsStaySparse(@TempDir File tempDir) throws Exception {
+    TieredVectorStore store = new TieredVectorStore(new File(tempDir, "v.bin").toPath(), 1);
+    List<FloatVector> sparseItem =
+        List.of(
+            SparseFloatVector.of(1000, new int[] {3, 500, 999}, new float[] {1.5f, -2.0f, 0.25f}),
+            FloatVector.of(1.0f, 2.0f));
+    store.put(1L, sparseItem);
+    store.put(2L, item(2));
+    store.get(2L);
+
+    // Read from the file, not the cache
+    List<FloatVector> read = store.get(1L);
+    assertEquals(sparseItem, read);
+    assertInstanceOf(SparseFloatVector.class, read.get(0));
+    assertEquals(1000, read.get(0).length());
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+      out.writeObject(store);
+    }
+    try (ObjectInputStream in =
+        new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+      TieredVectorStore loaded = (TieredVectorStore) in.readObject();
+      assertInstanceOf(SparseFloatVector.class, loaded.get(1L).get(0));
+      assertEquals(sparseItem, loaded.get(1L));
+    }
+  }
+
+  @Test
+  void testConcurrentHitsAndEvictions(@TempDir File tempDir) throws Exception {
+    TieredVectorStore store = new TieredVectorStore(new File(tempDir, "v.bin").toPath(), 16);
+    for (long id = 0; id < 64; id++) {
+      store.put(id, item(id));
+    }
+    ExecutorService pool = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<?>> readers = new ArrayList<>();
+      for (int t = 0; t < 4; t++) {
+        long seed = t;
+        readers.add(
+            pool.submit(
+                () -> {
+                  Random random = new Random(seed);
+                  for (int i = 0; i < 20_000; i++) {
+                    // Mostly hot items, so hits race with the evictions of the other reads
+                    long id = random.nextInt(4) > 0 ? random.nextInt(8) : random.nextInt(64);
+                    assertEquals(item(id), store.get(id));
+                  }
+                }));
+      }
+      for (Future<?> reader : readers) {
+        reader.get(1, TimeUnit.MINUTES);
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+    VectorCacheStats stats = store.stats();
+    assertEquals(80_000, stats.hits() + stats.misses());
+    assertTrue(stats.size() <= 16);
+  }
+}